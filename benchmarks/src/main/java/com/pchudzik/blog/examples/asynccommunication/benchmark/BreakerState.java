@@ -0,0 +1,24 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+
+public enum BreakerState {
+    CLOSED(new FixedResponseHandler(200, "hello world")),
+    OPEN(new FixedResponseHandler(500, "error")),
+    /**
+     * Upstream keeps failing and the breaker sleep window is 1ms, so every few calls the breaker lets trial
+     * requests through and trips again.
+     */
+    HALF_OPEN(new FixedResponseHandler(500, "error"));
+
+    private final BreakableService.ResponseHandler responseHandler;
+
+    BreakerState(BreakableService.ResponseHandler responseHandler) {
+        this.responseHandler = responseHandler;
+    }
+
+    BreakableService.ResponseHandler responseHandler() {
+        return responseHandler;
+    }
+}
@@ -0,0 +1,196 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.CommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.Resilience4jInvocationHandlerFactory;
+import feign.Feign;
+import feign.FeignException;
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.codec.ErrorDecoder;
+import feign.gson.GsonDecoder;
+import feign.hystrix.HystrixFeign;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.retrofit.CircuitBreakerCallAdapter;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public enum ClientStack {
+    HYSTRIX_FEIGN {
+        @Override
+        HelloClient connect(String baseUrl, BreakerState breakerState) {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter()
+                    .withRequestCacheEnabled(false);
+            if (breakerState == BreakerState.OPEN) {
+                properties.withCircuitBreakerForceOpen(true);
+            } else if (breakerState == BreakerState.HALF_OPEN) {
+                properties
+                        .withCircuitBreakerRequestVolumeThreshold(1)
+                        .withCircuitBreakerSleepWindowInMilliseconds(1)
+                        .withMetricsHealthSnapshotIntervalInMilliseconds(1);
+            }
+
+            HystrixHelloWorld helloWorld = HystrixFeign.builder()
+                    .options(OPTIONS)
+                    .contract(new JAXRSContract())
+                    .logger(new Slf4jLogger())
+                    .logLevel(Logger.Level.NONE)
+                    .decoder(new GsonDecoder())
+                    .setterFactory((target, method) ->
+                            HystrixCommand.Setter
+                                    .withGroupKey(HystrixCommandGroupKey.Factory.asKey(target.name()))
+                                    .andCommandPropertiesDefaults(properties))
+                    .target(HystrixHelloWorld.class, baseUrl, () -> new HystrixCommand<Hello>(HystrixCommandGroupKey.Factory.asKey("default")) {
+                        @Override
+                        protected Hello run() {
+                            return FALLBACK;
+                        }
+                    });
+
+            return () -> helloWorld.sayHello().execute();
+        }
+    },
+
+    /**
+     * {@link #HYSTRIX_FEIGN} configuration on Resilience4j with semaphore isolation, the same fallback but no thread
+     * pool hop.
+     */
+    FEIGN_RESILIENCE4J {
+        @Override
+        HelloClient connect(String baseUrl, BreakerState breakerState) {
+            CommandProperties properties = CommandProperties.setter();
+            if (breakerState == BreakerState.OPEN) {
+                properties.withCircuitBreakerForceOpen(true);
+            } else if (breakerState == BreakerState.HALF_OPEN) {
+                properties
+                        .withCircuitBreakerRequestVolumeThreshold(1)
+                        .withCircuitBreakerSleepWindowInMilliseconds(1);
+            }
+
+            FeignHelloWorld helloWorld = Feign.builder()
+                    .options(OPTIONS)
+                    .contract(new JAXRSContract())
+                    .logger(new Slf4jLogger())
+                    .logLevel(Logger.Level.NONE)
+                    .decoder(new GsonDecoder())
+                    .invocationHandlerFactory(Resilience4jInvocationHandlerFactory.builder()
+                            .setterFactory((target, method) -> properties)
+                            .fallback((FeignHelloWorld) () -> FALLBACK)
+                            .build())
+                    .target(FeignHelloWorld.class, baseUrl);
+
+            return helloWorld::sayHello;
+        }
+    },
+
+    FEIGN_RETRYER {
+        @Override
+        HelloClient connect(String baseUrl, BreakerState breakerState) {
+            FeignHelloWorld helloWorld = Feign.builder()
+                    .options(OPTIONS)
+                    .retryer(new Retryer.Default(1, 10, 3))
+                    .contract(new JAXRSContract())
+                    .logger(new Slf4jLogger())
+                    .logLevel(Logger.Level.NONE)
+                    .decoder(new GsonDecoder())
+                    .errorDecoder(new ErrorDecoder.Default() {
+                        @Override
+                        public Exception decode(String methodKey, Response response) {
+                            if (response.status() >= 500) {
+                                return new RetryableException(
+                                        response.status(), "Received " + response.status() + " from server",
+                                        response.request().httpMethod(), null, response.request());
+                            }
+
+                            return super.decode(methodKey, response);
+                        }
+                    })
+                    .target(FeignHelloWorld.class, baseUrl);
+
+            return () -> {
+                try {
+                    return helloWorld.sayHello();
+                } catch (FeignException ex) {
+                    return FALLBACK;
+                }
+            };
+        }
+    },
+
+    RETROFIT_RESILIENCE4J {
+        @Override
+        HelloClient connect(String baseUrl, BreakerState breakerState) {
+            CircuitBreakerConfig.Builder config = CircuitBreakerConfig.custom();
+            if (breakerState == BreakerState.OPEN) {
+                config.waitDurationInOpenState(Duration.ofDays(1));
+            } else if (breakerState == BreakerState.HALF_OPEN) {
+                config
+                        .slidingWindowSize(10)
+                        .permittedNumberOfCallsInHalfOpenState(10)
+                        .waitDurationInOpenState(Duration.ofMillis(1));
+            }
+            CircuitBreaker circuitBreaker = CircuitBreaker.of("benchmark", config.build());
+            if (breakerState != BreakerState.CLOSED) {
+                circuitBreaker.transitionToOpenState();
+            }
+
+            RetrofitHelloWorld helloWorld = new Retrofit.Builder()
+                    .addCallAdapterFactory(CircuitBreakerCallAdapter.of(circuitBreaker))
+                    .addConverterFactory(GsonConverterFactory.create())
+                    .baseUrl(baseUrl + "/")
+                    .build()
+                    .create(RetrofitHelloWorld.class);
+
+            return () -> {
+                try {
+                    retrofit2.Response<Hello> response = helloWorld.sayHello().execute();
+                    return response.isSuccessful() ? response.body() : FALLBACK;
+                } catch (CallNotPermittedException ex) {
+                    return FALLBACK;
+                }
+            };
+        }
+    };
+
+    private static final Request.Options OPTIONS = new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true);
+    static final Hello FALLBACK = new Hello("fallback value");
+
+    abstract HelloClient connect(String baseUrl, BreakerState breakerState);
+
+    interface HelloClient {
+        Hello sayHello() throws Exception;
+    }
+
+    interface HystrixHelloWorld {
+        @GET
+        @Path("/hello")
+        HystrixCommand<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @GET
+        @Path("/hello")
+        Hello sayHello();
+    }
+
+    interface RetrofitHelloWorld {
+        @retrofit2.http.GET("hello")
+        Call<Hello> sayHello();
+    }
+}
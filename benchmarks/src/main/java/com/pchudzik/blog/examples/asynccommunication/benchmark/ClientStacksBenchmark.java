@@ -0,0 +1,59 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.netflix.hystrix.Hystrix;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call cost of each resilience stack. Throughput and sample time (p50/p99) are reported by JMH, run with
+ * {@code -prof gc} (or through {@link #main(String[])}) to get allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClientStacksBenchmark {
+    @Param
+    ClientStack clientStack;
+
+    @Param
+    BreakerState breakerState;
+
+    private BreakableService breakableService;
+    private ClientStack.HelloClient helloClient;
+
+    @Setup
+    public void setup() throws Exception {
+        breakableService = new BreakableService(breakerState.responseHandler());
+        breakableService.startServer();
+        helloClient = clientStack.connect("http://localhost:" + breakableService.getPort(), breakerState);
+    }
+
+    @TearDown
+    public void tearDown() {
+        breakableService.stopServer();
+        Hystrix.reset();
+    }
+
+    @Benchmark
+    public Hello sayHello() throws Exception {
+        return helloClient.sayHello();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClientStacksBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.codegen.CodegenGson;
+import com.pchudzik.blog.examples.asynccommunication.codegen.GeneratedTypeAdapterFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflective Gson adapter against the generated one. Encode is what BreakableService does for every response, decode
+ * is what Feign decoder and Retrofit converter do on the client side. Cold benchmarks create new Gson and serialize
+ * single message in a fresh JVM, it's the adapter creation cost paid by the first request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodegenBenchmark {
+    private static final Hello HELLO = new Hello("hello world");
+    private static final String JSON = "{\"message\":\"hello world\"}";
+
+    private final Gson reflectiveGson = new Gson();
+    private final Gson generatedGson = CodegenGson.create();
+
+    @Benchmark
+    public String encodeReflective() {
+        return reflectiveGson.toJson(HELLO);
+    }
+
+    @Benchmark
+    public String encodeGenerated() {
+        return generatedGson.toJson(HELLO);
+    }
+
+    @Benchmark
+    public Hello decodeReflective() {
+        return reflectiveGson.fromJson(JSON, Hello.class);
+    }
+
+    @Benchmark
+    public Hello decodeGenerated() {
+        return generatedGson.fromJson(JSON, Hello.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Hello coldReflective() {
+        Gson gson = new Gson();
+        return gson.fromJson(gson.toJson(HELLO), Hello.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Hello coldGenerated() {
+        // factory registered directly, CodegenGson would also load Feign and Retrofit classes
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
+                .create();
+        return gson.fromJson(gson.toJson(HELLO), Hello.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CodegenBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.google.gson.Gson;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonConverterFactory;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonDecoder;
+import feign.Feign;
+import feign.RequestLine;
+import feign.gson.GsonDecoder;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import retrofit2.Call;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding multi-MB JSON array of {@link Hello} served by BreakableService, stock Gson decoders against the
+ * streaming ones. Compare {@code gc.alloc.rate.norm} with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DecodingBenchmark {
+    @Param({"20000", "200000"})
+    int messages;
+
+    private BreakableService breakableService;
+    private HelloWorld gsonRetrofit;
+    private HelloWorld streamingRetrofit;
+    private FeignHelloWorld gsonFeign;
+    private FeignHelloWorld streamingFeign;
+
+    @Setup
+    public void setup() throws Exception {
+        List<Hello> payload = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            payload.add(new Hello("hello world " + i));
+        }
+        FixedResponse response = FixedResponse.jsonResponse().withBody(new Gson().toJson(payload));
+        breakableService = new BreakableService(() -> response, ServerEngine.nio(2));
+        breakableService.startServer();
+
+        String baseUrl = "http://localhost:" + breakableService.getPort();
+        gsonRetrofit = retrofit(baseUrl, GsonConverterFactory.create());
+        streamingRetrofit = retrofit(baseUrl, StreamingGsonConverterFactory.create());
+        gsonFeign = Feign.builder()
+                .decoder(new GsonDecoder())
+                .target(FeignHelloWorld.class, baseUrl);
+        streamingFeign = Feign.builder()
+                .decoder(new StreamingGsonDecoder())
+                .target(FeignHelloWorld.class, baseUrl);
+    }
+
+    @TearDown
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Benchmark
+    public List<Hello> retrofitGsonConverter() throws Exception {
+        return gsonRetrofit.sayHellos().execute().body();
+    }
+
+    @Benchmark
+    public List<Hello> retrofitStreamingConverter() throws Exception {
+        return streamingRetrofit.sayHellos().execute().body();
+    }
+
+    @Benchmark
+    public List<Hello> feignGsonDecoder() {
+        return gsonFeign.sayHellos();
+    }
+
+    @Benchmark
+    public List<Hello> feignStreamingDecoder() {
+        return streamingFeign.sayHellos();
+    }
+
+    private static HelloWorld retrofit(String baseUrl, Converter.Factory converterFactory) {
+        return new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(converterFactory)
+                .baseUrl(baseUrl + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<List<Hello>> sayHellos();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        List<Hello> sayHellos();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DecodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.pchudzik.blog.examples.asynccommunication.metrics.SlidingWindow;
+import com.pchudzik.blog.examples.asynccommunication.metrics.SlowCallCircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a single call outcome with 16 threads recording into the same window. Resilience4j breakers
+ * serialize recording on the sliding window lock, {@link SlidingWindow} uses striped adders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class MetricsRecordingBenchmark {
+    private final SlidingWindow timeBasedWindow = SlidingWindow.timeBased(Duration.ofSeconds(10), 10);
+    private final SlidingWindow countBasedWindow = SlidingWindow.countBased(100, 10);
+    private final SlowCallCircuitBreaker slowCallCircuitBreaker = SlowCallCircuitBreaker.builder("benchmark")
+            .slidingWindow(SlidingWindow.timeBased(Duration.ofSeconds(10), 10))
+            .slowCallDuration(Duration.ofSeconds(1))
+            .build();
+    private final CircuitBreaker timeBasedCircuitBreaker = CircuitBreaker.of("time based", CircuitBreakerConfig.custom()
+            .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+            .slidingWindowSize(10)
+            .slowCallDurationThreshold(Duration.ofSeconds(1))
+            .build());
+    private final CircuitBreaker countBasedCircuitBreaker = CircuitBreaker.of("count based", CircuitBreakerConfig.custom()
+            .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+            .slidingWindowSize(100)
+            .slowCallDurationThreshold(Duration.ofSeconds(1))
+            .build());
+
+    @State(Scope.Thread)
+    public static class Latency {
+        private long latencyNanos = 1_000_000;
+
+        long next() {
+            latencyNanos = latencyNanos * 6364136223846793005L + 1442695040888963407L;
+            return 1_000_000 + (latencyNanos >>> 40);
+        }
+    }
+
+    @Benchmark
+    public void timeBasedWindow(Latency latency) {
+        timeBasedWindow.record(latency.next(), false, false);
+    }
+
+    @Benchmark
+    public void countBasedWindow(Latency latency) {
+        countBasedWindow.record(latency.next(), false, false);
+    }
+
+    @Benchmark
+    public boolean slowCallCircuitBreaker(Latency latency) {
+        boolean permitted = slowCallCircuitBreaker.tryAcquirePermission();
+        slowCallCircuitBreaker.onSuccess(latency.next());
+        return permitted;
+    }
+
+    @Benchmark
+    public boolean resilience4jTimeBased(Latency latency) {
+        boolean permitted = timeBasedCircuitBreaker.tryAcquirePermission();
+        timeBasedCircuitBreaker.onSuccess(latency.next(), TimeUnit.NANOSECONDS);
+        return permitted;
+    }
+
+    @Benchmark
+    public boolean resilience4jCountBased(Latency latency) {
+        boolean permitted = countBasedCircuitBreaker.tryAcquirePermission();
+        countBasedCircuitBreaker.onSuccess(latency.next(), TimeUnit.NANOSECONDS);
+        return permitted;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MetricsRecordingBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
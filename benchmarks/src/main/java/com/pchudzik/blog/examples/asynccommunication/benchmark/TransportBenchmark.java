@@ -0,0 +1,153 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.transport.SharedTransport;
+import feign.Feign;
+import feign.RequestLine;
+import feign.gson.GsonDecoder;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 16 threads calling two BreakableServices through Retrofit and Feign. {@code defaults} is what the tests do - fresh
+ * OkHttpClient per Retrofit target and HttpURLConnection for Feign, {@code shared} is single HTTP/1.1 pool and
+ * {@code h2c} multiplexes everything over one connection per service. Number of connections opened by OkHttp in every
+ * iteration is printed, it's the connection churn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(16)
+public class TransportBenchmark {
+    @Param({"defaults", "shared", "h2c"})
+    String transport;
+
+    private final LongAdder connects = new LongAdder();
+    private BreakableService firstService;
+    private BreakableService secondService;
+    private SharedTransport sharedTransport;
+    private HelloWorld firstRetrofit;
+    private HelloWorld secondRetrofit;
+    private FeignHelloWorld firstFeign;
+    private FeignHelloWorld secondFeign;
+
+    @Setup
+    public void setup() throws Exception {
+        BreakableService.ResponseHandler hello = new BreakableService.FixedResponseHandler(200, "hello world")
+                .withLatency(LatencyProfile.uniform(Duration.ofMillis(1), Duration.ofMillis(3)));
+        firstService = new BreakableService(hello, ServerEngine.virtualThreads());
+        firstService.startServer();
+        secondService = new BreakableService(hello, ServerEngine.virtualThreads());
+        secondService.startServer();
+
+        if (transport.equals("defaults")) {
+            firstRetrofit = retrofit(new Retrofit.Builder().client(countingClient()), firstService);
+            secondRetrofit = retrofit(new Retrofit.Builder().client(countingClient()), secondService);
+            firstFeign = feign(Feign.builder(), firstService);
+            secondFeign = feign(Feign.builder(), secondService);
+        } else {
+            SharedTransport.Builder builder = SharedTransport.builder();
+            if (transport.equals("h2c")) {
+                builder.http2PriorKnowledge();
+            }
+            sharedTransport = builder.build();
+            firstRetrofit = retrofit(sharedTransport.retrofit(url(firstService) + "/"), firstService);
+            secondRetrofit = retrofit(sharedTransport.retrofit(url(secondService) + "/"), secondService);
+            firstFeign = feign(sharedTransport.feign(), firstService);
+            secondFeign = feign(sharedTransport.feign(), secondService);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportConnects() {
+        long opened = sharedTransport != null ? sharedTransport.connectsTotal() : connects.sum();
+        System.out.println("connections opened: " + opened);
+    }
+
+    @TearDown
+    public void tearDown() {
+        firstService.stopServer();
+        secondService.stopServer();
+        if (sharedTransport != null) {
+            sharedTransport.close();
+        }
+    }
+
+    @Benchmark
+    public Hello retrofit() throws Exception {
+        firstRetrofit.sayHello().execute().body();
+        return secondRetrofit.sayHello().execute().body();
+    }
+
+    @Benchmark
+    public Hello feign() {
+        firstFeign.sayHello();
+        return secondFeign.sayHello();
+    }
+
+    private OkHttpClient countingClient() {
+        return new OkHttpClient.Builder()
+                .eventListener(new EventListener() {
+                    @Override
+                    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                        connects.increment();
+                    }
+                })
+                .build();
+    }
+
+    private static HelloWorld retrofit(Retrofit.Builder builder, BreakableService service) {
+        return builder
+                .baseUrl(url(service) + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    private static FeignHelloWorld feign(Feign.Builder builder, BreakableService service) {
+        return builder
+                .decoder(new GsonDecoder())
+                .target(FeignHelloWorld.class, url(service));
+    }
+
+    private static String url(BreakableService service) {
+        return "http://localhost:" + service.getPort();
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        retrofit2.Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TransportBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
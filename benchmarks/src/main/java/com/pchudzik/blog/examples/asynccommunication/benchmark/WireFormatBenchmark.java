@@ -0,0 +1,162 @@
+package com.pchudzik.blog.examples.asynccommunication.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.codegen.CodegenGson;
+import com.pchudzik.blog.examples.asynccommunication.streaming.BufferPool;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonConverterFactory;
+import com.pchudzik.blog.examples.asynccommunication.wire.Cbor;
+import com.pchudzik.blog.examples.asynccommunication.wire.CborConverterFactory;
+import com.pchudzik.blog.examples.asynccommunication.wire.CborDecoder;
+import com.pchudzik.blog.examples.asynccommunication.wire.CborReader;
+import com.pchudzik.blog.examples.asynccommunication.wire.CborWriter;
+import feign.Feign;
+import feign.RequestLine;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against CBOR between BreakableService and the clients. End to end benchmarks count response bytes in
+ * {@code wireBytes} secondary result, in memory ones show pure encode and decode cost of both formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final Type HELLOS = new TypeToken<List<Hello>>() {}.getType();
+
+    @Param({"1", "1000"})
+    int messages;
+
+    @Param({"json", "cbor"})
+    String format;
+
+    private final Gson gson = CodegenGson.gson();
+    private BreakableService breakableService;
+    private HelloWorld retrofit;
+    private FeignHelloWorld feign;
+    private List<Hello> payload;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        payload = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            payload.add(new Hello("hello world " + i));
+        }
+        FixedResponse response = FixedResponse.jsonResponse().withBody(gson.toJson(payload));
+        breakableService = new BreakableService(() -> response, ServerEngine.nio(2));
+        breakableService.startServer();
+
+        boolean cbor = format.equals("cbor");
+        String baseUrl = "http://localhost:" + breakableService.getPort();
+        OkHttpClient.Builder client = new OkHttpClient.Builder();
+        Feign.Builder feignBuilder = Feign.builder().decoder(new CborDecoder(gson, new BufferPool(64, 16 * 1024)));
+        if (cbor) {
+            client.addInterceptor(Cbor.acceptInterceptor());
+            feignBuilder.requestInterceptor(Cbor.acceptRequestInterceptor());
+        }
+        retrofit = new Retrofit.Builder()
+                .client(client.build())
+                .addConverterFactory(CborConverterFactory.create(gson, new BufferPool(64, 16 * 1024)))
+                .addConverterFactory(StreamingGsonConverterFactory.create(gson, new BufferPool(64, 16 * 1024)))
+                .baseUrl(baseUrl + "/")
+                .build()
+                .create(HelloWorld.class);
+        feign = feignBuilder.target(FeignHelloWorld.class, baseUrl);
+        encoded = encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Wire {
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public List<Hello> retrofit(Wire wire) throws Exception {
+        Response<List<Hello>> response = retrofit.sayHellos().execute();
+        wire.wireBytes += Long.parseLong(response.raw().header("Content-Length"));
+        return response.body();
+    }
+
+    @Benchmark
+    public List<Hello> feign() {
+        return feign.sayHellos();
+    }
+
+    @Benchmark
+    public byte[] encodeInMemory() throws IOException {
+        return encode();
+    }
+
+    @Benchmark
+    public List<Hello> decodeInMemory() throws IOException {
+        if (format.equals("cbor")) {
+            return gson.fromJson(new CborReader(new ByteArrayInputStream(encoded)), HELLOS);
+        }
+        return gson.fromJson(new String(encoded, "UTF-8"), HELLOS);
+    }
+
+    private byte[] encode() throws IOException {
+        if (format.equals("cbor")) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try (CborWriter writer = new CborWriter(result)) {
+                gson.toJson(payload, HELLOS, writer);
+            }
+            return result.toByteArray();
+        }
+        return gson.toJson(payload, HELLOS).getBytes("UTF-8");
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<List<Hello>> sayHellos();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        List<Hello> sayHellos();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WireFormatBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
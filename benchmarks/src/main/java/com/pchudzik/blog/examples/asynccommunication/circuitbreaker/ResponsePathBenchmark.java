@@ -0,0 +1,71 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side cost of a single {@code /hello} request without the network. Lives in BreakableService's package to
+ * reach request parser and encoded response. Compare {@code gc.alloc.rate.norm} of both benchmarks with
+ * {@code -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponsePathBenchmark {
+    private static final byte[] REQUEST = ("GET /hello HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "Accept: application/json\r\n" +
+            "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private final ByteBuffer output = ByteBuffer.allocate(16 * 1024);
+    private final HttpRequestHead request = new HttpRequestHead();
+    private BreakableService breakableService;
+
+    @Setup
+    public void setup() {
+        breakableService = new BreakableService(new FixedResponseHandler(200, "hello world"), ServerEngine.nio(1));
+    }
+
+    @Benchmark
+    public ByteBuffer preEncodedResponse() {
+        request.parse(REQUEST, 0, REQUEST.length);
+        output.clear();
+        return output.put(breakableService.respond(request).encoded());
+    }
+
+    /**
+     * Approximates what every request used to cost: gson serialization, new response and body encoded twice.
+     */
+    @Benchmark
+    public ByteBuffer perRequestResponse() {
+        request.parse(REQUEST, 0, REQUEST.length);
+        String body = BreakableService.message("hello world");
+        FixedResponse response = FixedResponse.jsonResponse()
+                .withStatusCode(200)
+                .withBody(body);
+        output.clear();
+        output.putInt(response.statusCode());
+        output.putInt(body.getBytes(StandardCharsets.UTF_8).length);
+        return output.put(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResponsePathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
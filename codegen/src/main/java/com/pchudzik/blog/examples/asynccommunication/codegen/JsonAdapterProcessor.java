@@ -0,0 +1,446 @@
+package com.pchudzik.blog.examples.asynccommunication.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates Gson {@code TypeAdapter} for every class annotated with {@code @GenerateJson}. Adapter is generated next
+ * to the class as {@code <SimpleName>_JsonAdapter} (nested classes joined with {@code _}) and reads and writes
+ * properties through getters, constructors, setters or non private fields, so no reflection is involved once the
+ * adapter is created. Properties which are neither strings nor primitives are delegated to the Gson adapter of their
+ * type.
+ * <p>
+ * Processor refers to the annotation and Gson by name only, this module has no dependencies.
+ */
+@SupportedAnnotationTypes(JsonAdapterProcessor.GENERATE_JSON)
+public class JsonAdapterProcessor extends AbstractProcessor {
+    static final String GENERATE_JSON = "com.pchudzik.blog.examples.asynccommunication.codegen.GenerateJson";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    private static final String ADAPTER_SUFFIX = "_JsonAdapter";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                try {
+                    generate(validate(element));
+                } catch (CodegenException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Writing adapter failed: " + e, element);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static TypeElement validate(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            throw new CodegenException(element, "@GenerateJson is supported on classes only");
+        }
+        TypeElement type = (TypeElement) element;
+        if (type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new CodegenException(element, "@GenerateJson class must be concrete and not private");
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            throw new CodegenException(element, "@GenerateJson nested class must be static");
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new CodegenException(element, "@GenerateJson doesn't support generic classes");
+        }
+        return type;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String adapterName = (packageName.isEmpty() ? typeName : typeName.substring(packageName.length() + 1)).replace('.', '_') + ADAPTER_SUFFIX;
+        List<Property> properties = properties(type);
+        ExecutableElement constructor = allPropertiesConstructor(type, properties);
+        if (constructor == null && !hasNoArgConstructor(type)) {
+            throw new CodegenException(type, "@GenerateJson class needs no-arg constructor or constructor taking all fields in declaration order");
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ").append(JsonAdapterProcessor.class.getName()).append(" for {@link ").append(typeName).append("}.\n */\n")
+                .append("public final class ").append(adapterName).append(" extends com.google.gson.TypeAdapter<").append(typeName).append("> {\n");
+        for (Property property : properties) {
+            if (property.kind == Kind.DELEGATE) {
+                source.append("    private final com.google.gson.TypeAdapter<").append(property.type).append("> ").append(property.field).append("Adapter;\n");
+            }
+        }
+        source.append("\n    public ").append(adapterName).append("(com.google.gson.Gson gson) {\n");
+        for (Property property : properties) {
+            if (property.kind == Kind.DELEGATE) {
+                source.append("        this.").append(property.field).append("Adapter = gson.getAdapter(new com.google.gson.reflect.TypeToken<")
+                        .append(property.type).append(">() {});\n");
+            }
+        }
+        source.append("    }\n\n");
+        appendWrite(source, typeName, properties);
+        appendRead(source, typeName, properties, constructor);
+        source.append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? adapterName : packageName + "." + adapterName, type).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private static void appendWrite(StringBuilder source, String typeName, List<Property> properties) {
+        source.append("    @Override\n")
+                .append("    public void write(com.google.gson.stream.JsonWriter out, ").append(typeName).append(" value) throws java.io.IOException {\n")
+                .append("        if (value == null) {\n")
+                .append("            out.nullValue();\n")
+                .append("            return;\n")
+                .append("        }\n")
+                .append("        out.beginObject();\n");
+        for (Property property : properties) {
+            source.append("        out.name(\"").append(escape(property.jsonName)).append("\");\n");
+            String value = "value." + property.getter;
+            switch (property.kind) {
+                case DELEGATE:
+                    source.append("        ").append(property.field).append("Adapter.write(out, ").append(value).append(");\n");
+                    break;
+                case PRIMITIVE:
+                    source.append("        out.value(").append(property.writeExpression(value)).append(");\n");
+                    break;
+                default:
+                    source.append("        {\n")
+                            .append("            ").append(property.type).append(" ").append(property.local()).append(" = ").append(value).append(";\n")
+                            .append("            if (").append(property.local()).append(" == null) {\n")
+                            .append("                out.nullValue();\n")
+                            .append("            } else {\n")
+                            .append("                out.value(").append(property.writeExpression(property.local())).append(");\n")
+                            .append("            }\n")
+                            .append("        }\n");
+            }
+        }
+        source.append("        out.endObject();\n")
+                .append("    }\n\n");
+    }
+
+    private static void appendRead(StringBuilder source, String typeName, List<Property> properties, ExecutableElement constructor) {
+        source.append("    @Override\n")
+                .append("    public ").append(typeName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n")
+                .append("        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n")
+                .append("            in.nextNull();\n")
+                .append("            return null;\n")
+                .append("        }\n");
+        for (Property property : properties) {
+            source.append("        ").append(property.type).append(" ").append(property.local()).append(" = ").append(property.defaultValue()).append(";\n");
+        }
+        source.append("        in.beginObject();\n")
+                .append("        while (in.hasNext()) {\n")
+                .append("            switch (in.nextName()) {\n");
+        for (Property property : properties) {
+            source.append("                case \"").append(escape(property.jsonName)).append("\":\n");
+            if (property.kind == Kind.DELEGATE) {
+                source.append("                    ").append(property.local()).append(" = ").append(property.field).append("Adapter.read(in);\n");
+            } else {
+                source.append("                    if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n")
+                        .append("                        in.nextNull();\n")
+                        .append("                    } else {\n")
+                        .append("                        ").append(property.local()).append(" = ").append(property.readExpression()).append(";\n")
+                        .append("                    }\n");
+            }
+            source.append("                    break;\n");
+        }
+        source.append("                default:\n")
+                .append("                    in.skipValue();\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        in.endObject();\n");
+
+        if (constructor != null) {
+            source.append("        return new ").append(typeName).append("(");
+            for (int i = 0; i < properties.size(); i++) {
+                source.append(i == 0 ? "" : ", ").append(properties.get(i).local());
+            }
+            source.append(");\n");
+        } else {
+            source.append("        ").append(typeName).append(" result = new ").append(typeName).append("();\n");
+            for (Property property : properties) {
+                source.append("        result.").append(property.setter(property.local())).append(";\n");
+            }
+            source.append("        return result;\n");
+        }
+        source.append("    }\n");
+    }
+
+    private List<Property> properties(TypeElement type) {
+        List<ExecutableElement> methods = ElementFilter.methodsIn(type.getEnclosedElements());
+        List<Property> properties = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            boolean accessible = !modifiers.contains(Modifier.PRIVATE);
+
+            String getter = findMethod(methods, "get" + capitalized, field.asType(), false);
+            if (getter == null && field.asType().getKind() == TypeKind.BOOLEAN) {
+                getter = findMethod(methods, "is" + capitalized, field.asType(), false);
+            }
+            if (getter == null && !accessible) {
+                throw new CodegenException(field, "Field " + name + " needs a getter or must not be private");
+            }
+            String setter = findMethod(methods, "set" + capitalized, field.asType(), true);
+            if (setter == null && accessible && !modifiers.contains(Modifier.FINAL)) {
+                setter = name;
+            }
+            properties.add(new Property(
+                    name,
+                    serializedName(field, name),
+                    field.asType(),
+                    getter != null ? getter + "()" : name,
+                    setter,
+                    setter != null && setter.equals(name)));
+        }
+        return properties;
+    }
+
+    private String findMethod(List<ExecutableElement> methods, String name, TypeMirror type, boolean setter) {
+        for (ExecutableElement method : methods) {
+            if (!method.getSimpleName().contentEquals(name)
+                    || method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            boolean matches = setter
+                    ? method.getParameters().size() == 1 && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type)
+                    : method.getParameters().isEmpty() && processingEnv.getTypeUtils().isSameType(method.getReturnType(), type);
+            if (matches) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private ExecutableElement allPropertiesConstructor(TypeElement type, List<Property> properties) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().size() != properties.size() || properties.isEmpty()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < properties.size(); i++) {
+                matches &= processingEnv.getTypeUtils().isSameType(constructor.getParameters().get(i).asType(), properties.get(i).type);
+            }
+            if (matches) {
+                return constructor;
+            }
+        }
+        for (Property property : properties) {
+            if (property.setter == null) {
+                throw new CodegenException(type, "Field " + property.field + " can't be set, add a setter or constructor taking all fields");
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PRIVATE) && constructor.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String serializedName(VariableElement field, String name) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(SERIALIZED_NAME)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                    if (value.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) value.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return name;
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (element.getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private enum Kind {
+        PRIMITIVE, BOXED, STRING, DELEGATE
+    }
+
+    private static class Property {
+        private final String field;
+        private final String jsonName;
+        private final TypeMirror type;
+        private final String getter;
+        private final String setter;
+        private final boolean setterIsField;
+        private final Kind kind;
+        private final String primitive;
+
+        private Property(String field, String jsonName, TypeMirror type, String getter, String setter, boolean setterIsField) {
+            this.field = field;
+            this.jsonName = jsonName;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+            this.setterIsField = setterIsField;
+            String typeName = type.toString();
+            if (type.getKind().isPrimitive()) {
+                this.kind = Kind.PRIMITIVE;
+                this.primitive = typeName;
+            } else if (typeName.equals("java.lang.String")) {
+                this.kind = Kind.STRING;
+                this.primitive = null;
+            } else if (unboxed(typeName) != null) {
+                this.kind = Kind.BOXED;
+                this.primitive = unboxed(typeName);
+            } else {
+                this.kind = Kind.DELEGATE;
+                this.primitive = null;
+            }
+        }
+
+        /**
+         * Name of local variable, prefixed so it never shadows parameters of generated methods.
+         */
+        String local() {
+            return "$" + field;
+        }
+
+        String setter(String value) {
+            return setterIsField ? setter + " = " + value : setter + "(" + value + ")";
+        }
+
+        /**
+         * Initializer of the local variable, int constant is assigned to byte and short without a cast.
+         */
+        String defaultValue() {
+            if (kind != Kind.PRIMITIVE) {
+                return "null";
+            }
+            switch (primitive) {
+                case "boolean":
+                    return "false";
+                case "char":
+                    return "'\\0'";
+                case "long":
+                    return "0L";
+                case "float":
+                    return "0f";
+                case "double":
+                    return "0d";
+                default:
+                    return "0";
+            }
+        }
+
+        String writeExpression(String value) {
+            if (kind == Kind.STRING) {
+                return value;
+            }
+            switch (primitive) {
+                case "boolean":
+                case "long":
+                case "double":
+                    return value;
+                case "char":
+                    return "String.valueOf(" + value + ")";
+                case "float":
+                    return "(Number) Float.valueOf(" + value + ")";
+                default:
+                    return "(long) " + value;
+            }
+        }
+
+        String readExpression() {
+            if (kind == Kind.STRING) {
+                return "in.nextString()";
+            }
+            switch (primitive) {
+                case "boolean":
+                    return "in.nextBoolean()";
+                case "long":
+                    return "in.nextLong()";
+                case "double":
+                    return "in.nextDouble()";
+                case "int":
+                    return "in.nextInt()";
+                case "char":
+                    return "in.nextString().charAt(0)";
+                default:
+                    return "(" + primitive + ") in.nextDouble()";
+            }
+        }
+
+        private static String unboxed(String boxed) {
+            switch (boxed) {
+                case "java.lang.Boolean":
+                    return "boolean";
+                case "java.lang.Character":
+                    return "char";
+                case "java.lang.Byte":
+                    return "byte";
+                case "java.lang.Short":
+                    return "short";
+                case "java.lang.Integer":
+                    return "int";
+                case "java.lang.Long":
+                    return "long";
+                case "java.lang.Float":
+                    return "float";
+                case "java.lang.Double":
+                    return "double";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static class CodegenException extends RuntimeException {
+        private final Element element;
+
+        private CodegenException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
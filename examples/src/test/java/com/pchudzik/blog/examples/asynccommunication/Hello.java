@@ -1,5 +1,8 @@
 package com.pchudzik.blog.examples.asynccommunication;
 
+import com.pchudzik.blog.examples.asynccommunication.codegen.GenerateJson;
+
+@GenerateJson
 public class Hello {
     private String message;
 
@@ -0,0 +1,83 @@
+package com.pchudzik.blog.examples.asynccommunication;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void percentiles_are_within_bucket_precision() {
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        assertWithinPrecision(50_000_000, histogram.valueAtPercentile(50));
+        assertWithinPrecision(95_000_000, histogram.valueAtPercentile(95));
+        assertWithinPrecision(99_000_000, histogram.valueAtPercentile(99));
+        assertWithinPrecision(100_000_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void small_values_are_exact() {
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(0, histogram.valueAtPercentile(0));
+        assertEquals(15, histogram.valueAtPercentile(50));
+        assertEquals(31, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void concurrent_recording_loses_nothing() throws Exception {
+        int threads = 8;
+        int valuesPerThread = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                for (int value = 0; value < valuesPerThread; value++) {
+                    histogram.record(value);
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(threads * valuesPerThread, histogram.count());
+    }
+
+    @Test
+    public void reset_clears_recorded_values() {
+        histogram.record(1_000);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+    @Test
+    public void histograms_are_merged() {
+        LatencyHistogram other = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i * 1_000);
+            other.record((50 + i) * 1_000);
+        }
+
+        histogram.add(other);
+
+        assertEquals(100, histogram.count());
+        assertWithinPrecision(99_000, histogram.valueAtPercentile(99));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected * 0.035);
+    }
+}
@@ -0,0 +1,138 @@
+package com.pchudzik.blog.examples.asynccommunication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel. Scheduling is a lock-free enqueue and every pending task costs one small node instead of a
+ * parked thread, so thousands of delayed tasks are cheap. Tasks run on the wheel thread and must not block - hand
+ * anything heavier off to an executor.
+ */
+public class TimerWheel implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    public TimerWheel(String name) {
+        this(name, 1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be power of 2");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        newTimeouts.add(new Timeout(task, System.nanoTime() + unit.toNanos(delay)));
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            waitForNextTick();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(tick);
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long deadline = startTime + (tick + 1) * tickNanos;
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            long deadlineTick = Math.max(tick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+            timeout.deadlineTick = deadlineTick;
+            wheel[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long deadlineTick;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Owned by the wheel thread only.
+     */
+    private static class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            head = timeout;
+        }
+
+        void expire(long tick) {
+            Timeout previous = null;
+            Timeout current = head;
+            while (current != null) {
+                Timeout next = current.next;
+                if (current.deadlineTick <= tick) {
+                    if (previous == null) {
+                        head = next;
+                    } else {
+                        previous.next = next;
+                    }
+                    current.next = null;
+                    runSafely(current.task);
+                } else {
+                    previous = current;
+                }
+                current = next;
+            }
+        }
+
+        private static void runSafely(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Scheduled task failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.pchudzik.blog.examples.asynccommunication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+    private final TimerWheel timerWheel = new TimerWheel("test-timer");
+
+    @After
+    public void tearDown() {
+        timerWheel.close();
+    }
+
+    @Test
+    public void tasks_never_run_before_their_deadline() throws Exception {
+        int tasks = 10_000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicInteger early = new AtomicInteger();
+
+        for (int i = 0; i < tasks; i++) {
+            long delayMillis = ThreadLocalRandom.current().nextLong(1, 1_500);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            timerWheel.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.incrementAndGet();
+                }
+                done.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+    }
+
+    @Test
+    public void delays_longer_than_wheel_rotation_are_supported() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        timerWheel.schedule(done::countDown, 1_200, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(3, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1_200);
+    }
+}
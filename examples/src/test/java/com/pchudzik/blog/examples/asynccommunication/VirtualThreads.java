@@ -0,0 +1,45 @@
+package com.pchudzik.blog.examples.asynccommunication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Project is compiled for java 8 so virtual threads are looked up reflectively and used only when running on JVM
+ * which supports them.
+ */
+public class VirtualThreads {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method newVirtualThreadPerTaskExecutor = findVirtualThreadPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            log.warn("Virtual threads are not supported by {}, falling back to cached thread pool", System.getProperty("java.version"));
+            return Executors.newCachedThreadPool();
+        }
+
+        try {
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create virtual thread executor", e);
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.pchudzik.blog.examples.asynccommunication.async;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.VirtualThreads;
+import com.pchudzik.blog.examples.asynccommunication.WireMockScenario;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.AsyncClient;
+import feign.AsyncFeign;
+import feign.Client;
+import feign.FeignException;
+import feign.Logger;
+import feign.Request;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AsyncFeignTest {
+    private static final ResponseDefinitionBuilder OK_RESPONSE = aResponse().withStatus(200).withBody("{\"message\":\"hello world\"}");
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().port(8080), true);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService clientExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        clientExecutor.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void everything_works_just_fine() throws Exception {
+        HelloWorld helloWorld = helloWorld("http://localhost:" + breakableService.getPort());
+
+        assertThat(helloWorld.sayHello().get().getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void circuit_breaker_opens_for_async_calls() throws Exception {
+        breakableService.useResponseHandler(new BreakableService.FixedResponseHandler(500, "error"));
+        int slidingWindowSize = 10;
+        CircuitBreaker circuitBreaker = CircuitBreaker.of(
+                "testName",
+                CircuitBreakerConfig.custom()
+                        .slidingWindowSize(slidingWindowSize)
+                        .build());
+        HelloWorld helloWorld = helloWorld("http://localhost:" + breakableService.getPort());
+
+        for (int i = 0; i < slidingWindowSize; i++) {
+            assertThat(failureOf(CompletionStageDecorator
+                            .of(helloWorld::sayHello)
+                            .withCircuitBreaker(circuitBreaker)
+                            .get()),
+                    instanceOf(FeignException.class));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThat(failureOf(CompletionStageDecorator
+                        .of(helloWorld::sayHello)
+                        .withCircuitBreaker(circuitBreaker)
+                        .get()),
+                instanceOf(CallNotPermittedException.class));
+    }
+
+    @Test
+    public void time_limiter_fails_slow_calls_and_breaker_records_them() throws Exception {
+        breakableService.useResponseHandler(new BreakableService.FixedResponseHandler(200, "slow")
+                .withLatency(LatencyProfile.fixed(Duration.ofSeconds(1))));
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("testName");
+        TimeLimiter timeLimiter = TimeLimiter.of(TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofMillis(100))
+                .build());
+        HelloWorld helloWorld = helloWorld("http://localhost:" + breakableService.getPort());
+
+        Throwable failure = failureOf(CompletionStageDecorator
+                .of(helloWorld::sayHello)
+                .withTimeLimiter(timeLimiter, scheduler)
+                .withCircuitBreaker(circuitBreaker)
+                .get());
+
+        assertThat(failure, instanceOf(TimeoutException.class));
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    public void retries_async_calls() throws Exception {
+        WireMockScenario
+                .of(get(urlMatching("/hello")), wireMockRule)
+                .willRespondWith(
+                        aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER),
+                        aResponse().withStatus(503).withBody("service unavailable"),
+                        OK_RESPONSE);
+        Retry retry = Retry.of("hello world", RetryConfig.custom()
+                .waitDuration(Duration.ofMillis(50))
+                .maxAttempts(3)
+                .build());
+        HelloWorld helloWorld = helloWorld("http://localhost:8080");
+
+        Hello hello = CompletionStageDecorator
+                .of(helloWorld::sayHello)
+                .withRetry(retry, scheduler)
+                .get()
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(hello.getMessage(), equalTo("hello world"));
+        // retry metrics are updated after the result is completed, requests made are known for sure
+        wireMockRule.verify(3, getRequestedFor(urlMatching("/hello")));
+    }
+
+    private HelloWorld helloWorld(String url) {
+        return AsyncFeign.asyncBuilder()
+                .client(new AsyncClient.Default<>(new Client.Default(null, null), clientExecutor))
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.BASIC)
+                .decoder(new GsonDecoder())
+                .target(HelloWorld.class, url);
+    }
+
+    private static Throwable failureOf(CompletionStage<?> stage) throws InterruptedException {
+        try {
+            stage.toCompletableFuture().get();
+            fail("Call should fail");
+            return null;
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+    }
+
+    public interface HelloWorld {
+        @GET
+        @Path("/hello")
+        CompletableFuture<Hello> sayHello();
+    }
+}
@@ -0,0 +1,213 @@
+package com.pchudzik.blog.examples.asynccommunication.async;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.VirtualThreads;
+import com.pchudzik.blog.examples.asynccommunication.WireMockScenario;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.retrofit.CircuitBreakerCallAdapter;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncRetrofitTest {
+    private static final ResponseDefinitionBuilder OK_RESPONSE = aResponse().withStatus(200).withBody("{\"message\":\"hello world\"}");
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().port(8080), true);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private BreakableService breakableService;
+    private Dispatcher dispatcher;
+    private OkHttpClient okHttpClient;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+        dispatcher = new Dispatcher(VirtualThreads.newVirtualThreadPerTaskExecutor());
+        dispatcher.setMaxRequests(10_000);
+        dispatcher.setMaxRequestsPerHost(10_000);
+        okHttpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        okHttpClient.dispatcher().executorService().shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void circuit_breaker_opens_for_async_calls() throws Exception {
+        breakableService.useResponseHandler(new BreakableService.FixedResponseHandler(500, "error"));
+        int slidingWindowSize = 10;
+        CircuitBreaker circuitBreaker = CircuitBreaker.of(
+                "testName",
+                CircuitBreakerConfig.custom()
+                        .slidingWindowSize(slidingWindowSize)
+                        .build());
+        HelloWorld helloWorld = new Retrofit.Builder()
+                .client(okHttpClient)
+                .addCallAdapterFactory(CircuitBreakerCallAdapter.of(circuitBreaker))
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+
+        for (int i = 0; i < slidingWindowSize; i++) {
+            assertThat(failureOf(helloWorld.sayHello()), instanceOf(HttpException.class));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThat(failureOf(helloWorld.sayHello()), instanceOf(CallNotPermittedException.class));
+    }
+
+    @Test
+    public void retries_async_calls_without_blocking() throws Exception {
+        WireMockScenario
+                .of(get(urlMatching("/hello")), wireMockRule)
+                .willRespondWith(
+                        aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER),
+                        aResponse().withStatus(503).withBody("Error"),
+                        OK_RESPONSE);
+        HelloWorld helloWorld = new Retrofit.Builder()
+                .client(okHttpClient.newBuilder()
+                        .readTimeout(500, TimeUnit.MILLISECONDS)
+                        .build())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:8080/")
+                .build()
+                .create(HelloWorld.class);
+        Retry retry = Retry.of("hello world", RetryConfig.<Response<Hello>>custom()
+                .waitDuration(Duration.ofMillis(50))
+                .maxAttempts(3)
+                .retryOnResult(response -> response.code() == 503)
+                .build());
+
+        Response<Hello> response = CompletionStageDecorator
+                .of(helloWorld::sayHelloResponse)
+                .withRetry(retry, scheduler)
+                .get()
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.body().getMessage(), equalTo("hello world"));
+        // retry metrics are updated after the result is completed, requests made are known for sure
+        wireMockRule.verify(3, getRequestedFor(urlMatching("/hello")));
+    }
+
+    /**
+     * Caller thread only enqueues, each call is blocking OkHttp I/O on a dispatcher thread. With virtual threads those
+     * are cheap, otherwise dispatcher needs a platform thread per call in flight.
+     */
+    @Test
+    public void thousand_enqueued_calls_are_in_flight_at_once() throws Exception {
+        int calls = 1_000;
+        Duration serverDelay = Duration.ofSeconds(3);
+        breakableService.useResponseHandler(new BreakableService.FixedResponseHandler(200, "hello world")
+                .withLatency(LatencyProfile.fixed(serverDelay)));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        HelloWorld helloWorld = new Retrofit.Builder()
+                .client(okHttpClient.newBuilder()
+                        .addInterceptor(chain -> {
+                            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            try {
+                                return chain.proceed(chain.request());
+                            } finally {
+                                inFlight.decrementAndGet();
+                            }
+                        })
+                        .build())
+                .addCallAdapterFactory(CircuitBreakerCallAdapter.of(CircuitBreaker.ofDefaults("testName")))
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        int threadsBefore = threads.getThreadCount();
+
+        List<CompletableFuture<Hello>> responses = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            responses.add(helloWorld.sayHello());
+        }
+        long lastEnqueued = System.nanoTime();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - lastEnqueued;
+
+        for (CompletableFuture<Hello> response : responses) {
+            assertEquals("hello world", response.get().getMessage());
+        }
+        assertEquals(calls, peakInFlight.get());
+        assertTrue(Duration.ofNanos(elapsed).toString(), elapsed < 2 * serverDelay.toNanos());
+        if (VirtualThreads.isSupported()) {
+            assertTrue(threads.getPeakThreadCount() - threadsBefore < calls / 10);
+        } else {
+            assertTrue(((ThreadPoolExecutor) dispatcher.executorService()).getLargestPoolSize() >= calls);
+        }
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("Call should fail");
+            return null;
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        CompletableFuture<Hello> sayHello();
+
+        @GET("hello")
+        CompletableFuture<Response<Hello>> sayHelloResponse();
+    }
+}
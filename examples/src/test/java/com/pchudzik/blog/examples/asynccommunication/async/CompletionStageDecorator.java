@@ -0,0 +1,51 @@
+package com.pchudzik.blog.examples.asynccommunication.async;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Stacks resilience4j decorators around asynchronous call. Decorators are applied in call order, so
+ * {@code of(call).withTimeLimiter(...).withCircuitBreaker(...).withRetry(...)} makes every retry attempt go through
+ * circuit breaker and every attempt has its own time limit. Nothing blocks calling thread - retries and timeouts are
+ * scheduled on provided scheduler.
+ */
+public class CompletionStageDecorator<T> {
+    private Supplier<CompletionStage<T>> supplier;
+
+    private CompletionStageDecorator(Supplier<CompletionStage<T>> supplier) {
+        this.supplier = supplier;
+    }
+
+    public static <T> CompletionStageDecorator<T> of(Supplier<? extends CompletionStage<T>> supplier) {
+        return new CompletionStageDecorator<>(supplier::get);
+    }
+
+    public CompletionStageDecorator<T> withTimeLimiter(TimeLimiter timeLimiter, ScheduledExecutorService scheduler) {
+        Supplier<CompletionStage<T>> decorated = supplier;
+        supplier = timeLimiter.decorateCompletionStage(scheduler, decorated);
+        return this;
+    }
+
+    public CompletionStageDecorator<T> withCircuitBreaker(CircuitBreaker circuitBreaker) {
+        supplier = CircuitBreaker.decorateCompletionStage(circuitBreaker, supplier);
+        return this;
+    }
+
+    public CompletionStageDecorator<T> withRetry(Retry retry, ScheduledExecutorService scheduler) {
+        supplier = Retry.decorateCompletionStage(retry, scheduler, supplier);
+        return this;
+    }
+
+    public Supplier<CompletionStage<T>> decorate() {
+        return supplier;
+    }
+
+    public CompletionStage<T> get() {
+        return supplier.get();
+    }
+}
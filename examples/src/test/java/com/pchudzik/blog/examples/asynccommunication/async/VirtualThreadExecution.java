@@ -0,0 +1,67 @@
+package com.pchudzik.blog.examples.asynccommunication.async;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.VirtualThreads;
+import feign.Feign;
+import feign.hystrix.SetterFactory;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs blocking, decorated calls on virtual threads. Concurrency is limited by semaphores (resilience4j
+ * {@link Bulkhead}, Hystrix semaphore isolation) instead of thread pool size, so waiting callers cost a parked virtual
+ * thread and not a platform one.
+ */
+public class VirtualThreadExecution implements AutoCloseable {
+    private final ExecutorService executorService = VirtualThreads.newVirtualThreadPerTaskExecutor();
+
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executorService.execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public <T> CompletableFuture<T> submit(Bulkhead bulkhead, CircuitBreaker circuitBreaker, Callable<T> call) {
+        return submit(Bulkhead.decorateCallable(bulkhead, CircuitBreaker.decorateCallable(circuitBreaker, call)));
+    }
+
+    /**
+     * Command is executed synchronously on the virtual thread, which only works with semaphore isolation - see
+     * {@link #semaphoreIsolation(int)}.
+     */
+    public <T> CompletableFuture<T> submit(HystrixCommand<T> command) {
+        return submit(command::execute);
+    }
+
+    /**
+     * Replaces Hystrix thread pool isolation with semaphore one, so commands run on calling thread.
+     */
+    public static SetterFactory semaphoreIsolation(int maxConcurrentRequests) {
+        return (target, method) -> HystrixCommand.Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey(target.name()))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(Feign.configKey(target.type(), method)))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withExecutionIsolationStrategy(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE)
+                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(maxConcurrentRequests)
+                        .withFallbackIsolationSemaphoreMaxConcurrentRequests(maxConcurrentRequests)
+                        .withRequestCacheEnabled(false));
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+}
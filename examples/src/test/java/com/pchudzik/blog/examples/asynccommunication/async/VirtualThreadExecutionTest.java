@@ -0,0 +1,225 @@
+package com.pchudzik.blog.examples.asynccommunication.async;
+
+import com.netflix.hystrix.Hystrix;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.VirtualThreads;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Logger;
+import feign.Request;
+import feign.gson.GsonDecoder;
+import feign.hystrix.HystrixFeign;
+import feign.hystrix.SetterFactory;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import javax.ws.rs.Path;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadExecutionTest {
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(VirtualThreadExecutionTest.class);
+    private static final int CONCURRENT_CALLS = 10_000;
+    private static final int MAX_CONCURRENT_REQUESTS = 1_000;
+    private static final int PLATFORM_THREADS = 200;
+    private static final String FALLBACK = "fallback";
+
+    private final VirtualThreadExecution execution = new VirtualThreadExecution();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(
+                new BreakableService.FixedResponseHandler(200, "hello world")
+                        .withLatency(LatencyProfile.fixed(Duration.ofMillis(100))),
+                ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        execution.close();
+        breakableService.stopServer();
+        Hystrix.reset();
+    }
+
+    @Test
+    public void hystrix_semaphore_isolation_on_virtual_threads_does_not_need_platform_thread_per_call() throws Exception {
+        requireVirtualThreads();
+        // both isolations allow the same number of concurrent commands, only threads running them differ
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        threads.resetPeakThreadCount();
+        int threadsBefore = threads.getThreadCount();
+        int threadPoolServed = countServed(hystrixHelloWorld((target, method) -> HystrixCommand.Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey("thread-pool-" + target.name()))
+                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter()
+                        .withCoreSize(PLATFORM_THREADS))));
+        int threadPoolPlatformThreads = threads.getPeakThreadCount() - threadsBefore;
+        Hystrix.reset();
+
+        threads.resetPeakThreadCount();
+        threadsBefore = threads.getThreadCount();
+        int semaphoreServed = countServed(hystrixHelloWorld(VirtualThreadExecution.semaphoreIsolation(PLATFORM_THREADS)));
+        int semaphorePlatformThreads = threads.getPeakThreadCount() - threadsBefore;
+
+        log.info("Out of {} concurrent calls thread pool isolation served {} using {} new platform threads, " +
+                        "semaphore isolation on virtual threads served {} using {} new platform threads",
+                CONCURRENT_CALLS, threadPoolServed, threadPoolPlatformThreads, semaphoreServed, semaphorePlatformThreads);
+        assertTrue(semaphoreServed > 0);
+        assertTrue(threadPoolPlatformThreads >= PLATFORM_THREADS);
+        assertTrue(semaphorePlatformThreads < PLATFORM_THREADS / 2);
+    }
+
+    @Test
+    public void resilience4j_bulkhead_on_virtual_threads_runs_more_concurrent_calls_than_platform_thread_pool() throws Exception {
+        requireVirtualThreads();
+        RetrofitHelloWorld helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(RetrofitHelloWorld.class);
+        ConcurrencyMeter concurrency = new ConcurrencyMeter();
+        Callable<Hello> sayHello = () -> concurrency.measure(() -> helloWorld.sayHello().execute().body());
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello");
+
+        Bulkhead bulkhead = Bulkhead.of("hello", BulkheadConfig.custom()
+                .maxConcurrentCalls(MAX_CONCURRENT_REQUESTS)
+                .maxWaitDuration(Duration.ofSeconds(30))
+                .build());
+        List<CompletableFuture<Hello>> virtualThreadResults = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CALLS; i++) {
+            virtualThreadResults.add(execution.submit(bulkhead, circuitBreaker, sayHello));
+        }
+        for (CompletableFuture<Hello> result : virtualThreadResults) {
+            assertEquals("hello world", result.get(30, TimeUnit.SECONDS).getMessage());
+        }
+        int virtualThreadsPeak = concurrency.resetPeak();
+
+        ExecutorService platformThreads = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        try {
+            List<Future<Hello>> platformThreadResults = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_CALLS; i++) {
+                platformThreadResults.add(platformThreads.submit(CircuitBreaker.decorateCallable(circuitBreaker, sayHello)));
+            }
+            for (Future<Hello> result : platformThreadResults) {
+                assertEquals("hello world", result.get(30, TimeUnit.SECONDS).getMessage());
+            }
+        } finally {
+            platformThreads.shutdown();
+        }
+        int platformThreadsPeak = concurrency.resetPeak();
+
+        log.info("Out of {} calls at most {} were in flight on virtual threads and {} on {} platform threads",
+                CONCURRENT_CALLS, virtualThreadsPeak, platformThreadsPeak, PLATFORM_THREADS);
+        assertTrue(platformThreadsPeak <= PLATFORM_THREADS);
+        assertTrue(virtualThreadsPeak <= MAX_CONCURRENT_REQUESTS);
+        assertTrue(virtualThreadsPeak > 2 * PLATFORM_THREADS);
+    }
+
+    /**
+     * Without virtual threads {@link VirtualThreadExecution} falls back to platform threads and there is nothing to
+     * compare. Test is skipped then, unless build runs with {@code virtual-threads} profile which requires them.
+     */
+    private static void requireVirtualThreads() {
+        String message = "Virtual threads are not supported by " + System.getProperty("java.version");
+        if (Boolean.getBoolean("virtualThreads.required")) {
+            assertTrue(message, VirtualThreads.isSupported());
+        } else if (!VirtualThreads.isSupported()) {
+            log.warn("{}, skipping test, run with virtual-threads profile to require them", message);
+        }
+        assumeTrue(message, VirtualThreads.isSupported());
+    }
+
+    private int countServed(HystrixHelloWorld helloWorld) throws Exception {
+        List<CompletableFuture<Hello>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CALLS; i++) {
+            results.add(execution.submit(helloWorld.sayHello()));
+        }
+
+        // rejected calls end up in fallback or fail when fallback is rejected too, either way they are not served
+        int served = 0;
+        for (CompletableFuture<Hello> result : results) {
+            served += result
+                    .handle((hello, failure) -> hello != null && "hello world".equals(hello.getMessage()) ? 1 : 0)
+                    .get(30, TimeUnit.SECONDS);
+        }
+        return served;
+    }
+
+    private HystrixHelloWorld hystrixHelloWorld(SetterFactory setterFactory) {
+        return HystrixFeign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.NONE)
+                .decoder(new GsonDecoder())
+                .setterFactory(setterFactory)
+                .target(HystrixHelloWorld.class, "http://localhost:" + breakableService.getPort(), () -> new HystrixCommand<Hello>(HystrixCommandGroupKey.Factory.asKey("default")) {
+                    @Override
+                    protected Hello run() {
+                        return new Hello(FALLBACK);
+                    }
+                });
+    }
+
+    private static class ConcurrencyMeter {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+
+        <T> T measure(Callable<T> call) throws Exception {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                return call.call();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        int resetPeak() {
+            return peak.getAndSet(0);
+        }
+    }
+
+    interface HystrixHelloWorld {
+        @javax.ws.rs.GET
+        @Path("/hello")
+        HystrixCommand<Hello> sayHello();
+    }
+
+    interface RetrofitHelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+}
@@ -0,0 +1,183 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side load balancer picking instance with power of two choices - two random instances are compared and the
+ * cheaper one wins. Cost is peak EWMA of latency multiplied by outstanding requests, so slow or busy instance quickly
+ * gets less traffic. Every instance has its own circuit breaker, instance with open breaker is not picked at all.
+ * <p>
+ * Latency average decays with {@code decayTime} also when instance is idle, so instance that used to be slow gets
+ * probed again after a while.
+ */
+public class LoadBalancer {
+    private final List<Instance> instances;
+
+    public LoadBalancer(List<String> endpoints, CircuitBreakerConfig breakerConfig) {
+        this(endpoints, breakerConfig, Duration.ofSeconds(10));
+    }
+
+    public LoadBalancer(List<String> endpoints, CircuitBreakerConfig breakerConfig, Duration decayTime) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        List<Instance> instances = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            instances.add(new Instance(endpoint, CircuitBreaker.of(endpoint, breakerConfig), decayTime.toNanos()));
+        }
+        this.instances = Collections.unmodifiableList(instances);
+    }
+
+    public List<Instance> instances() {
+        return instances;
+    }
+
+    public Selection choose() throws NoAvailableInstanceException {
+        int size = instances.size();
+        if (size > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int attempt = 0; attempt < size; attempt++) {
+                Instance first = instances.get(random.nextInt(size));
+                Instance second = instances.get(random.nextInt(size - 1));
+                if (second == first) {
+                    second = instances.get(size - 1);
+                }
+                if (second.cost() < first.cost()) {
+                    Instance tmp = first;
+                    first = second;
+                    second = tmp;
+                }
+                if (first.circuitBreaker.tryAcquirePermission()) {
+                    return new Selection(first);
+                }
+                if (second.circuitBreaker.tryAcquirePermission()) {
+                    return new Selection(second);
+                }
+            }
+        }
+
+        List<Instance> byCost = new ArrayList<>(instances);
+        byCost.sort(Comparator.comparingDouble(Instance::cost));
+        for (Instance instance : byCost) {
+            if (instance.circuitBreaker.tryAcquirePermission()) {
+                return new Selection(instance);
+            }
+        }
+        throw new NoAvailableInstanceException(instances.size());
+    }
+
+    public static class Instance {
+        private final String endpoint;
+        private final URI uri;
+        private final CircuitBreaker circuitBreaker;
+        private final double decayNanos;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile double latencyNanos;
+        private volatile long lastUpdate = System.nanoTime();
+
+        private Instance(String endpoint, CircuitBreaker circuitBreaker, long decayNanos) {
+            this.endpoint = endpoint;
+            this.uri = URI.create(endpoint);
+            this.circuitBreaker = circuitBreaker;
+            this.decayNanos = decayNanos;
+        }
+
+        public String endpoint() {
+            return endpoint;
+        }
+
+        public URI uri() {
+            return uri;
+        }
+
+        public CircuitBreaker circuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public double latencyNanos() {
+            return decayed(System.nanoTime());
+        }
+
+        /**
+         * Instance without latency samples which already has a request in flight is avoided, otherwise the first slow
+         * response would be preceded by a burst of requests to the same instance.
+         */
+        double cost() {
+            double latency = latencyNanos();
+            int outstanding = this.outstanding.get();
+            if (latency == 0 && outstanding > 0) {
+                return Double.MAX_VALUE / 2;
+            }
+            return latency * (outstanding + 1);
+        }
+
+        /**
+         * Latency higher than current average replaces it right away, lower values are averaged in.
+         */
+        private synchronized void observe(long rttNanos) {
+            long now = System.nanoTime();
+            double current = decayed(now);
+            double weight = Math.exp(-(now - lastUpdate) / decayNanos);
+            latencyNanos = rttNanos > current ? rttNanos : current * weight + rttNanos * (1 - weight);
+            lastUpdate = now;
+        }
+
+        private double decayed(long now) {
+            return latencyNanos * Math.exp(-(now - lastUpdate) / decayNanos);
+        }
+
+        @Override
+        public String toString() {
+            return endpoint;
+        }
+    }
+
+    /**
+     * Chosen instance, exactly one of the outcome methods must be called when request completes.
+     */
+    public static class Selection {
+        private final Instance instance;
+        private final long start = System.nanoTime();
+
+        private Selection(Instance instance) {
+            this.instance = instance;
+            instance.outstanding.incrementAndGet();
+        }
+
+        public Instance instance() {
+            return instance;
+        }
+
+        public void onSuccess() {
+            long rtt = complete();
+            instance.circuitBreaker.onSuccess(rtt, TimeUnit.NANOSECONDS);
+        }
+
+        public void onFailure(Throwable failure) {
+            long rtt = complete();
+            instance.circuitBreaker.onError(rtt, TimeUnit.NANOSECONDS, failure);
+        }
+
+        private long complete() {
+            long rtt = System.nanoTime() - start;
+            instance.outstanding.decrementAndGet();
+            instance.observe(rtt);
+            return rtt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Client;
+import feign.Feign;
+import feign.RequestLine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadBalancerTest {
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancerTest.class);
+    private static final BreakableService.ResponseHandler HELLO = new BreakableService.FixedResponseHandler(200, "hello world");
+    private static final BreakableService.ResponseHandler UNAVAILABLE = new BreakableService.FixedResponseHandler(503, "unavailable");
+    private static final CircuitBreakerConfig BREAKER_CONFIG = CircuitBreakerConfig.custom()
+            .slidingWindowSize(10)
+            .minimumNumberOfCalls(10)
+            .failureRateThreshold(50)
+            .waitDurationInOpenState(Duration.ofMinutes(1))
+            .build();
+
+    private final List<BreakableService> instances = new ArrayList<>();
+    private final List<AtomicInteger> requests = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        instances.forEach(BreakableService::stopServer);
+    }
+
+    @Test
+    public void traffic_shifts_away_from_slow_instance() throws Exception {
+        LoadBalancer loadBalancer = start(
+                HELLO,
+                HELLO,
+                HELLO.withLatency(LatencyProfile.fixed(Duration.ofMillis(100))));
+        HelloWorld helloWorld = retrofit(loadBalancer);
+
+        callConcurrently(8, 50, () -> assertEquals("hello world", helloWorld.sayHello().execute().body().getMessage()));
+
+        log.info("Requests per instance {}", requests);
+        assertTrue(requests.get(2).get() < 400 / 10);
+    }
+
+    @Test
+    public void failing_instance_is_ejected() throws Exception {
+        // with default decay single slow response while warming up can keep instance away for longer than the test
+        // runs and the breaker would never see enough calls
+        LoadBalancer loadBalancer = start(
+                Duration.ofMillis(100),
+                HELLO,
+                HELLO,
+                new BreakableService.RandomResponseHandler(0.7, HELLO, UNAVAILABLE));
+        HelloWorld helloWorld = retrofit(loadBalancer);
+
+        callConcurrently(4, 100, () -> helloWorld.sayHello().execute());
+
+        log.info("Requests per instance {}", requests);
+        assertEquals(CircuitBreaker.State.OPEN, loadBalancer.instances().get(2).circuitBreaker().getState());
+        assertTrue(requests.get(2).get() < 400 / 10);
+    }
+
+    @Test
+    public void feign_requests_are_spread_across_healthy_instances() throws Exception {
+        LoadBalancer loadBalancer = start(HELLO, HELLO, HELLO);
+        FeignHelloWorld helloWorld = Feign.builder()
+                .client(new LoadBalancingClient(new Client.Default(null, null), loadBalancer))
+                .target(FeignHelloWorld.class, "http://hello-world");
+
+        callConcurrently(4, 50, () -> assertThat(helloWorld.sayHello(), containsString("hello world")));
+
+        log.info("Requests per instance {}", requests);
+        for (AtomicInteger instanceRequests : requests) {
+            assertTrue(instanceRequests.get() > 200 / 10);
+        }
+    }
+
+    @Test
+    public void request_fails_when_all_instances_are_ejected() throws Exception {
+        LoadBalancer loadBalancer = start(HELLO, HELLO);
+        loadBalancer.instances().forEach(instance -> instance.circuitBreaker().transitionToForcedOpenState());
+
+        try {
+            retrofit(loadBalancer).sayHello().execute();
+            fail("Request should fail");
+        } catch (NoAvailableInstanceException expected) {
+        }
+        assertEquals(0, requests.get(0).get() + requests.get(1).get());
+    }
+
+    private LoadBalancer start(BreakableService.ResponseHandler... handlers) throws Exception {
+        return start(Duration.ofSeconds(10), handlers);
+    }
+
+    private LoadBalancer start(Duration decayTime, BreakableService.ResponseHandler... handlers) throws Exception {
+        List<String> endpoints = new ArrayList<>();
+        for (BreakableService.ResponseHandler handler : handlers) {
+            AtomicInteger counter = new AtomicInteger();
+            BreakableService instance = new BreakableService(() -> {
+                counter.incrementAndGet();
+                return handler.handleResponse();
+            }, ServerEngine.nio(1));
+            instance.startServer();
+            instances.add(instance);
+            requests.add(counter);
+            endpoints.add("http://localhost:" + instance.getPort());
+        }
+        return new LoadBalancer(endpoints, BREAKER_CONFIG, decayTime);
+    }
+
+    private static void callConcurrently(int threads, int callsPerThread, CheckedRunnable call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < callsPerThread; j++) {
+                        call.run();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static HelloWorld retrofit(LoadBalancer loadBalancer) {
+        return new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .addInterceptor(new LoadBalancingInterceptor(loadBalancer))
+                        .build())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://hello-world/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    private interface CheckedRunnable {
+        void run() throws Exception;
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        String sayHello();
+    }
+}
@@ -0,0 +1,61 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Feign {@link Client} sending request to instance chosen by {@link LoadBalancer}. Target URL host is a placeholder,
+ * only path and query of the request are kept.
+ */
+public class LoadBalancingClient implements Client {
+    private final Client delegate;
+    private final LoadBalancer loadBalancer;
+
+    public LoadBalancingClient(Client delegate, LoadBalancer loadBalancer) {
+        this.delegate = delegate;
+        this.loadBalancer = loadBalancer;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        LoadBalancer.Selection selection = loadBalancer.choose();
+        Request balanced = Request.create(
+                request.httpMethod(),
+                rewrite(request.url(), selection.instance().uri()),
+                request.headers(),
+                request.body(),
+                request.charset(),
+                request.requestTemplate());
+
+        Response response;
+        try {
+            response = delegate.execute(balanced, options);
+        } catch (IOException | RuntimeException | Error e) {
+            selection.onFailure(e);
+            throw e;
+        }
+
+        if (ServerErrorException.isServerError(response.status())) {
+            selection.onFailure(new ServerErrorException(selection.instance().endpoint(), response.status()));
+        } else {
+            selection.onSuccess();
+        }
+        return response;
+    }
+
+    private static String rewrite(String url, URI instance) {
+        URI original = URI.create(url);
+        StringBuilder result = new StringBuilder()
+                .append(instance.getScheme()).append("://")
+                .append(instance.getHost()).append(':').append(instance.getPort())
+                .append(original.getRawPath());
+        if (original.getRawQuery() != null) {
+            result.append('?').append(original.getRawQuery());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Sends request to instance chosen by {@link LoadBalancer}, scheme, host and port of the original URL are replaced
+ * and the path is kept. Register it as application interceptor and use any placeholder host in Retrofit base URL.
+ */
+public class LoadBalancingInterceptor implements Interceptor {
+    private final LoadBalancer loadBalancer;
+
+    public LoadBalancingInterceptor(LoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        LoadBalancer.Selection selection = loadBalancer.choose();
+        URI instance = selection.instance().uri();
+        HttpUrl url = chain.request().url().newBuilder()
+                .scheme(instance.getScheme())
+                .host(instance.getHost())
+                .port(instance.getPort())
+                .build();
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request().newBuilder().url(url).build());
+        } catch (IOException | RuntimeException | Error e) {
+            selection.onFailure(e);
+            throw e;
+        }
+
+        if (ServerErrorException.isServerError(response.code())) {
+            selection.onFailure(new ServerErrorException(selection.instance().endpoint(), response.code()));
+        } else {
+            selection.onSuccess();
+        }
+        return response;
+    }
+}
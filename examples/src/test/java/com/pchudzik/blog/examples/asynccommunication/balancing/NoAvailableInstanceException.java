@@ -0,0 +1,11 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import java.io.IOException;
+
+public class NoAvailableInstanceException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public NoAvailableInstanceException(int instances) {
+        super("Circuit breakers of all " + instances + " instances are open");
+    }
+}
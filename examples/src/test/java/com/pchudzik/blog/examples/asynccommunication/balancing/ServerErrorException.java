@@ -0,0 +1,19 @@
+package com.pchudzik.blog.examples.asynccommunication.balancing;
+
+import java.io.IOException;
+
+/**
+ * Recorded by instance circuit breaker for {@code 5xx} responses. It's never thrown, response is returned to the
+ * caller as is.
+ */
+class ServerErrorException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ServerErrorException(String endpoint, int statusCode) {
+        super(endpoint + " responded with " + statusCode);
+    }
+
+    static boolean isServerError(int statusCode) {
+        return statusCode >= 500;
+    }
+}
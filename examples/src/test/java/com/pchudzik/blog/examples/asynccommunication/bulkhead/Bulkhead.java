@@ -0,0 +1,54 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Caps number of concurrent calls to one endpoint, calls above the cap fail with {@link BulkheadFullException}
+ * instead of taking threads and connections of the other endpoints.
+ */
+public interface Bulkhead extends AutoCloseable {
+    <T> T execute(IoCallable<T> call) throws IOException;
+
+    String name();
+
+    int activeCalls();
+
+    /**
+     * Calls waiting for a permit or a pool thread right now.
+     */
+    int queueDepth();
+
+    /**
+     * Nanoseconds admitted calls waited for a permit or a pool thread, {@code 0} for calls admitted right away.
+     */
+    LatencyHistogram waitTime();
+
+    long rejected();
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Calls run on the caller thread. Caller above {@code maxConcurrentCalls} waits at most {@code maxWait} for a
+     * permit, {@link Duration#ZERO} rejects it right away.
+     */
+    static Bulkhead semaphore(String name, int maxConcurrentCalls, Duration maxWait) {
+        return new SemaphoreBulkhead(name, maxConcurrentCalls, maxWait);
+    }
+
+    /**
+     * Calls run on {@code threads} dedicated threads, at most {@code queueCapacity} calls wait for a free thread. Caller
+     * blocks until the call completes, HTTP client timeouts still apply.
+     */
+    static Bulkhead threadPool(String name, int threads, int queueCapacity) {
+        return new ThreadPoolBulkhead(name, threads, queueCapacity);
+    }
+
+    interface IoCallable<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,30 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Feign {@link Client} running every request in {@link Bulkhead} of its endpoint. Under {@code HystrixFeign} it gives
+ * endpoints of one target separate limits, Hystrix thread pool is shared by the whole target. Feign turns
+ * {@link BulkheadFullException} into {@code RetryableException}, use it with {@code Retryer.NEVER_RETRY}.
+ */
+public class BulkheadClient implements Client {
+    private final Client delegate;
+    private final EndpointBulkheads bulkheads;
+
+    public BulkheadClient(Client delegate, EndpointBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        return bulkheads
+                .forEndpoint(EndpointBulkheads.endpointOf(request.httpMethod().name(), URI.create(request.url())))
+                .execute(() -> delegate.execute(request, options));
+    }
+}
@@ -0,0 +1,15 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import java.io.IOException;
+
+/**
+ * Call rejected by {@link Bulkhead}. It's an {@link IOException} so HTTP clients report it like any other failed
+ * request and circuit breakers count it.
+ */
+public class BulkheadFullException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String name) {
+        super("Bulkhead " + name + " is full");
+    }
+}
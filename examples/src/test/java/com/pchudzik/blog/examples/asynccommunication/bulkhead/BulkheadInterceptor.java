@@ -0,0 +1,27 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Runs every request in {@link Bulkhead} of its endpoint. Add it as application interceptor, so rejected request never
+ * reaches the connection pool and {@code CircuitBreakerCallAdapter} records rejections as failures.
+ */
+public class BulkheadInterceptor implements Interceptor {
+    private final EndpointBulkheads bulkheads;
+
+    public BulkheadInterceptor(EndpointBulkheads bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        return bulkheads
+                .forEndpoint(EndpointBulkheads.endpointOf(request.method(), request.url().uri()))
+                .execute(() -> chain.proceed(request));
+    }
+}
@@ -0,0 +1,201 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.codegen.CodegenGson;
+import feign.Client;
+import feign.Feign;
+import feign.RequestLine;
+import feign.Retryer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkheadTest {
+    private static final int CALLER_THREADS = 8;
+    private static final String SLOW = "GET /hello/slow";
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(CALLER_THREADS);
+    private BreakableService breakableService;
+    private EndpointBulkheads bulkheads;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.useResponseHandler("/hello/slow", new BreakableService.FixedResponseHandler(200, "slow hello")
+                .withLatency(LatencyProfile.fixed(Duration.ofSeconds(1))));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+        breakableService.stopServer();
+        if (bulkheads != null) {
+            bulkheads.close();
+        }
+    }
+
+    @Test
+    public void slow_endpoint_takes_all_caller_threads_without_bulkhead() throws Exception {
+        HelloWorld helloWorld = retrofit(new OkHttpClient());
+        submitSlowCalls(() -> helloWorld.saySlowHello().execute().body());
+
+        long start = System.nanoTime();
+        Hello hello = callers.submit(() -> helloWorld.sayHello().execute().body()).get();
+
+        assertThat(hello.getMessage(), equalTo("hello world"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void semaphore_bulkhead_keeps_fast_endpoint_responsive_for_retrofit() throws Exception {
+        bulkheads = new EndpointBulkheads(endpoint -> Bulkhead.semaphore(endpoint, 2, Duration.ofMillis(50)));
+        HelloWorld helloWorld = retrofit(new OkHttpClient.Builder()
+                .addInterceptor(new BulkheadInterceptor(bulkheads))
+                .build());
+        submitSlowCalls(() -> helloWorld.saySlowHello().execute().body());
+        Bulkhead slow = bulkheads.forEndpoint(SLOW);
+        waitFor(() -> slow.rejected() == CALLER_THREADS - 2);
+
+        long start = System.nanoTime();
+        Hello hello = callers.submit(() -> helloWorld.sayHello().execute().body()).get();
+
+        assertThat(hello.getMessage(), equalTo("hello world"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(CALLER_THREADS - 2, slow.rejected());
+        assertEquals(2, slow.activeCalls());
+        assertEquals(0, slow.queueDepth());
+        assertEquals(2, slow.waitTime().count());
+    }
+
+    @Test
+    public void thread_pool_bulkhead_keeps_fast_endpoint_responsive_for_feign() throws Exception {
+        bulkheads = new EndpointBulkheads(endpoint -> Bulkhead.threadPool(endpoint, 2, 2));
+        FeignHelloWorld helloWorld = Feign.builder()
+                .client(new BulkheadClient(new Client.Default(null, null), bulkheads))
+                .retryer(Retryer.NEVER_RETRY)
+                .decoder(CodegenGson.decoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+        submitSlowCalls(helloWorld::saySlowHello);
+        Bulkhead slow = bulkheads.forEndpoint(SLOW);
+        waitFor(() -> slow.rejected() == CALLER_THREADS - 4);
+
+        long start = System.nanoTime();
+        Hello hello = callers.submit(helloWorld::sayHello).get();
+
+        assertThat(hello.getMessage(), equalTo("hello world"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(2, slow.activeCalls());
+        assertEquals(2, slow.queueDepth());
+    }
+
+    @Test
+    public void semaphore_bulkhead_admits_waiting_call_when_permit_is_released() throws Exception {
+        Bulkhead bulkhead = Bulkhead.semaphore("test", 1, Duration.ofSeconds(5));
+        Future<String> first = callers.submit(() -> bulkhead.execute(() -> {
+            sleep(200);
+            return "first";
+        }));
+        waitFor(() -> bulkhead.activeCalls() == 1);
+        Future<String> second = callers.submit(() -> bulkhead.execute(() -> "second"));
+        waitFor(() -> bulkhead.queueDepth() == 1);
+
+        assertThat(first.get(), equalTo("first"));
+        assertThat(second.get(), equalTo("second"));
+        assertEquals(0, bulkhead.rejected());
+        assertEquals(2, bulkhead.waitTime().count());
+        assertTrue(bulkhead.waitTime().valueAtPercentile(100) >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void semaphore_bulkhead_rejects_call_after_max_wait() throws Exception {
+        Bulkhead bulkhead = Bulkhead.semaphore("test", 1, Duration.ofMillis(50));
+        callers.submit(() -> bulkhead.execute(() -> {
+            sleep(1_000);
+            return "first";
+        }));
+        waitFor(() -> bulkhead.activeCalls() == 1);
+
+        long start = System.nanoTime();
+        try {
+            bulkhead.execute(() -> "second");
+            fail("Call should be rejected");
+        } catch (BulkheadFullException expected) {
+        }
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, bulkhead.rejected());
+        assertEquals(0, bulkhead.queueDepth());
+    }
+
+    private void submitSlowCalls(Callable<Hello> slowCall) {
+        for (int i = 0; i < CALLER_THREADS; i++) {
+            callers.submit(slowCall);
+        }
+    }
+
+    private HelloWorld retrofit(OkHttpClient client) {
+        return new Retrofit.Builder()
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+
+        @GET("hello/slow")
+        Call<Hello> saySlowHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+
+        @RequestLine("GET /hello/slow")
+        Hello saySlowHello();
+    }
+}
@@ -0,0 +1,38 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Separate {@link Bulkhead} per endpoint - HTTP method and path, e.g. {@code GET /hello} - created on first call by
+ * the factory, which gets endpoint name and can size the bulkhead for it.
+ */
+public class EndpointBulkheads implements AutoCloseable {
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Function<String, Bulkhead> bulkheadFactory;
+
+    public EndpointBulkheads(Function<String, Bulkhead> bulkheadFactory) {
+        this.bulkheadFactory = bulkheadFactory;
+    }
+
+    public Bulkhead forEndpoint(String endpoint) {
+        return bulkheads.computeIfAbsent(endpoint, bulkheadFactory);
+    }
+
+    public Map<String, Bulkhead> bulkheads() {
+        return new TreeMap<>(bulkheads);
+    }
+
+    @Override
+    public void close() {
+        bulkheads.values().forEach(Bulkhead::close);
+    }
+
+    static String endpointOf(String method, URI uri) {
+        return method + " " + uri.getPath();
+    }
+}
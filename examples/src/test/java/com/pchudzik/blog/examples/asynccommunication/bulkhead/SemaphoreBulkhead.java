@@ -0,0 +1,129 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Permits are a CAS counter, uncontended acquire and release never block. Callers out of permits park in a queue,
+ * release wakes up the first one. Waiter leaving the queue - with a permit or after timeout - wakes up the next one
+ * if there are permits left, so a wake up given to a caller who already gave up is not lost.
+ */
+class SemaphoreBulkhead implements Bulkhead {
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final long maxWaitNanos;
+    private final AtomicInteger available;
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+
+    SemaphoreBulkhead(String name, int maxConcurrentCalls, Duration maxWait) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Max concurrent calls must be positive");
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.available = new AtomicInteger(maxConcurrentCalls);
+    }
+
+    @Override
+    public <T> T execute(IoCallable<T> call) throws IOException {
+        acquire();
+        try {
+            return call.call();
+        } finally {
+            available.incrementAndGet();
+            wakeUpNext();
+        }
+    }
+
+    private void acquire() throws IOException {
+        if (tryAcquire()) {
+            waitTime.record(0);
+            return;
+        }
+        if (maxWaitNanos <= 0) {
+            rejected.increment();
+            throw new BulkheadFullException(name);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + maxWaitNanos;
+        Thread current = Thread.currentThread();
+        queueDepth.incrementAndGet();
+        waiters.add(current);
+        try {
+            while (!tryAcquire()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected.increment();
+                    throw new BulkheadFullException(name);
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    current.interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for bulkhead " + name);
+                }
+            }
+            waitTime.record(System.nanoTime() - start);
+        } finally {
+            waiters.remove(current);
+            queueDepth.decrementAndGet();
+            wakeUpNext();
+        }
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = available.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    private void wakeUpNext() {
+        if (available.get() > 0) {
+            Thread next = waiters.peek();
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int activeCalls() {
+        return maxConcurrentCalls - available.get();
+    }
+
+    @Override
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public LatencyHistogram waitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public long rejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,103 @@
+package com.pchudzik.blog.examples.asynccommunication.bulkhead;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed pool with bounded queue, like Hystrix thread pool isolation. Call rejected by the executor fails right away.
+ * Caller stuck on the slow endpoint is not protected, but threads of the other endpoints are.
+ */
+class ThreadPoolBulkhead implements Bulkhead {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+
+    ThreadPoolBulkhead(String name, int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public <T> T execute(IoCallable<T> call) throws IOException {
+        long enqueued = System.nanoTime();
+        FutureTask<T> task = new FutureTask<>(() -> {
+            waitTime.record(System.nanoTime() - enqueued);
+            return call.call();
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new BulkheadFullException(name);
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for bulkhead " + name);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int activeCalls() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public LatencyHistogram waitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,81 @@
+package com.pchudzik.blog.examples.asynccommunication.cache;
+
+import java.time.Duration;
+
+/**
+ * Subset of {@code Cache-Control} response directives the cache understands - {@code max-age}, {@code no-store},
+ * {@code no-cache} and {@code stale-while-revalidate} from RFC 5861.
+ */
+public final class CacheControl {
+    private static final CacheControl NONE = new CacheControl(Duration.ZERO, Duration.ZERO, false);
+
+    private final Duration maxAge;
+    private final Duration staleWhileRevalidate;
+    private final boolean noStore;
+
+    private CacheControl(Duration maxAge, Duration staleWhileRevalidate, boolean noStore) {
+        this.maxAge = maxAge;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.noStore = noStore;
+    }
+
+    public static CacheControl of(Duration maxAge, Duration staleWhileRevalidate) {
+        return new CacheControl(maxAge, staleWhileRevalidate, false);
+    }
+
+    /**
+     * Missing header means response is stale right away - it has to be revalidated before use but still can serve as
+     * a fallback.
+     */
+    public static CacheControl parse(String header) {
+        if (header == null) {
+            return NONE;
+        }
+
+        Duration maxAge = Duration.ZERO;
+        Duration staleWhileRevalidate = Duration.ZERO;
+        boolean noStore = false;
+        boolean noCache = false;
+        for (String directive : header.split(",")) {
+            String[] nameAndValue = directive.trim().split("=", 2);
+            String name = nameAndValue[0].trim().toLowerCase();
+            String value = nameAndValue.length > 1 ? nameAndValue[1].trim().replace("\"", "") : null;
+            switch (name) {
+                case "max-age":
+                    maxAge = seconds(value);
+                    break;
+                case "stale-while-revalidate":
+                    staleWhileRevalidate = seconds(value);
+                    break;
+                case "no-store":
+                    noStore = true;
+                    break;
+                case "no-cache":
+                    noCache = true;
+                    break;
+                default:
+            }
+        }
+        return new CacheControl(noCache ? Duration.ZERO : maxAge, staleWhileRevalidate, noStore);
+    }
+
+    public Duration maxAge() {
+        return maxAge;
+    }
+
+    public Duration staleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    private static Duration seconds(String value) {
+        try {
+            return value == null ? Duration.ZERO : Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            return Duration.ZERO;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.pchudzik.blog.examples.asynccommunication.cache;
+
+import feign.FeignException;
+import feign.Response;
+import feign.codec.Decoder;
+import retrofit2.HttpException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Result of loading value from upstream - either decoded value with its validator or confirmation that cached value is
+ * still valid ({@code 304 Not Modified}).
+ */
+public final class CachedResponse<V> {
+    private final V value;
+    private final String etag;
+    private final CacheControl cacheControl;
+    private final boolean notModified;
+
+    private CachedResponse(V value, String etag, CacheControl cacheControl, boolean notModified) {
+        this.value = value;
+        this.etag = etag;
+        this.cacheControl = cacheControl;
+        this.notModified = notModified;
+    }
+
+    public static <V> CachedResponse<V> of(V value, String etag, CacheControl cacheControl) {
+        return new CachedResponse<>(value, etag, cacheControl, false);
+    }
+
+    public static <V> CachedResponse<V> notModified(CacheControl cacheControl) {
+        return new CachedResponse<>(null, null, cacheControl, true);
+    }
+
+    /**
+     * Unsuccessful responses are turned into {@link HttpException}, so they are not cached and can fall back to cached
+     * value.
+     */
+    public static <V> CachedResponse<V> fromRetrofit(retrofit2.Response<V> response) {
+        CacheControl cacheControl = CacheControl.parse(response.headers().get("Cache-Control"));
+        if (response.code() == 304) {
+            return notModified(cacheControl);
+        }
+        if (!response.isSuccessful()) {
+            throw new HttpException(response);
+        }
+        return of(response.body(), response.headers().get("ETag"), cacheControl);
+    }
+
+    /**
+     * Feign hands out headers only for methods returning raw {@link Response}, so cached methods return it and the
+     * body is decoded here. Unsuccessful responses are turned into {@link FeignException} like Feign would do.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> CachedResponse<V> fromFeign(Response response, Decoder decoder, Type type) throws IOException {
+        try {
+            CacheControl cacheControl = CacheControl.parse(firstHeader(response, "Cache-Control"));
+            if (response.status() == 304) {
+                return notModified(cacheControl);
+            }
+            if (response.status() < 200 || response.status() >= 300) {
+                throw FeignException.errorStatus(response.request().httpMethod() + " " + response.request().url(), response);
+            }
+            return of((V) decoder.decode(response, type), firstHeader(response, "ETag"), cacheControl);
+        } finally {
+            if (response.body() != null) {
+                try {
+                    response.body().close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    V value() {
+        return value;
+    }
+
+    String etag() {
+        return etag;
+    }
+
+    CacheControl cacheControl() {
+        return cacheControl;
+    }
+
+    boolean isNotModified() {
+        return notModified;
+    }
+
+    private static String firstHeader(Response response, String name) {
+        Collection<String> values = response.headers().get(name);
+        return values == null || values.isEmpty() ? null : values.iterator().next();
+    }
+}
@@ -0,0 +1,114 @@
+package com.pchudzik.blog.examples.asynccommunication.cache;
+
+import com.netflix.hystrix.Hystrix;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.codec.Decoder;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class HystrixResponseCacheTest {
+    private static final String KEY = "hello";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService revalidationExecutor = Executors.newSingleThreadExecutor();
+    private final ResponseCache<String, Hello> cache = new ResponseCache<>(1_000, Duration.ofMinutes(5), revalidationExecutor);
+    private final Decoder decoder = new GsonDecoder();
+    private BreakableService breakableService;
+    private HelloWorld helloWorld;
+
+    @Before
+    public void setup() throws Exception {
+        BreakableService.ResponseHandler.FixedResponse response = BreakableService.ResponseHandler.FixedResponse.jsonResponse()
+                .withBody(BreakableService.message("hello world"))
+                .withCaching("no-cache");
+        breakableService = new BreakableService(() -> {
+            requests.incrementAndGet();
+            return response;
+        }, ServerEngine.nio(2));
+        breakableService.startServer();
+        helloWorld = Feign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.BASIC)
+                .target(HelloWorld.class, "http://localhost:" + breakableService.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        revalidationExecutor.shutdown();
+        Hystrix.reset();
+    }
+
+    @Test
+    public void unchanged_response_is_revalidated_with_etag() throws Exception {
+        sayHello(false);
+
+        assertThat(sayHello(false).getMessage(), equalTo("hello world"));
+
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.notModified());
+    }
+
+    @Test
+    public void cached_response_replaces_constant_fallback_when_circuit_is_open() {
+        sayHello(false);
+
+        assertThat(sayHello(true).getMessage(), equalTo("hello world"));
+
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.fallbacks());
+    }
+
+    private Hello sayHello(boolean circuitOpen) {
+        return new HystrixCommand<Hello>(HystrixCommand.Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey("hello"))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(circuitOpen ? "sayHelloOpen" : "sayHello"))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withCircuitBreakerForceOpen(circuitOpen))) {
+            @Override
+            protected Hello run() throws Exception {
+                return cache.get(KEY, etag -> CachedResponse.fromFeign(helloWorld.sayHello(etag), decoder, Hello.class));
+            }
+
+            @Override
+            protected Hello getFallback() {
+                return cache.getIfPresent(KEY).orElseThrow(() -> new IllegalStateException("Nothing cached"));
+            }
+        }.execute();
+    }
+
+    interface HelloWorld {
+        @GET
+        @Path("/hello")
+        Response sayHello(@HeaderParam("If-None-Match") String etag);
+    }
+}
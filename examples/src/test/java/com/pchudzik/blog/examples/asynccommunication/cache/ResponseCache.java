@@ -0,0 +1,260 @@
+package com.pchudzik.blog.examples.asynccommunication.cache;
+
+import com.pchudzik.blog.examples.asynccommunication.coalescing.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of decoded responses.
+ * <ul>
+ * <li>fresh entry (within {@code max-age}) is returned without calling upstream</li>
+ * <li>stale entry within {@code stale-while-revalidate} is returned right away and revalidated in the background
+ * with {@code If-None-Match}</li>
+ * <li>otherwise value is loaded synchronously, concurrent loads of the same key share single upstream call</li>
+ * <li>when load fails - error response, open circuit breaker - entry not older than {@code maxStale} is returned
+ * instead</li>
+ * </ul>
+ * Entries live in a segmented LRU split into lock striped segments. New entries land in probation part and are
+ * promoted to protected part on the second hit, so a burst of one-off keys evicts other one-off keys and not the
+ * frequently used ones.
+ */
+public class ResponseCache<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long maxStaleNanos;
+    private final Executor revalidationExecutor;
+    private final SingleFlight<K, V> loads = new SingleFlight<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public ResponseCache(int maximumSize, Duration maxStale, Executor revalidationExecutor) {
+        if (maximumSize < SEGMENTS) {
+            throw new IllegalArgumentException("Maximum size must be at least " + SEGMENTS);
+        }
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(maximumSize / SEGMENTS);
+        }
+        this.maxStaleNanos = maxStale.toNanos();
+        this.revalidationExecutor = revalidationExecutor;
+    }
+
+    public V get(K key, Loader<V> loader) throws Exception {
+        long now = System.nanoTime();
+        Entry<V> entry = segmentFor(key).get(key);
+        if (entry != null && now - entry.freshUntil < 0) {
+            hits.increment();
+            return entry.value;
+        }
+        if (entry != null && now - entry.revalidateUntil < 0) {
+            staleHits.increment();
+            revalidateInBackground(key, entry, loader);
+            return entry.value;
+        }
+
+        try {
+            return loads.execute(key, () -> load(key, entry, loader));
+        } catch (Exception e) {
+            if (entry != null && now - entry.fallbackUntil < 0) {
+                log.debug("Serving cached response for {} after failure", key, e);
+                fallbacks.increment();
+                return entry.value;
+            }
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Cached value regardless of its freshness, as long as it's not older than {@code maxStale}. Meant for breaker
+     * fallbacks.
+     */
+    public Optional<V> getIfPresent(K key) {
+        Entry<V> entry = segmentFor(key).get(key);
+        if (entry == null || System.nanoTime() - entry.fallbackUntil >= 0) {
+            return Optional.empty();
+        }
+        fallbacks.increment();
+        return Optional.of(entry.value);
+    }
+
+    public void invalidate(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long staleHits() {
+        return staleHits.sum();
+    }
+
+    public long loads() {
+        return loadCount.sum();
+    }
+
+    public long notModified() {
+        return notModifiedCount.sum();
+    }
+
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    private void revalidateInBackground(K key, Entry<V> entry, Loader<V> loader) {
+        if (!entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    load(key, entry, loader);
+                } catch (Exception e) {
+                    log.debug("Revalidation of {} failed", key, e);
+                } finally {
+                    entry.revalidating.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.revalidating.set(false);
+            throw e;
+        }
+    }
+
+    private V load(K key, Entry<V> cached, Loader<V> loader) throws Exception {
+        loadCount.increment();
+        CachedResponse<V> response = loader.load(cached != null ? cached.etag : null);
+        CacheControl cacheControl = response.cacheControl();
+        if (response.isNotModified()) {
+            if (cached == null) {
+                throw new IllegalStateException("Not modified response for " + key + " without cached value");
+            }
+            notModifiedCount.increment();
+            segmentFor(key).put(key, new Entry<>(cached.value, cached.etag, cacheControl, maxStaleNanos));
+            return cached.value;
+        }
+
+        if (cacheControl.isNoStore()) {
+            segmentFor(key).remove(key);
+        } else {
+            segmentFor(key).put(key, new Entry<>(response.value(), response.etag(), cacheControl, maxStaleNanos));
+        }
+        return response.value();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public interface Loader<V> {
+        /**
+         * @param etag validator of cached value or {@code null}, should be sent as {@code If-None-Match}
+         */
+        CachedResponse<V> load(String etag) throws Exception;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final String etag;
+        private final long freshUntil;
+        private final long revalidateUntil;
+        private final long fallbackUntil;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        private Entry(V value, String etag, CacheControl cacheControl, long maxStaleNanos) {
+            long now = System.nanoTime();
+            this.value = value;
+            this.etag = etag;
+            this.freshUntil = now + cacheControl.maxAge().toNanos();
+            this.revalidateUntil = freshUntil + cacheControl.staleWhileRevalidate().toNanos();
+            this.fallbackUntil = Math.max(revalidateUntil, freshUntil + maxStaleNanos);
+        }
+    }
+
+    /**
+     * Protected part takes 80% of segment capacity, entries demoted from it get another chance in probation.
+     */
+    private static class Segment<K, V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Entry<V>> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, capacity * 8 / 10);
+        }
+
+        synchronized Entry<V> get(K key) {
+            Entry<V> entry = protectedEntries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            entry = probation.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                if (protectedEntries.size() > protectedCapacity) {
+                    Map.Entry<K, Entry<V>> demoted = removeEldest(protectedEntries);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return entry;
+        }
+
+        synchronized void put(K key, Entry<V> entry) {
+            if (protectedEntries.containsKey(key)) {
+                protectedEntries.put(key, entry);
+                return;
+            }
+            probation.put(key, entry);
+            while (probation.size() + protectedEntries.size() > capacity) {
+                removeEldest(probation.isEmpty() ? protectedEntries : probation);
+            }
+        }
+
+        synchronized void remove(K key) {
+            probation.remove(key);
+            protectedEntries.remove(key);
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+
+        private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+            Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>(eldest.next());
+            eldest.remove();
+            return entry;
+        }
+    }
+}
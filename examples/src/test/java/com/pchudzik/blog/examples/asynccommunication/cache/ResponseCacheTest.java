@@ -0,0 +1,166 @@
+package com.pchudzik.blog.examples.asynccommunication.cache;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseCacheTest {
+    private static final String KEY = "hello";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService revalidationExecutor = Executors.newSingleThreadExecutor();
+    private final ResponseCache<String, Hello> cache = new ResponseCache<>(1_000, Duration.ofMinutes(5), revalidationExecutor);
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello world");
+    private BreakableService breakableService;
+    private HelloWorld helloWorld;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(cacheable("hello world", "max-age=60"), ServerEngine.nio(2));
+        breakableService.startServer();
+        helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        revalidationExecutor.shutdown();
+    }
+
+    @Test
+    public void fresh_response_is_served_from_cache() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertThat(sayHello().getMessage(), equalTo("hello world"));
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(9, cache.hits());
+    }
+
+    @Test
+    public void stale_response_is_served_while_revalidating() throws Exception {
+        breakableService.useResponseHandler(cacheable("hello world", "max-age=1, stale-while-revalidate=60"));
+        sayHello();
+        TimeUnit.MILLISECONDS.sleep(1_100);
+
+        assertThat(sayHello().getMessage(), equalTo("hello world"));
+
+        assertEquals(1, cache.staleHits());
+        waitFor(() -> cache.notModified() == 1);
+        assertEquals(2, requests.get());
+        assertThat(sayHello().getMessage(), equalTo("hello world"));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void changed_response_replaces_cached_one() throws Exception {
+        breakableService.useResponseHandler(cacheable("hello world", "no-cache"));
+        sayHello();
+
+        breakableService.useResponseHandler(cacheable("hello again", "no-cache"));
+
+        assertThat(sayHello().getMessage(), equalTo("hello again"));
+        assertEquals(0, cache.notModified());
+    }
+
+    @Test
+    public void cached_response_is_fallback_when_breaker_is_open() throws Exception {
+        breakableService.useResponseHandler(cacheable("hello world", "no-cache"));
+        sayHello();
+        circuitBreaker.transitionToOpenState();
+
+        assertThat(sayHello().getMessage(), equalTo("hello world"));
+
+        assertEquals(1, cache.fallbacks());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void failure_is_propagated_without_cached_response() throws Exception {
+        circuitBreaker.transitionToOpenState();
+
+        try {
+            sayHello();
+            fail("Call should fail");
+        } catch (CallNotPermittedException expected) {
+        }
+    }
+
+    @Test
+    public void frequently_used_entries_survive_scan() throws Exception {
+        ResponseCache<Integer, Integer> cache = new ResponseCache<>(160, Duration.ofMinutes(5), Runnable::run);
+        CacheControl cacheControl = CacheControl.of(Duration.ofMinutes(1), Duration.ZERO);
+        for (int hot = 0; hot < 16; hot++) {
+            int value = hot;
+            cache.get(value, etag -> CachedResponse.of(value, null, cacheControl));
+            cache.get(value, etag -> CachedResponse.of(value, null, cacheControl));
+        }
+
+        for (int cold = 1_000; cold < 10_000; cold++) {
+            int value = cold;
+            cache.get(value, etag -> CachedResponse.of(value, null, cacheControl));
+        }
+
+        assertTrue(cache.size() <= 160);
+        for (int hot = 0; hot < 16; hot++) {
+            assertTrue("hot entry " + hot + " was evicted", cache.getIfPresent(hot).isPresent());
+        }
+    }
+
+    private Hello sayHello() throws Exception {
+        return cache.get(KEY, etag -> circuitBreaker.executeCallable(() -> CachedResponse.fromRetrofit(helloWorld.sayHello(etag).execute())));
+    }
+
+    private BreakableService.ResponseHandler cacheable(String message, String cacheControl) {
+        BreakableService.ResponseHandler.FixedResponse response = BreakableService.ResponseHandler.FixedResponse.jsonResponse()
+                .withBody(BreakableService.message(message))
+                .withCaching(cacheControl);
+        return () -> {
+            requests.incrementAndGet();
+            return response;
+        };
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello(@Header("If-None-Match") String etag);
+    }
+}
@@ -0,0 +1,495 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.google.gson.Gson;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.codegen.CodegenGson;
+import com.pchudzik.blog.examples.asynccommunication.wire.Cbor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class BreakableService {
+    private static final Gson gson = CodegenGson.gson();
+    private static final ResponseHandler.FixedResponse NOT_FOUND = ResponseHandler.FixedResponse.jsonResponse()
+            .withStatusCode(404)
+            .withBody(message("not found"));
+    private final int serverPort = findOpenPort();
+    private final ServerEngine serverEngine;
+    private final Map<String, ResponseHandler> endpoints = new ConcurrentHashMap<>();
+    private volatile ResponseHandler responseHandler;
+
+    public BreakableService(ResponseHandler responseHandler) {
+        this(responseHandler, ServerEngine.httpServer(2));
+    }
+
+    public BreakableService(ResponseHandler responseHandler, ServerEngine serverEngine) {
+        this.serverEngine = serverEngine;
+        useResponseHandler(responseHandler);
+    }
+
+    public static String message(String text) {
+        return gson.toJson(new Hello(text));
+    }
+
+    public void useResponseHandler(ResponseHandler responseHandler) {
+        this.responseHandler = responseHandler;
+    }
+
+    /**
+     * Serves additional endpoint next to {@code /hello}, e.g. slow sibling of it.
+     */
+    public void useResponseHandler(String path, ResponseHandler responseHandler) {
+        endpoints.put(path, responseHandler);
+    }
+
+    private static int findOpenPort() {
+        int fallbackPort = 8123;
+        try (ServerSocket ss = new ServerSocket(0)) {
+            return ss.getLocalPort();
+        } catch (IOException e) {
+            return fallbackPort;
+        }
+    }
+
+    public void startServer() throws Exception {
+        serverEngine.start(new InetSocketAddress(serverPort), this::respond);
+    }
+
+    public void stopServer() {
+        serverEngine.stop();
+    }
+
+    public int getPort() {
+        return serverPort;
+    }
+
+    ResponseHandler.FixedResponse respond(ServerEngine.Request request) {
+        ResponseHandler handler = "/hello".contentEquals(request.path())
+                ? responseHandler
+                : endpoints.isEmpty() ? null : endpoints.get(request.path().toString());
+        if (handler != null) {
+            ResponseHandler.FixedResponse response = handler.handleResponse();
+            CharSequence accept = request.header("Accept");
+            if (accept != null && Cbor.accepts(accept)) {
+                response = response.binary();
+            }
+            CharSequence ifNoneMatch = request.header("If-None-Match");
+            if (ifNoneMatch != null && response.matchesETag(ifNoneMatch)) {
+                return response.notModified();
+            }
+            return response;
+        }
+        return NOT_FOUND;
+    }
+
+    public interface ResponseHandler {
+        FixedResponse handleResponse();
+
+        default ResponseHandler withLatency(LatencyProfile latencyProfile) {
+            return new LatencyResponseHandler(this, latencyProfile);
+        }
+
+        default ResponseHandler withCapacity(int workers, Duration serviceTime) {
+            return new OverloadedResponseHandler(this, workers, serviceTime);
+        }
+
+        /**
+         * Immutable response. Body and complete HTTP response are encoded once when response is created, so serving
+         * the same instance over and over again doesn't allocate.
+         */
+        final class FixedResponse {
+            private final int statusCode;
+            private final String response;
+            private final Map<String, List<String>> headers;
+            private final byte[] body;
+            private final byte[] encoded;
+            private final long delayNanos;
+            private final int chunkSize;
+            private final long chunkDelayNanos;
+            private final boolean connectionReset;
+            private final String etag;
+            private final FixedResponse notModified;
+            private final BinaryVariant binary;
+
+            private FixedResponse(int statusCode, String response, Map<String, List<String>> headers) {
+                this(statusCode, response, response.getBytes(StandardCharsets.UTF_8), headers);
+            }
+
+            private FixedResponse(int statusCode, String response, byte[] body, Map<String, List<String>> headers) {
+                this.statusCode = statusCode;
+                this.response = response;
+                this.headers = Collections.unmodifiableMap(headers);
+                this.body = body;
+                this.encoded = encode();
+                this.etag = headers.containsKey("ETag") ? headers.get("ETag").get(0) : null;
+                this.notModified = etag != null && statusCode == 200 ? notModifiedResponse() : null;
+                this.binary = new BinaryVariant(this);
+                this.delayNanos = 0;
+                this.chunkSize = 0;
+                this.chunkDelayNanos = 0;
+                this.connectionReset = false;
+            }
+
+            private FixedResponse(FixedResponse source, long delayNanos, int chunkSize, long chunkDelayNanos, boolean connectionReset) {
+                this.statusCode = source.statusCode;
+                this.response = source.response;
+                this.headers = source.headers;
+                this.body = source.body;
+                this.encoded = source.encoded;
+                this.etag = source.etag;
+                this.notModified = source.notModified;
+                this.binary = source.binary;
+                this.delayNanos = delayNanos;
+                this.chunkSize = chunkSize;
+                this.chunkDelayNanos = chunkDelayNanos;
+                this.connectionReset = connectionReset;
+            }
+
+            public static FixedResponse jsonResponse() {
+                return new FixedResponse(200, "hello", new LinkedHashMap<>())
+                        .withHeader("Content-type", "application/json");
+            }
+
+            /**
+             * Connection is reset (TCP RST) instead of sending a response. com.sun.net.httpserver engine can only
+             * drop the connection.
+             */
+            public static FixedResponse connectionReset() {
+                FixedResponse response = jsonResponse();
+                return new FixedResponse(response, 0, 0, 0, true);
+            }
+
+            public FixedResponse withStatusCode(int statusCode) {
+                return copyTimings(new FixedResponse(statusCode, response, headers));
+            }
+
+            public FixedResponse withBody(String response) {
+                return copyTimings(new FixedResponse(statusCode, response, headers));
+            }
+
+            public FixedResponse withHeader(String name, String value) {
+                Map<String, List<String>> newHeaders = new LinkedHashMap<>(headers);
+                List<String> values = new ArrayList<>(newHeaders.getOrDefault(name, Collections.emptyList()));
+                values.add(value);
+                newHeaders.put(name, Collections.unmodifiableList(values));
+                return copyTimings(new FixedResponse(statusCode, response, newHeaders));
+            }
+
+            /**
+             * Adds {@code Cache-Control} and {@code ETag} derived from the body. Requests with matching
+             * {@code If-None-Match} get {@code 304 Not Modified} without body.
+             */
+            public FixedResponse withCaching(String cacheControl) {
+                return withHeader("Cache-Control", cacheControl)
+                        .withHeader("ETag", "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"");
+            }
+
+            /**
+             * Response is written after given delay. Encoded bytes are shared with this response.
+             */
+            public FixedResponse withDelay(long delay, TimeUnit unit) {
+                return new FixedResponse(this, unit.toNanos(delay), chunkSize, chunkDelayNanos, connectionReset);
+            }
+
+            /**
+             * Headers are sent right away and then body is trickled in {@code chunkSize} bytes pieces every
+             * {@code chunkDelay}.
+             */
+            public FixedResponse withSlowBody(int chunkSize, long chunkDelay, TimeUnit unit) {
+                if (chunkSize < 1) {
+                    throw new IllegalArgumentException("Chunk size must be positive");
+                }
+                return new FixedResponse(this, delayNanos, chunkSize, unit.toNanos(chunkDelay), connectionReset);
+            }
+
+            private FixedResponse copyTimings(FixedResponse target) {
+                if (delayNanos == 0 && chunkSize == 0 && !connectionReset) {
+                    return target;
+                }
+                return new FixedResponse(target, delayNanos, chunkSize, chunkDelayNanos, connectionReset);
+            }
+
+            int statusCode() {
+                return statusCode;
+            }
+
+            Map<String, List<String>> headers() {
+                return headers;
+            }
+
+            long delayNanos() {
+                return delayNanos;
+            }
+
+            boolean isSlowBody() {
+                return chunkSize > 0;
+            }
+
+            int chunkSize() {
+                return chunkSize;
+            }
+
+            long chunkDelayNanos() {
+                return chunkDelayNanos;
+            }
+
+            boolean isConnectionReset() {
+                return connectionReset;
+            }
+
+            boolean matchesETag(CharSequence ifNoneMatch) {
+                if (notModified == null) {
+                    return false;
+                }
+                if ("*".contentEquals(ifNoneMatch) || etag.contentEquals(ifNoneMatch)) {
+                    return true;
+                }
+                for (String candidate : ifNoneMatch.toString().split(",")) {
+                    String trimmed = candidate.trim();
+                    if (trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * {@code 304} response sharing validators with this one, with the same delay.
+             */
+            FixedResponse notModified() {
+                return copyTimings(notModified);
+            }
+
+            /**
+             * CBOR representation of JSON response with the same delay, or this response when it's not JSON. It's
+             * transcoded on first use and shared by all copies of this response.
+             */
+            FixedResponse binary() {
+                FixedResponse variant = binary.get();
+                return variant == null ? this : copyTimings(variant);
+            }
+
+            int headLength() {
+                return encoded.length - body.length;
+            }
+
+            /**
+             * Returned array is shared and must not be modified.
+             */
+            byte[] body() {
+                return body;
+            }
+
+            /**
+             * Complete HTTP/1.1 response (status line, headers and body) ready to be written to the socket. Returned
+             * array is shared and must not be modified.
+             */
+            byte[] encoded() {
+                return encoded;
+            }
+
+            private FixedResponse notModifiedResponse() {
+                Map<String, List<String>> validators = new LinkedHashMap<>();
+                for (String name : Arrays.asList("Cache-Control", "ETag")) {
+                    if (headers.containsKey(name)) {
+                        validators.put(name, headers.get(name));
+                    }
+                }
+                return new FixedResponse(304, "", validators);
+            }
+
+            private FixedResponse binaryResponse() {
+                List<String> contentType = header("Content-type");
+                if (contentType == null || !contentType.get(0).startsWith("application/json")) {
+                    return null;
+                }
+                byte[] cbor = Cbor.fromJson(body);
+                if (cbor == null) {
+                    return null;
+                }
+                Map<String, List<String>> binaryHeaders = new LinkedHashMap<>();
+                headers.forEach((name, values) -> {
+                    if (name.equalsIgnoreCase("Content-type")) {
+                        binaryHeaders.put(name, Collections.singletonList(Cbor.MEDIA_TYPE));
+                    } else if (name.equalsIgnoreCase("ETag")) {
+                        binaryHeaders.put(name, Collections.singletonList("\"" + Integer.toHexString(Arrays.hashCode(cbor)) + "\""));
+                    } else {
+                        binaryHeaders.put(name, values);
+                    }
+                });
+                binaryHeaders.put("Vary", Collections.singletonList("Accept"));
+                return new FixedResponse(statusCode, response, cbor, binaryHeaders);
+            }
+
+            private List<String> header(String name) {
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    if (header.getKey().equalsIgnoreCase(name)) {
+                        return header.getValue();
+                    }
+                }
+                return null;
+            }
+
+            private byte[] encode() {
+                StringBuilder head = new StringBuilder()
+                        .append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase(statusCode)).append("\r\n");
+                headers.forEach((name, values) -> values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n")));
+                head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+
+                ByteArrayOutputStream result = new ByteArrayOutputStream(head.length() + body.length);
+                byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+                result.write(headBytes, 0, headBytes.length);
+                result.write(body, 0, body.length);
+                return result.toByteArray();
+            }
+
+            private static final class BinaryVariant {
+                private final FixedResponse json;
+                private volatile boolean transcoded;
+                private FixedResponse binary;
+
+                private BinaryVariant(FixedResponse json) {
+                    this.json = json;
+                }
+
+                FixedResponse get() {
+                    if (!transcoded) {
+                        synchronized (this) {
+                            if (!transcoded) {
+                                binary = json.binaryResponse();
+                                transcoded = true;
+                            }
+                        }
+                    }
+                    return binary;
+                }
+            }
+
+            private static String reasonPhrase(int statusCode) {
+                switch (statusCode) {
+                    case 200:
+                        return "OK";
+                    case 304:
+                        return "Not Modified";
+                    case 404:
+                        return "Not Found";
+                    case 429:
+                        return "Too Many Requests";
+                    case 500:
+                        return "Internal Server Error";
+                    case 502:
+                        return "Bad Gateway";
+                    case 503:
+                        return "Service Unavailable";
+                    case 504:
+                        return "Gateway Timeout";
+                    default:
+                        return "Status " + statusCode;
+                }
+            }
+        }
+    }
+
+    public static class RandomResponseHandler implements ResponseHandler {
+        private final double errorRate;
+        private final ResponseHandler okResponse;
+        private final ResponseHandler errorResponse;
+
+        public RandomResponseHandler(double errorRate, ResponseHandler okResponse, ResponseHandler errorResponse) {
+            this.errorRate = errorRate;
+            this.okResponse = okResponse;
+            this.errorResponse = errorResponse;
+        }
+
+        @Override
+        public FixedResponse handleResponse() {
+            if (ThreadLocalRandom.current().nextDouble() > errorRate) {
+                return okResponse.handleResponse();
+            } else {
+                return errorResponse.handleResponse();
+            }
+        }
+    }
+
+    public static class LatencyResponseHandler implements ResponseHandler {
+        private final ResponseHandler responseHandler;
+        private final LatencyProfile latencyProfile;
+
+        public LatencyResponseHandler(ResponseHandler responseHandler, LatencyProfile latencyProfile) {
+            this.responseHandler = responseHandler;
+            this.latencyProfile = latencyProfile;
+        }
+
+        @Override
+        public FixedResponse handleResponse() {
+            return responseHandler.handleResponse().withDelay(latencyProfile.nextDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Service with {@code workers} handling requests one by one, each taking {@code serviceTime}. Requests above
+     * capacity wait in the queue, so latency grows with the load and keeps growing as long as the service is
+     * overloaded. Responses are delayed, server threads are not blocked.
+     */
+    public static class OverloadedResponseHandler implements ResponseHandler {
+        private final ResponseHandler responseHandler;
+        private final long serviceTimeNanos;
+        private final long[] workerFreeAt;
+
+        public OverloadedResponseHandler(ResponseHandler responseHandler, int workers, Duration serviceTime) {
+            this.responseHandler = responseHandler;
+            this.serviceTimeNanos = serviceTime.toNanos();
+            this.workerFreeAt = new long[workers];
+            Arrays.fill(workerFreeAt, System.nanoTime());
+        }
+
+        @Override
+        public FixedResponse handleResponse() {
+            return responseHandler.handleResponse().withDelay(nextDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized long nextDelayNanos() {
+            int worker = 0;
+            for (int i = 1; i < workerFreeAt.length; i++) {
+                if (workerFreeAt[i] - workerFreeAt[worker] < 0) {
+                    worker = i;
+                }
+            }
+            long now = System.nanoTime();
+            long start = workerFreeAt[worker] - now > 0 ? workerFreeAt[worker] : now;
+            workerFreeAt[worker] = start + serviceTimeNanos;
+            return workerFreeAt[worker] - now;
+        }
+    }
+
+    public static class FixedResponseHandler implements ResponseHandler {
+        final int statusCode;
+        final String message;
+        private final FixedResponse response;
+
+        public FixedResponseHandler() {
+            this(200, "hello world");
+        }
+
+        public FixedResponseHandler(int statusCode, String message) {
+            this.statusCode = statusCode;
+            this.message = message;
+            this.response = FixedResponse.jsonResponse()
+                    .withStatusCode(statusCode)
+                    .withBody(message(message));
+        }
+
+        @Override
+        public FixedResponse handleResponse() {
+            return response;
+        }
+    }
+}
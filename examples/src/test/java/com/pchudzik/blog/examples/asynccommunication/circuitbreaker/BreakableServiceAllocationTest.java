@@ -0,0 +1,47 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+public class BreakableServiceAllocationTest {
+    private static final byte[] REQUEST = ("GET /hello HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "Accept: application/json\r\n" +
+            "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    @Test
+    public void serving_request_does_not_allocate_in_steady_state() {
+        BreakableService breakableService = new BreakableService(new FixedResponseHandler(200, "hello world"), ServerEngine.nio(1));
+        HttpRequestHead request = new HttpRequestHead();
+        ByteBuffer output = ByteBuffer.allocate(16 * 1024);
+        int iterations = 100_000;
+
+        serveRequests(breakableService, request, output, iterations);
+        long allocatedBefore = allocatedBytes();
+        serveRequests(breakableService, request, output, iterations);
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        assertTrue(
+                "Expected no allocations but " + allocated + " bytes were allocated for " + iterations + " requests",
+                allocated < iterations);
+    }
+
+    private static void serveRequests(BreakableService breakableService, HttpRequestHead request, ByteBuffer output, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            request.parse(REQUEST, 0, REQUEST.length);
+            output.clear();
+            output.put(breakableService.respond(request).encoded());
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
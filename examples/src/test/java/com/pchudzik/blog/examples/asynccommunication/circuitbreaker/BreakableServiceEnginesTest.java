@@ -0,0 +1,125 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class BreakableServiceEnginesTest {
+    private final Supplier<ServerEngine> serverEngine;
+    private BreakableService breakableService;
+    private OkHttpClient client;
+
+    public BreakableServiceEnginesTest(String name, Supplier<ServerEngine> serverEngine) {
+        this.serverEngine = serverEngine;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(
+                new Object[]{"http server", (Supplier<ServerEngine>) () -> ServerEngine.httpServer(2)},
+                new Object[]{"nio", (Supplier<ServerEngine>) () -> ServerEngine.nio(2)},
+                new Object[]{"virtual threads", (Supplier<ServerEngine>) ServerEngine::virtualThreads});
+    }
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), serverEngine.get());
+        breakableService.startServer();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Test
+    public void responds_with_handler_response() throws Exception {
+        try (Response response = get("/hello")) {
+            assertEquals(200, response.code());
+            assertEquals("application/json", response.header("Content-type"));
+            assertEquals(BreakableService.message("hello world"), response.body().string());
+        }
+
+        breakableService.useResponseHandler(new BreakableService.FixedResponseHandler(503, "error"));
+        try (Response response = get("/hello")) {
+            assertEquals(503, response.code());
+            assertEquals(BreakableService.message("error"), response.body().string());
+        }
+    }
+
+    @Test
+    public void responds_with_not_found_for_unknown_path() throws Exception {
+        try (Response response = get("/unknown")) {
+            assertEquals(404, response.code());
+        }
+    }
+
+    @Test
+    public void reuses_connection_between_requests() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            try (Response response = get("/hello")) {
+                assertEquals(200, response.code());
+                response.body().string();
+            }
+        }
+
+        assertEquals(1, client.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void handles_concurrent_clients() throws Exception {
+        int threads = 16;
+        int requestsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Integer>> clients = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                clients.add(() -> {
+                    int succeeded = 0;
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        try (Response response = get("/hello")) {
+                            response.body().string();
+                            succeeded += response.code() == 200 ? 1 : 0;
+                        }
+                    }
+                    return succeeded;
+                });
+            }
+
+            int succeeded = 0;
+            for (Future<Integer> result : executor.invokeAll(clients)) {
+                succeeded += result.get();
+            }
+            assertEquals(threads * requestsPerThread, succeeded);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Response get(String path) throws Exception {
+        return client
+                .newCall(new Request.Builder().url("http://localhost:" + breakableService.getPort() + path).build())
+                .execute();
+    }
+}
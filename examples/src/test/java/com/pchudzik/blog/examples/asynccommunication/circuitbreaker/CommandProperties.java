@@ -0,0 +1,98 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+import java.time.Duration;
+
+/**
+ * Subset of {@code HystrixCommandProperties.Setter} with the same names and defaults, translated to Resilience4j
+ * configuration by {@link Resilience4jInvocationHandlerFactory}. Rolling statistical window becomes time based
+ * sliding window and half open breaker lets single trial call through, like Hystrix does after sleep window.
+ */
+public class CommandProperties {
+    private boolean circuitBreakerEnabled = true;
+    private int circuitBreakerRequestVolumeThreshold = 20;
+    private int circuitBreakerSleepWindowInMilliseconds = 5_000;
+    private int circuitBreakerErrorThresholdPercentage = 50;
+    private boolean circuitBreakerForceOpen = false;
+    private boolean circuitBreakerForceClosed = false;
+    private int executionIsolationSemaphoreMaxConcurrentRequests = 10;
+    private int metricsRollingStatisticalWindowInMilliseconds = 10_000;
+
+    public static CommandProperties setter() {
+        return new CommandProperties();
+    }
+
+    public CommandProperties withCircuitBreakerEnabled(boolean value) {
+        this.circuitBreakerEnabled = value;
+        return this;
+    }
+
+    public CommandProperties withCircuitBreakerRequestVolumeThreshold(int value) {
+        this.circuitBreakerRequestVolumeThreshold = value;
+        return this;
+    }
+
+    public CommandProperties withCircuitBreakerSleepWindowInMilliseconds(int value) {
+        this.circuitBreakerSleepWindowInMilliseconds = value;
+        return this;
+    }
+
+    public CommandProperties withCircuitBreakerErrorThresholdPercentage(int value) {
+        this.circuitBreakerErrorThresholdPercentage = value;
+        return this;
+    }
+
+    public CommandProperties withCircuitBreakerForceOpen(boolean value) {
+        this.circuitBreakerForceOpen = value;
+        return this;
+    }
+
+    /**
+     * Breaker stays closed but keeps recording calls, like Hystrix does.
+     */
+    public CommandProperties withCircuitBreakerForceClosed(boolean value) {
+        this.circuitBreakerForceClosed = value;
+        return this;
+    }
+
+    public CommandProperties withExecutionIsolationSemaphoreMaxConcurrentRequests(int value) {
+        this.executionIsolationSemaphoreMaxConcurrentRequests = value;
+        return this;
+    }
+
+    public CommandProperties withMetricsRollingStatisticalWindowInMilliseconds(int value) {
+        this.metricsRollingStatisticalWindowInMilliseconds = value;
+        return this;
+    }
+
+    boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    boolean isCircuitBreakerForceOpen() {
+        return circuitBreakerForceOpen;
+    }
+
+    boolean isCircuitBreakerForceClosed() {
+        return circuitBreakerForceClosed;
+    }
+
+    CircuitBreakerConfig circuitBreakerConfig() {
+        int windowSeconds = Math.max(1, (metricsRollingStatisticalWindowInMilliseconds + 999) / 1_000);
+        return CircuitBreakerConfig.custom()
+                .slidingWindow(windowSeconds, circuitBreakerRequestVolumeThreshold, CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+                .failureRateThreshold(circuitBreakerErrorThresholdPercentage)
+                .waitDurationInOpenState(Duration.ofMillis(circuitBreakerSleepWindowInMilliseconds))
+                .permittedNumberOfCallsInHalfOpenState(1)
+                .build();
+    }
+
+    BulkheadConfig bulkheadConfig() {
+        return BulkheadConfig.custom()
+                .maxConcurrentCalls(executionIsolationSemaphoreMaxConcurrentRequests)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+    }
+}
@@ -0,0 +1,380 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server side of HTTP/2 connection with prior knowledge (h2c, RFC 7540 section 3.4). Frames are read on connection
+ * thread, every response is written from its own task, so delayed responses don't hold other streams back. Flow
+ * control windows of the client are respected, data sent by the client is acknowledged right away. Connection reset
+ * responses reset the stream instead of the whole connection.
+ */
+class Http2Connection {
+    private static final Logger log = LoggerFactory.getLogger(Http2Connection.class);
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int MAX_FRAME_SIZE = 16 * 1024;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final ServerEngine.RequestHandler requestHandler;
+    private final Executor executor;
+    private final Hpack.Decoder headerDecoder = new Hpack.Decoder();
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private final byte[] payload = new byte[MAX_FRAME_SIZE];
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int headerBlockStream;
+    private boolean headerBlockEndsStream;
+
+    // guarded by this
+    private long connectionWindow = 65_535;
+    private int peerInitialWindow = 65_535;
+    private int peerMaxFrameSize = MAX_FRAME_SIZE;
+    private boolean closed;
+
+    Http2Connection(InputStream input, OutputStream output, ServerEngine.RequestHandler requestHandler, Executor executor) {
+        this.input = new DataInputStream(input);
+        this.output = new BufferedOutputStream(output, MAX_FRAME_SIZE + 9);
+        this.requestHandler = requestHandler;
+        this.executor = executor;
+    }
+
+    /**
+     * Serves streams until client closes the connection or sends GOAWAY.
+     */
+    void serve() throws IOException {
+        try {
+            byte[] preface = new byte[PREFACE.length];
+            input.readFully(preface);
+            if (!Arrays.equals(preface, PREFACE)) {
+                throw new IOException("Invalid HTTP/2 connection preface");
+            }
+            writeFrame(SETTINGS, 0, 0, new byte[0], 0, 0);
+            while (readFrame()) {
+                // next frame
+            }
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean readFrame() throws IOException {
+        int length = input.readUnsignedShort() << 8 | input.readUnsignedByte();
+        int type = input.readUnsignedByte();
+        int flags = input.readUnsignedByte();
+        int streamId = input.readInt() & 0x7fffffff;
+        if (length > MAX_FRAME_SIZE) {
+            goAway(FRAME_SIZE_ERROR);
+            return false;
+        }
+        input.readFully(payload, 0, length);
+
+        switch (type) {
+            case HEADERS:
+                onHeaders(streamId, flags, length);
+                break;
+            case CONTINUATION:
+                headerBlock.write(payload, 0, length);
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    onHeaderBlock(headerBlockStream, headerBlockEndsStream);
+                }
+                break;
+            case DATA:
+                onData(streamId, flags, length);
+                break;
+            case SETTINGS:
+                if ((flags & FLAG_ACK) == 0) {
+                    onSettings(length);
+                    writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+                }
+                break;
+            case PING:
+                if ((flags & FLAG_ACK) == 0) {
+                    writeFrame(PING, FLAG_ACK, 0, payload, 0, length);
+                }
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, readInt(payload, 0) & 0x7fffffff);
+                break;
+            case RST_STREAM:
+                Stream reset = streams.remove(streamId);
+                if (reset != null) {
+                    synchronized (this) {
+                        reset.cancelled = true;
+                        notifyAll();
+                    }
+                }
+                break;
+            case GOAWAY:
+                return false;
+            default:
+                // PRIORITY, PUSH_PROMISE and unknown frames are ignored
+        }
+        return true;
+    }
+
+    private void onHeaders(int streamId, int flags, int length) throws IOException {
+        int offset = 0;
+        int padding = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padding = payload[0] & 0xff;
+            offset++;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            offset += 5;
+        }
+        headerBlock.reset();
+        headerBlock.write(payload, offset, length - offset - padding);
+        headerBlockStream = streamId;
+        headerBlockEndsStream = (flags & FLAG_END_STREAM) != 0;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            onHeaderBlock(streamId, headerBlockEndsStream);
+        }
+    }
+
+    private void onHeaderBlock(int streamId, boolean endStream) throws IOException {
+        byte[] block = headerBlock.toByteArray();
+        List<String[]> headers = headerDecoder.decode(block, 0, block.length);
+        Stream stream;
+        synchronized (this) {
+            stream = new Stream(streamId, new Request(headers), peerInitialWindow);
+        }
+        streams.put(streamId, stream);
+        if (endStream) {
+            respond(stream);
+        }
+    }
+
+    private void onData(int streamId, int flags, int length) throws IOException {
+        if (length > 0) {
+            // request bodies are ignored, window is given back right away
+            writeWindowUpdate(0, length);
+            if ((flags & FLAG_END_STREAM) == 0) {
+                writeWindowUpdate(streamId, length);
+            }
+        }
+        Stream stream = streams.get(streamId);
+        if (stream != null && (flags & FLAG_END_STREAM) != 0) {
+            respond(stream);
+        }
+    }
+
+    private void onSettings(int length) {
+        synchronized (this) {
+            for (int offset = 0; offset + 6 <= length; offset += 6) {
+                int id = (payload[offset] & 0xff) << 8 | payload[offset + 1] & 0xff;
+                int value = readInt(payload, offset + 2);
+                if (id == SETTINGS_INITIAL_WINDOW_SIZE) {
+                    int delta = value - peerInitialWindow;
+                    peerInitialWindow = value;
+                    streams.values().forEach(stream -> stream.window += delta);
+                } else if (id == SETTINGS_MAX_FRAME_SIZE) {
+                    peerMaxFrameSize = value;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private synchronized void onWindowUpdate(int streamId, int increment) {
+        if (streamId == 0) {
+            connectionWindow += increment;
+        } else {
+            Stream stream = streams.get(streamId);
+            if (stream != null) {
+                stream.window += increment;
+            }
+        }
+        notifyAll();
+    }
+
+    private void respond(Stream stream) {
+        FixedResponse response = requestHandler.respond(stream.request);
+        executor.execute(() -> {
+            try {
+                write(stream, response);
+            } catch (IOException e) {
+                log.debug("Writing stream {} failed", stream.id, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                streams.remove(stream.id);
+            }
+        });
+    }
+
+    private void write(Stream stream, FixedResponse response) throws IOException, InterruptedException {
+        sleep(response.delayNanos());
+        if (response.isConnectionReset()) {
+            byte[] errorCode = new byte[4];
+            writeInt(errorCode, 0, INTERNAL_ERROR);
+            writeFrame(RST_STREAM, 0, stream.id, errorCode, 0, errorCode.length);
+            return;
+        }
+
+        byte[] body = response.body();
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        Hpack.writeStatus(headers, response.statusCode());
+        response.headers().forEach((name, values) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (!lowerCaseName.equals("connection") && !lowerCaseName.equals("keep-alive") && !lowerCaseName.equals("transfer-encoding")) {
+                values.forEach(value -> Hpack.writeHeader(headers, lowerCaseName, value));
+            }
+        });
+        Hpack.writeHeader(headers, "content-length", Integer.toString(body.length));
+        byte[] headerBlock = headers.toByteArray();
+        writeFrame(HEADERS, FLAG_END_HEADERS | (body.length == 0 ? FLAG_END_STREAM : 0), stream.id, headerBlock, 0, headerBlock.length);
+
+        int offset = 0;
+        while (offset < body.length) {
+            int chunk = body.length - offset;
+            if (response.isSlowBody()) {
+                sleep(response.chunkDelayNanos());
+                chunk = Math.min(chunk, response.chunkSize());
+            }
+            int end = offset + chunk;
+            while (offset < end) {
+                offset += writeData(stream, body, offset, end - offset, end == body.length);
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes written, bounded by flow control windows and frame size
+     */
+    private synchronized int writeData(Stream stream, byte[] body, int offset, int length, boolean last) throws IOException, InterruptedException {
+        while (!closed && !stream.cancelled && (connectionWindow <= 0 || stream.window <= 0)) {
+            wait();
+        }
+        if (closed || stream.cancelled) {
+            throw new IOException("Stream " + stream.id + " closed");
+        }
+        int size = (int) Math.min(Math.min(length, peerMaxFrameSize), Math.min(connectionWindow, stream.window));
+        connectionWindow -= size;
+        stream.window -= size;
+        writeFrame(DATA, last && size == length ? FLAG_END_STREAM : 0, stream.id, body, offset, size);
+        return size;
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] frame = new byte[4];
+        writeInt(frame, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, frame, 0, frame.length);
+    }
+
+    private void goAway(int errorCode) throws IOException {
+        byte[] frame = new byte[8];
+        writeInt(frame, 4, errorCode);
+        writeFrame(GOAWAY, 0, 0, frame, 0, frame.length);
+    }
+
+    private synchronized void writeFrame(int type, int flags, int streamId, byte[] buffer, int offset, int length) throws IOException {
+        output.write(length >>> 16);
+        output.write(length >>> 8);
+        output.write(length);
+        output.write(type);
+        output.write(flags);
+        output.write(streamId >>> 24);
+        output.write(streamId >>> 16);
+        output.write(streamId >>> 8);
+        output.write(streamId);
+        output.write(buffer, offset, length);
+        output.flush();
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16 | (buffer[offset + 2] & 0xff) << 8 | buffer[offset + 3] & 0xff;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void sleep(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static class Stream {
+        private final int id;
+        private final Request request;
+        // guarded by connection
+        private long window;
+        private boolean cancelled;
+
+        private Stream(int id, Request request, long window) {
+            this.id = id;
+            this.request = request;
+            this.window = window;
+        }
+    }
+
+    private static class Request implements ServerEngine.Request {
+        private final Map<String, String> headers = new HashMap<>();
+        private final String path;
+
+        private Request(List<String[]> headers) {
+            for (String[] header : headers) {
+                this.headers.putIfAbsent(header[0], header[1]);
+            }
+            String path = this.headers.getOrDefault(":path", "/");
+            int query = path.indexOf('?');
+            this.path = query < 0 ? path : path.substring(0, query);
+        }
+
+        @Override
+        public CharSequence path() {
+            return path;
+        }
+
+        @Override
+        public CharSequence header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+}
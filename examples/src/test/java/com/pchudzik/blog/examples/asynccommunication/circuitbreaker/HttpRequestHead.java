@@ -0,0 +1,160 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP/1.x request head parser working directly on connection buffer. Instance is reused for every request
+ * on a connection, so parsing doesn't allocate.
+ */
+class HttpRequestHead implements ServerEngine.Request {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final AsciiSlice path = new AsciiSlice();
+    private final AsciiSlice headerValue = new AsciiSlice();
+    private byte[] buffer;
+    private int headersStart;
+    private int headEnd;
+    private boolean keepAlive;
+
+    /**
+     * @return number of bytes taken by request head or -1 when head is not complete yet
+     */
+    int parse(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int headEnd = indexOfHeadEnd(buffer, offset, end);
+        if (headEnd < 0) {
+            return -1;
+        }
+
+        int pathStart = indexOf(buffer, (byte) ' ', offset, headEnd) + 1;
+        int versionStart = indexOf(buffer, (byte) ' ', pathStart, headEnd) + 1;
+        int requestLineEnd = indexOf(buffer, CR, versionStart, headEnd);
+        if (pathStart == 0 || versionStart == 0 || requestLineEnd < 0) {
+            throw new IllegalArgumentException("Malformed request line");
+        }
+        int queryStart = indexOf(buffer, (byte) '?', pathStart, versionStart - 1);
+        int pathEnd = queryStart < 0 ? versionStart - 1 : queryStart;
+
+        this.buffer = buffer;
+        this.headersStart = requestLineEnd + 2;
+        this.headEnd = headEnd;
+        this.path.wrap(buffer, pathStart, pathEnd - pathStart);
+
+        boolean http11 = buffer[requestLineEnd - 1] == '1';
+        CharSequence connection = header("Connection");
+        if (connection == null) {
+            keepAlive = http11;
+        } else {
+            keepAlive = !equalsIgnoreCase(connection, "close");
+        }
+
+        return headEnd + 4 - offset;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    @Override
+    public CharSequence path() {
+        return path;
+    }
+
+    @Override
+    public CharSequence header(String name) {
+        int lineStart = headersStart;
+        while (lineStart < headEnd) {
+            int lineEnd = indexOf(buffer, CR, lineStart, headEnd);
+            if (lineEnd < 0) {
+                lineEnd = headEnd;
+            }
+            int colon = indexOf(buffer, (byte) ':', lineStart, lineEnd);
+            if (colon - lineStart == name.length() && regionEqualsIgnoreCase(buffer, lineStart, name)) {
+                int valueStart = colon + 1;
+                while (valueStart < lineEnd && buffer[valueStart] == ' ') {
+                    valueStart++;
+                }
+                int valueEnd = lineEnd;
+                while (valueEnd > valueStart && buffer[valueEnd - 1] == ' ') {
+                    valueEnd--;
+                }
+                headerValue.wrap(buffer, valueStart, valueEnd - valueStart);
+                return headerValue;
+            }
+            lineStart = lineEnd + 2;
+        }
+        return null;
+    }
+
+    private static int indexOfHeadEnd(byte[] buffer, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (buffer[i] == CR && buffer[i + 1] == LF && buffer[i + 2] == CR && buffer[i + 3] == LF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEqualsIgnoreCase(byte[] buffer, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase((char) buffer[offset + i]) != Character.toLowerCase(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence sequence, String value) {
+        if (sequence.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(sequence.charAt(i)) != Character.toLowerCase(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class AsciiSlice implements CharSequence {
+        private byte[] buffer;
+        private int offset;
+        private int length;
+
+        void wrap(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer[offset + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
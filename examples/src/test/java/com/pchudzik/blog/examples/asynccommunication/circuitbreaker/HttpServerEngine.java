@@ -0,0 +1,112 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class HttpServerEngine implements ServerEngine {
+    private final int workerThreads;
+    private HttpServer httpServer;
+    private ExecutorService executorService;
+    private TimerWheel timerWheel;
+
+    HttpServerEngine(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    @Override
+    public void start(InetSocketAddress address, RequestHandler requestHandler) throws IOException {
+        executorService = Executors.newFixedThreadPool(workerThreads);
+        timerWheel = new TimerWheel("breakable-http-server-timer");
+        httpServer = HttpServer.create(address, 0);
+        httpServer.createContext("/", (exchange -> {
+            FixedResponse response = requestHandler.respond(new ExchangeRequest(exchange));
+            if (response.isConnectionReset()) {
+                throw new IOException("Dropping connection");
+            }
+            if (response.delayNanos() > 0) {
+                schedule(() -> send(exchange, response), response.delayNanos());
+            } else {
+                send(exchange, response);
+            }
+        }));
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+    }
+
+    @Override
+    public void stop() {
+        httpServer.stop(2);
+        executorService.shutdown();
+        timerWheel.close();
+    }
+
+    /**
+     * Waiting happens on the timer wheel, worker threads are used only for writing.
+     */
+    private void schedule(Runnable task, long delayNanos) {
+        timerWheel.schedule(() -> executorService.execute(task), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void send(HttpExchange exchange, FixedResponse response) {
+        try {
+            response.headers().forEach((key, value) -> exchange.getResponseHeaders().put(key, new ArrayList<>(value)));
+            byte[] body = response.body();
+            exchange.sendResponseHeaders(response.statusCode(), body.length == 0 ? -1 : body.length);
+            if (response.isSlowBody()) {
+                sendChunk(exchange, response, 0);
+                return;
+            }
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.flush();
+            exchange.close();
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private void sendChunk(HttpExchange exchange, FixedResponse response, int offset) {
+        try {
+            byte[] body = response.body();
+            int end = Math.min(offset + response.chunkSize(), body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body, offset, end - offset);
+            output.flush();
+            if (end < body.length) {
+                schedule(() -> sendChunk(exchange, response, end), response.chunkDelayNanos());
+            } else {
+                exchange.close();
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static class ExchangeRequest implements Request {
+        private final HttpExchange exchange;
+
+        private ExchangeRequest(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public CharSequence path() {
+            return exchange.getRequestURI().getPath();
+        }
+
+        @Override
+        public CharSequence header(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay added to every response. Implementations use {@link ThreadLocalRandom} so they can be shared by all server
+ * threads.
+ */
+public interface LatencyProfile {
+    long nextDelayNanos();
+
+    static LatencyProfile fixed(Duration delay) {
+        long delayNanos = delay.toNanos();
+        return () -> delayNanos;
+    }
+
+    static LatencyProfile uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("Max must not be lower than min");
+        }
+        return () -> minNanos + (long) (ThreadLocalRandom.current().nextDouble() * (maxNanos - minNanos));
+    }
+
+    /**
+     * Long tail distribution typical for service response times. {@code sigma} controls tail heaviness - with
+     * {@code sigma = 1} p99 is about 10 times the median.
+     */
+    static LatencyProfile logNormal(Duration median, double sigma) {
+        double mu = Math.log(median.toNanos());
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    /**
+     * Mostly {@code fast} responses with {@code slowRatio} of them taken from {@code slow} profile. Think of cache
+     * misses or GC pauses.
+     */
+    static LatencyProfile bimodal(LatencyProfile fast, LatencyProfile slow, double slowRatio) {
+        return () -> ThreadLocalRandom.current().nextDouble() < slowRatio
+                ? slow.nextDelayNanos()
+                : fast.nextDelayNanos();
+    }
+
+    /**
+     * Replays recorded histogram. Bucket is picked proportionally to its count and delay is uniform within the
+     * bucket, {@code upperBounds} must be sorted and bucket {@code i} covers {@code (upperBounds[i - 1],
+     * upperBounds[i]]}.
+     */
+    static LatencyProfile replay(Duration[] upperBounds, long[] counts) {
+        if (upperBounds.length != counts.length || upperBounds.length == 0) {
+            throw new IllegalArgumentException("Every bucket requires upper bound and count");
+        }
+        long[] boundsNanos = new long[upperBounds.length];
+        long[] cumulativeCounts = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            boundsNanos[i] = upperBounds[i].toNanos();
+            total += counts[i];
+            cumulativeCounts[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Histogram is empty");
+        }
+
+        long totalCount = total;
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long value = random.nextLong(totalCount);
+            int bucket = 0;
+            while (cumulativeCounts[bucket] <= value) {
+                bucket++;
+            }
+            long lowerBound = bucket == 0 ? 0 : boundsNanos[bucket - 1];
+            return lowerBound + (long) (random.nextDouble() * (boundsNanos[bucket] - lowerBound));
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyProfileTest {
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    public void fixed_latency() {
+        LatencyProfile profile = LatencyProfile.fixed(Duration.ofMillis(20));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), profile.nextDelayNanos());
+    }
+
+    @Test
+    public void uniform_latency_stays_within_bounds() {
+        LatencyProfile profile = LatencyProfile.uniform(Duration.ofMillis(10), Duration.ofMillis(20));
+
+        long[] samples = sample(profile);
+
+        assertTrue(samples[0] >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(samples[SAMPLES - 1] <= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(15, TimeUnit.NANOSECONDS.toMillis(percentile(samples, .5)), 1);
+    }
+
+    @Test
+    public void log_normal_latency_has_long_tail() {
+        LatencyProfile profile = LatencyProfile.logNormal(Duration.ofMillis(10), 1);
+
+        long[] samples = sample(profile);
+
+        assertEquals(10, TimeUnit.NANOSECONDS.toMillis(percentile(samples, .5)), 1);
+        long p99 = TimeUnit.NANOSECONDS.toMillis(percentile(samples, .99));
+        assertTrue("p99 was " + p99, p99 > 80 && p99 < 130);
+    }
+
+    @Test
+    public void bimodal_latency() {
+        LatencyProfile profile = LatencyProfile.bimodal(
+                LatencyProfile.fixed(Duration.ofMillis(1)),
+                LatencyProfile.fixed(Duration.ofMillis(100)),
+                .1);
+
+        long[] samples = sample(profile);
+
+        assertEquals(1, TimeUnit.NANOSECONDS.toMillis(percentile(samples, .85)));
+        assertEquals(100, TimeUnit.NANOSECONDS.toMillis(percentile(samples, .95)));
+    }
+
+    @Test
+    public void replays_recorded_histogram() {
+        LatencyProfile profile = LatencyProfile.replay(
+                new Duration[]{Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(500)},
+                new long[]{90, 9, 1});
+
+        long[] samples = sample(profile);
+
+        assertTrue(percentile(samples, .89) <= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(percentile(samples, .98) <= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(percentile(samples, .995) > TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void delayed_responses_do_not_pin_server_threads() throws Exception {
+        int inFlightRequests = 500;
+        long delayMillis = 500;
+        BreakableService breakableService = new BreakableService(
+                new BreakableService.FixedResponseHandler(200, "late")
+                        .withLatency(LatencyProfile.fixed(Duration.ofMillis(delayMillis))),
+                ServerEngine.nio(1));
+        breakableService.startServer();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(inFlightRequests);
+        dispatcher.setMaxRequestsPerHost(inFlightRequests);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+
+        try {
+            CountDownLatch done = new CountDownLatch(inFlightRequests);
+            AtomicInteger succeeded = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < inFlightRequests; i++) {
+                client
+                        .newCall(new Request.Builder().url("http://localhost:" + breakableService.getPort() + "/hello").build())
+                        .enqueue(new Callback() {
+                            @Override
+                            public void onFailure(Call call, IOException e) {
+                                done.countDown();
+                            }
+
+                            @Override
+                            public void onResponse(Call call, Response response) {
+                                try (Response closed = response) {
+                                    succeeded.addAndGet(closed.code() == 200 ? 1 : 0);
+                                }
+                                done.countDown();
+                            }
+                        });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(inFlightRequests, succeeded.get());
+            assertTrue("took " + tookMillis + "ms", tookMillis < 5 * delayMillis);
+        } finally {
+            breakableService.stopServer();
+            client.dispatcher().executorService().shutdown();
+        }
+    }
+
+    private static long[] sample(LatencyProfile profile) {
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = profile.nextDelayNanos();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static long percentile(long[] sortedSamples, double percentile) {
+        return sortedSamples[(int) (percentile * (sortedSamples.length - 1))];
+    }
+}
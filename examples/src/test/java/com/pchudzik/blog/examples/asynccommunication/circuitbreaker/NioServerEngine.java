@@ -0,0 +1,340 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+class NioServerEngine implements ServerEngine {
+    private static final Logger log = LoggerFactory.getLogger(NioServerEngine.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final EventLoop[] eventLoops;
+    private TimerWheel timerWheel;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    NioServerEngine(int selectorThreads) {
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("At least one selector thread is required");
+        }
+        this.eventLoops = new EventLoop[selectorThreads];
+    }
+
+    @Override
+    public void start(InetSocketAddress address, RequestHandler requestHandler) throws IOException {
+        running = true;
+        timerWheel = new TimerWheel("breakable-nio-timer");
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(requestHandler, "breakable-nio-" + i);
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        acceptor = new Thread(this::acceptConnections, "breakable-nio-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(serverChannel);
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+        timerWheel.close();
+    }
+
+    private void acceptConnections() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Failed to accept connection", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to close {}", closeable, e);
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final RequestHandler requestHandler;
+        private final Selector selector;
+        private final Thread thread;
+
+        EventLoop(RequestHandler requestHandler, String name) throws IOException {
+            this.requestHandler = requestHandler;
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void register(SocketChannel channel) {
+            newConnections.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Runs task on event loop thread after {@code delayNanos}.
+         */
+        void schedule(Runnable task, long delayNanos) {
+            timerWheel.schedule(() -> {
+                tasks.add(task);
+                selector.wakeup();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void stop() {
+            selector.wakeup();
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerNewConnections();
+                    runTasks();
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Event loop {} failed", thread.getName(), e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void registerNewConnections() {
+            SocketChannel channel;
+            while ((channel = newConnections.poll()) != null) {
+                try {
+                    Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing connection {}", connection.channel, e);
+                connection.close();
+            }
+        }
+    }
+
+    private class Connection {
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private final HttpRequestHead request = new HttpRequestHead();
+        private final Runnable resumeWriting = this::resumeWriting;
+        private final SocketChannel channel;
+        private final EventLoop eventLoop;
+        private SelectionKey key;
+        private FixedResponse response;
+        private byte[] pending;
+        private int pendingOffset;
+        private int writeLimit;
+        private boolean closeAfterWrite;
+
+        Connection(SocketChannel channel, EventLoop eventLoop) {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            processRequests();
+        }
+
+        void onWritable() throws IOException {
+            if (flush()) {
+                processRequests();
+            }
+        }
+
+        private void processRequests() throws IOException {
+            while (key.isValid() && !isWriting()) {
+                int consumed = request.parse(in.array(), 0, in.position());
+                if (consumed < 0) {
+                    if (!in.hasRemaining()) {
+                        close();
+                    }
+                    return;
+                }
+
+                FixedResponse response = eventLoop.requestHandler.respond(request);
+                closeAfterWrite = !request.isKeepAlive();
+                in.flip();
+                in.position(consumed);
+                in.compact();
+
+                if (response.isConnectionReset()) {
+                    reset();
+                    return;
+                }
+                startWriting(response);
+            }
+        }
+
+        private void startWriting(FixedResponse response) throws IOException {
+            this.response = response;
+            this.pending = response.encoded();
+            this.pendingOffset = 0;
+            this.writeLimit = 0;
+            if (response.delayNanos() > 0) {
+                key.interestOps(0);
+                eventLoop.schedule(resumeWriting, response.delayNanos());
+            } else {
+                writeLimit = nextWriteLimit();
+                flush();
+            }
+        }
+
+        private void resumeWriting() {
+            if (!key.isValid()) {
+                return;
+            }
+            writeLimit = nextWriteLimit();
+            try {
+                if (flush()) {
+                    processRequests();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing connection {}", channel, e);
+                close();
+            }
+        }
+
+        private int nextWriteLimit() {
+            if (!response.isSlowBody()) {
+                return pending.length;
+            }
+            if (writeLimit == 0) {
+                return response.headLength();
+            }
+            return Math.min(writeLimit + response.chunkSize(), pending.length);
+        }
+
+        private boolean isWriting() {
+            return pending != null || out.position() > 0;
+        }
+
+        private boolean flush() throws IOException {
+            while (true) {
+                if (pending != null && pendingOffset < writeLimit) {
+                    int chunk = Math.min(out.remaining(), writeLimit - pendingOffset);
+                    out.put(pending, pendingOffset, chunk);
+                    pendingOffset += chunk;
+                }
+                if (out.position() == 0) {
+                    break;
+                }
+
+                out.flip();
+                channel.write(out);
+                boolean partialWrite = out.hasRemaining();
+                out.compact();
+                if (partialWrite) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+            }
+
+            if (pending != null) {
+                if (pendingOffset < pending.length) {
+                    key.interestOps(0);
+                    eventLoop.schedule(resumeWriting, response.chunkDelayNanos());
+                    return false;
+                }
+                pending = null;
+                response = null;
+            }
+
+            if (closeAfterWrite) {
+                close();
+                return false;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            return true;
+        }
+
+        private void reset() throws IOException {
+            channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+            close();
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
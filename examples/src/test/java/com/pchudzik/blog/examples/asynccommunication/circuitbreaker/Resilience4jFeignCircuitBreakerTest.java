@@ -0,0 +1,189 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+import feign.Feign;
+import feign.Logger;
+import feign.Request;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * {@link FeignCircuitBreakerTest} scenarios with the same setter factory configuration on
+ * {@link Resilience4jInvocationHandlerFactory}.
+ * <p>
+ * Hystrix looks at error percentage in health snapshots taken every 500ms, Resilience4j evaluates the window after
+ * every call once request volume threshold is reached. With random errors first 10 calls can go over the threshold
+ * by chance, so scenarios with error rate use {@link ScenarioResponseHandler} with exact proportions in every 10
+ * calls.
+ */
+public class Resilience4jFeignCircuitBreakerTest {
+    private static final String SAY_HELLO = "HelloWorld#sayHello()";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final String fallbackValue = "fallback value";
+    private final HelloWorld fallback = () -> new Hello(fallbackValue);
+    private BreakableService breakableService;
+    private FixedResponseHandler responseHandler;
+
+    @Before
+    public void setup() throws Exception {
+        responseHandler = new FixedResponseHandler();
+        breakableService = new BreakableService(responseHandler, ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void everything_works_just_fine() {
+        HelloWorld helloWorld = helloWorld(Resilience4jInvocationHandlerFactory.builder()
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .build());
+
+        assertThat(helloWorld.sayHello().getMessage(), equalTo(responseHandler.message));
+    }
+
+    @Test
+    public void circuit_breaker_opens_and_closes() {
+        HelloWorld helloWorld = helloWorld(Resilience4jInvocationHandlerFactory.builder()
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .setterFactory((target, method) -> CommandProperties.setter()
+                        .withCircuitBreakerSleepWindowInMilliseconds(10)
+                        .withCircuitBreakerRequestVolumeThreshold(10))
+                .fallback(fallback)
+                .build());
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(SAY_HELLO);
+
+        breakableService.useResponseHandler(new FixedResponseHandler(500, "error"));
+        boolean isCircuitBreakerOpen = false;
+        while (!isCircuitBreakerOpen) {
+            helloWorld.sayHello();
+            isCircuitBreakerOpen = circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+        }
+
+        assertThat(helloWorld.sayHello().getMessage(), equalTo(fallbackValue));
+        assertThat(isCircuitBreakerOpen, equalTo(true));
+
+        String workingAgainMessage = "working again";
+        breakableService.useResponseHandler(new FixedResponseHandler(200, workingAgainMessage));
+        while (isCircuitBreakerOpen) {
+            helloWorld.sayHello();
+            isCircuitBreakerOpen = circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+        }
+        assertThat(isCircuitBreakerOpen, equalTo(false));
+        assertThat(helloWorld.sayHello().getMessage(), equalTo(workingAgainMessage));
+    }
+
+    @Test
+    public void circuit_breaker_doesnot_open_unless_error_threshold_satisfied() {
+        HelloWorld helloWorld = helloWorld(Resilience4jInvocationHandlerFactory.builder()
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .setterFactory((target, method) -> CommandProperties.setter()
+                        .withCircuitBreakerRequestVolumeThreshold(10)
+                        .withCircuitBreakerSleepWindowInMilliseconds(10)
+                        .withCircuitBreakerErrorThresholdPercentage(80))
+                .fallback(fallback)
+                .build());
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(SAY_HELLO);
+
+        breakableService.useResponseHandler(sixtyPercentOfErrors());
+
+        int requestsToExecute = 5_000;
+        for (int i = 0; i < requestsToExecute; i++) {
+            helloWorld.sayHello();
+            assertFalse("Circuit breaker should not open", circuitBreaker.getState() == CircuitBreaker.State.OPEN);
+        }
+    }
+
+    @Test
+    public void circuit_breaker_opens_after_error_threshold_satisfied() {
+        HelloWorld helloWorld = helloWorld(Resilience4jInvocationHandlerFactory.builder()
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .setterFactory((target, method) -> CommandProperties.setter()
+                        .withCircuitBreakerRequestVolumeThreshold(10)
+                        .withCircuitBreakerErrorThresholdPercentage(40))
+                .fallback(fallback)
+                .build());
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(SAY_HELLO);
+
+        breakableService.useResponseHandler(sixtyPercentOfErrors());
+
+        boolean isOpen = false;
+        while (!isOpen) {
+            helloWorld.sayHello();
+            isOpen = circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+        }
+    }
+
+    @Test
+    public void calls_above_semaphore_limit_go_to_fallback() throws Exception {
+        HelloWorld helloWorld = helloWorld(Resilience4jInvocationHandlerFactory.builder()
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .setterFactory((target, method) -> CommandProperties.setter()
+                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(1))
+                .fallback(fallback)
+                .build());
+        CountDownLatch slowCallStarted = new CountDownLatch(1);
+        breakableService.useResponseHandler(() -> {
+            slowCallStarted.countDown();
+            return new FixedResponseHandler(200, "slow hello").handleResponse().withDelay(500, TimeUnit.MILLISECONDS);
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Hello> slowCall = executor.submit(helloWorld::sayHello);
+            slowCallStarted.await();
+
+            assertThat(helloWorld.sayHello().getMessage(), equalTo(fallbackValue));
+            assertThat(slowCall.get().getMessage(), equalTo("slow hello"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private HelloWorld helloWorld(Resilience4jInvocationHandlerFactory invocationHandlerFactory) {
+        return Feign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.NONE)
+                .decoder(new GsonDecoder())
+                .invocationHandlerFactory(invocationHandlerFactory)
+                .target(HelloWorld.class, "http://localhost:" + breakableService.getPort());
+    }
+
+    private static ScenarioResponseHandler sixtyPercentOfErrors() {
+        return ScenarioResponseHandler.builder()
+                .respond(4, 200, "OK")
+                .respond(6, 500, "ERROR")
+                .build();
+    }
+
+    interface HelloWorld {
+        @GET
+        @Path("/hello")
+        Hello sayHello();
+    }
+}
@@ -0,0 +1,182 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import feign.Feign;
+import feign.InvocationHandlerFactory;
+import feign.Target;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drop in replacement for {@code HystrixFeign}: the same setter factory and fallback, but calls run on the caller
+ * thread guarded by a semaphore bulkhead and Resilience4j circuit breaker, there is no thread pool hop per call. Every
+ * method gets its own breaker and bulkhead named like Hystrix command key - {@link Feign#configKey(Class, Method)},
+ * e.g. {@code HelloWorld#sayHello()}. Failed, short circuited and rejected calls go to the fallback when there is one.
+ * <p>
+ * There is no Hystrix execution timeout, configure timeouts with {@code Request.Options}. Client interface methods
+ * return the response type directly instead of {@code HystrixCommand}.
+ */
+public class Resilience4jInvocationHandlerFactory implements InvocationHandlerFactory {
+    private final SetterFactory setterFactory;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Object fallback;
+
+    private Resilience4jInvocationHandlerFactory(Builder builder) {
+        this.setterFactory = builder.setterFactory;
+        this.circuitBreakerRegistry = builder.circuitBreakerRegistry;
+        this.fallback = builder.fallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // InvocationHandlerFactory declares raw Target, create(Target<?>, ...) wouldn't override it
+    @Override
+    @SuppressWarnings("rawtypes")
+    public InvocationHandler create(Target target, Map<Method, MethodHandler> dispatch) {
+        if (fallback != null && !target.type().isInstance(fallback)) {
+            throw new IllegalArgumentException("Fallback " + fallback.getClass() + " doesn't implement " + target.type());
+        }
+        Map<Method, GuardedMethod> methods = new HashMap<>();
+        dispatch.forEach((method, handler) -> methods.put(method, guard(target, method, handler)));
+        return new Resilience4jInvocationHandler(target, methods, fallback);
+    }
+
+    private GuardedMethod guard(Target<?> target, Method method, MethodHandler handler) {
+        String name = Feign.configKey(target.type(), method);
+        CommandProperties properties = setterFactory.create(target, method);
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name, properties.circuitBreakerConfig());
+        if (!properties.isCircuitBreakerEnabled()) {
+            circuitBreaker.transitionToDisabledState();
+        } else if (properties.isCircuitBreakerForceOpen()) {
+            circuitBreaker.transitionToForcedOpenState();
+        } else if (properties.isCircuitBreakerForceClosed()) {
+            circuitBreaker.transitionToMetricsOnlyState();
+        }
+        return new GuardedMethod(handler, circuitBreaker, Bulkhead.of(name, properties.bulkheadConfig()));
+    }
+
+    /**
+     * Counterpart of {@code feign.hystrix.SetterFactory}.
+     */
+    public interface SetterFactory {
+        CommandProperties create(Target<?> target, Method method);
+    }
+
+    private static class GuardedMethod {
+        private final MethodHandler handler;
+        private final CircuitBreaker circuitBreaker;
+        private final Bulkhead bulkhead;
+
+        private GuardedMethod(MethodHandler handler, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+            this.handler = handler;
+            this.circuitBreaker = circuitBreaker;
+            this.bulkhead = bulkhead;
+        }
+
+        /**
+         * Semaphore first, so a call rejected by it doesn't take the single trial call of half open breaker.
+         */
+        private Object invoke(Object[] args) throws Throwable {
+            bulkhead.acquirePermission();
+            try {
+                circuitBreaker.acquirePermission();
+                long start = System.nanoTime();
+                try {
+                    Object result = handler.invoke(args);
+                    circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return result;
+                } catch (Throwable e) {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                    throw e;
+                }
+            } finally {
+                bulkhead.onComplete();
+            }
+        }
+    }
+
+    private static class Resilience4jInvocationHandler implements InvocationHandler {
+        private final Target<?> target;
+        private final Map<Method, GuardedMethod> methods;
+        private final Object fallback;
+
+        private Resilience4jInvocationHandler(Target<?> target, Map<Method, GuardedMethod> methods, Object fallback) {
+            this.target = target;
+            this.methods = methods;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                Object other = args[0];
+                return other != null
+                        && Proxy.isProxyClass(other.getClass())
+                        && Proxy.getInvocationHandler(other) instanceof Resilience4jInvocationHandler
+                        && target.equals(((Resilience4jInvocationHandler) Proxy.getInvocationHandler(other)).target);
+            } else if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                return target.hashCode();
+            } else if ("toString".equals(method.getName()) && method.getParameterCount() == 0) {
+                return target.toString();
+            }
+
+            try {
+                return methods.get(method).invoke(args);
+            } catch (Exception e) {
+                if (fallback == null) {
+                    throw e;
+                }
+                return invokeFallback(method, args);
+            }
+        }
+
+        private Object invokeFallback(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(fallback, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public static class Builder {
+        private SetterFactory setterFactory = (target, method) -> CommandProperties.setter();
+        private CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        private Object fallback;
+
+        private Builder() {
+        }
+
+        public Builder setterFactory(SetterFactory setterFactory) {
+            this.setterFactory = setterFactory;
+            return this;
+        }
+
+        public Builder circuitBreakerRegistry(CircuitBreakerRegistry circuitBreakerRegistry) {
+            this.circuitBreakerRegistry = circuitBreakerRegistry;
+            return this;
+        }
+
+        /**
+         * Implementation of client interface called instead of the failed one.
+         */
+        public Builder fallback(Object fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        public Resilience4jInvocationHandlerFactory build() {
+            return new Resilience4jInvocationHandlerFactory(this);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks one of weighted outcomes for every request.
+ *
+ * <p>{@link Selection#EXACT} walks a shuffled schedule in which every outcome appears exactly {@code weight} times.
+ * Position in the schedule comes from a single counter, so every {@code totalWeight} consecutive requests contain
+ * exact proportions no matter how many server threads ask for responses, and the same seed always gives the same
+ * sequence. {@link Selection#RANDOM} draws from {@link ThreadLocalRandom} and shares no state between threads.
+ */
+public class ScenarioResponseHandler implements ResponseHandler {
+    private static final int MAX_TOTAL_WEIGHT = 1 << 20;
+
+    private final AtomicLong requestCounter = new AtomicLong();
+    private final ResponseHandler[] outcomes;
+    private final int[] cumulativeWeights;
+    private final int[] schedule;
+    private final Selection selection;
+
+    private ScenarioResponseHandler(Builder builder) {
+        int outcomesCount = builder.outcomes.size();
+        this.outcomes = builder.outcomes.toArray(new ResponseHandler[0]);
+        this.cumulativeWeights = new int[outcomesCount];
+        int totalWeight = 0;
+        for (int i = 0; i < outcomesCount; i++) {
+            totalWeight += builder.weights.get(i);
+            cumulativeWeights[i] = totalWeight;
+        }
+        this.schedule = shuffledSchedule(builder, totalWeight);
+        this.selection = builder.selection;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public FixedResponse handleResponse() {
+        return outcomes[nextOutcome()].handleResponse();
+    }
+
+    private int nextOutcome() {
+        if (selection == Selection.EXACT) {
+            return schedule[(int) (requestCounter.getAndIncrement() % schedule.length)];
+        }
+
+        int value = ThreadLocalRandom.current().nextInt(schedule.length);
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] > value) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int[] shuffledSchedule(Builder builder, int totalWeight) {
+        int[] schedule = new int[totalWeight];
+        int position = 0;
+        for (int outcome = 0; outcome < builder.weights.size(); outcome++) {
+            for (int i = 0; i < builder.weights.get(outcome); i++) {
+                schedule[position++] = outcome;
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(builder.seed);
+        for (int i = schedule.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = schedule[i];
+            schedule[i] = schedule[j];
+            schedule[j] = tmp;
+        }
+        return schedule;
+    }
+
+    public enum Selection {
+        EXACT, RANDOM
+    }
+
+    public static class Builder {
+        private final List<ResponseHandler> outcomes = new ArrayList<>();
+        private final List<Integer> weights = new ArrayList<>();
+        private Selection selection = Selection.EXACT;
+        private long seed = 0x5eed;
+        private int totalWeight;
+
+        private Builder() {
+        }
+
+        public Builder outcome(int weight, ResponseHandler responseHandler) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight must be positive");
+            }
+            if (totalWeight + weight > MAX_TOTAL_WEIGHT) {
+                throw new IllegalArgumentException("Total weight can not exceed " + MAX_TOTAL_WEIGHT);
+            }
+            totalWeight += weight;
+            outcomes.add(responseHandler);
+            weights.add(weight);
+            return this;
+        }
+
+        public Builder outcome(int weight, FixedResponse response) {
+            return outcome(weight, () -> response);
+        }
+
+        public Builder respond(int weight, int statusCode, String message) {
+            return outcome(weight, new FixedResponseHandler(statusCode, message));
+        }
+
+        public Builder connectionReset(int weight) {
+            return outcome(weight, FixedResponse.connectionReset());
+        }
+
+        public Builder selection(Selection selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public ScenarioResponseHandler build() {
+            if (outcomes.isEmpty()) {
+                throw new IllegalStateException("At least one outcome is required");
+            }
+            return new ScenarioResponseHandler(this);
+        }
+    }
+}
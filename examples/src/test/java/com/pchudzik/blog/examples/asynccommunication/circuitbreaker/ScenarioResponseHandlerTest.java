@@ -0,0 +1,162 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScenarioResponseHandlerTest {
+    private BreakableService breakableService;
+    private OkHttpClient client;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(), ServerEngine.nio(2));
+        breakableService.startServer();
+        client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Test
+    public void distribution_is_exact_under_concurrency() throws Exception {
+        ScenarioResponseHandler handler = ScenarioResponseHandler.builder()
+                .respond(60, 200, "OK")
+                .respond(30, 500, "ERROR")
+                .respond(10, 503, "UNAVAILABLE")
+                .build();
+        int threads = 8;
+        int requestsPerThread = 10_000;
+        Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(() -> {
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        statusCodes
+                                .computeIfAbsent(handler.handleResponse().statusCode(), code -> new LongAdder())
+                                .increment();
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> worker : executor.invokeAll(workers)) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(48_000, statusCodes.get(200).sum());
+        assertEquals(24_000, statusCodes.get(500).sum());
+        assertEquals(8_000, statusCodes.get(503).sum());
+    }
+
+    @Test
+    public void same_seed_gives_same_sequence() {
+        ScenarioResponseHandler first = ScenarioResponseHandler.builder().seed(42).respond(7, 200, "OK").respond(3, 500, "ERROR").build();
+        ScenarioResponseHandler second = ScenarioResponseHandler.builder().seed(42).respond(7, 200, "OK").respond(3, 500, "ERROR").build();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first.handleResponse().statusCode(), second.handleResponse().statusCode());
+        }
+    }
+
+    @Test
+    public void random_selection_keeps_approximate_distribution() {
+        ScenarioResponseHandler handler = ScenarioResponseHandler.builder()
+                .selection(ScenarioResponseHandler.Selection.RANDOM)
+                .respond(80, 200, "OK")
+                .respond(20, 500, "ERROR")
+                .build();
+
+        int errors = 0;
+        int requests = 100_000;
+        for (int i = 0; i < requests; i++) {
+            errors += handler.handleResponse().statusCode() == 500 ? 1 : 0;
+        }
+
+        assertEquals(.2, (double) errors / requests, .01);
+    }
+
+    @Test
+    public void connection_is_reset() {
+        breakableService.useResponseHandler(ScenarioResponseHandler.builder().connectionReset(1).build());
+
+        try {
+            get();
+            fail("Connection should be reset");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void response_is_delayed() throws Exception {
+        FixedResponse response = FixedResponse.jsonResponse()
+                .withBody(BreakableService.message("late"))
+                .withDelay(200, TimeUnit.MILLISECONDS);
+        breakableService.useResponseHandler(ScenarioResponseHandler.builder().outcome(1, response).build());
+
+        long start = System.nanoTime();
+        try (Response httpResponse = get()) {
+            assertThat(httpResponse.body().string(), equalTo(BreakableService.message("late")));
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void body_is_trickled() throws Exception {
+        String message = BreakableService.message("slow body");
+        FixedResponse response = FixedResponse.jsonResponse()
+                .withBody(message)
+                .withSlowBody(5, 20, TimeUnit.MILLISECONDS);
+        breakableService.useResponseHandler(ScenarioResponseHandler.builder().outcome(1, response).build());
+
+        long start = System.nanoTime();
+        try (Response httpResponse = get()) {
+            assertThat(httpResponse.code(), equalTo(200));
+            assertThat(httpResponse.body().string(), equalTo(message));
+        }
+
+        long expectedMillis = (message.length() / 5) * 20;
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= expectedMillis);
+    }
+
+    private Response get() throws IOException {
+        return client
+                .newCall(new Request.Builder().url("http://localhost:" + breakableService.getPort() + "/hello").build())
+                .execute();
+    }
+}
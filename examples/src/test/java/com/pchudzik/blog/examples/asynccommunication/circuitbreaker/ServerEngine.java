@@ -0,0 +1,51 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Transport used by {@link BreakableService}. Engines are single use - start once, stop once.
+ */
+public interface ServerEngine {
+    void start(InetSocketAddress address, RequestHandler requestHandler) throws IOException;
+
+    void stop();
+
+    /**
+     * com.sun.net.httpserver backed by fixed thread pool.
+     */
+    static ServerEngine httpServer(int workerThreads) {
+        return new HttpServerEngine(workerThreads);
+    }
+
+    /**
+     * Non-blocking engine with one acceptor thread and {@code selectorThreads} event loops. Handlers run on the
+     * event loop so they must not block.
+     */
+    static ServerEngine nio(int selectorThreads) {
+        return new NioServerEngine(selectorThreads);
+    }
+
+    /**
+     * Blocking I/O with a virtual thread per connection. Falls back to a cached thread pool on JVMs without
+     * virtual threads. Also serves HTTP/2 cleartext to clients with prior knowledge.
+     */
+    static ServerEngine virtualThreads() {
+        return new VirtualThreadServerEngine();
+    }
+
+    interface RequestHandler {
+        FixedResponse respond(Request request);
+    }
+
+    interface Request {
+        CharSequence path();
+
+        /**
+         * @return header value or null. Returned value might be reused by engine and is valid only until next call.
+         */
+        CharSequence header(String name);
+    }
+}
@@ -0,0 +1,171 @@
+package com.pchudzik.blog.examples.asynccommunication.circuitbreaker;
+
+import com.pchudzik.blog.examples.asynccommunication.VirtualThreads;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Speaks HTTP/1.1 and HTTP/2 with prior knowledge (h2c), protocol is picked by the first bytes of a connection.
+ */
+class VirtualThreadServerEngine implements ServerEngine {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadServerEngine.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ExecutorService executorService;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    @Override
+    public void start(InetSocketAddress address, RequestHandler requestHandler) throws IOException {
+        executorService = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, 1024);
+        running = true;
+        executorService.execute(() -> acceptConnections(requestHandler));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        connections.forEach(VirtualThreadServerEngine::closeQuietly);
+        executorService.shutdown();
+    }
+
+    private void acceptConnections(RequestHandler requestHandler) {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                executorService.execute(() -> serve(socket, requestHandler));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Failed to accept connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket, RequestHandler requestHandler) {
+        HttpRequestHead request = new HttpRequestHead();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        try (InputStream input = socket.getInputStream(); OutputStream output = socket.getOutputStream()) {
+            while (length < Http2Connection.PREFACE.length && startsLikePreface(buffer, length)) {
+                int read = input.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    return;
+                }
+                length += read;
+            }
+            if (startsLikePreface(buffer, Http2Connection.PREFACE.length)) {
+                new Http2Connection(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), input), output, requestHandler, executorService)
+                        .serve();
+                return;
+            }
+
+            while (running) {
+                int consumed;
+                while ((consumed = request.parse(buffer, 0, length)) < 0) {
+                    int read = length == buffer.length ? -1 : input.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        return;
+                    }
+                    length += read;
+                }
+
+                FixedResponse response = requestHandler.respond(request);
+                boolean keepAlive = request.isKeepAlive();
+                System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+                length -= consumed;
+
+                if (response.isConnectionReset()) {
+                    socket.setSoLinger(true, 0);
+                    return;
+                }
+                sleep(response.delayNanos());
+                write(output, response);
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                log.debug("Connection {} closed", socket, e);
+            }
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return true when first {@code length} bytes match HTTP/2 connection preface
+     */
+    private static boolean startsLikePreface(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] != Http2Connection.PREFACE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void write(OutputStream output, FixedResponse response) throws IOException {
+        byte[] encoded = response.encoded();
+        if (!response.isSlowBody()) {
+            output.write(encoded);
+            output.flush();
+            return;
+        }
+
+        int offset = response.headLength();
+        output.write(encoded, 0, offset);
+        output.flush();
+        while (offset < encoded.length) {
+            sleep(response.chunkDelayNanos());
+            int end = Math.min(offset + response.chunkSize(), encoded.length);
+            output.write(encoded, offset, end - offset);
+            output.flush();
+            offset = end;
+        }
+    }
+
+    /**
+     * Parking a virtual thread releases its carrier thread, so delayed responses don't pin platform threads.
+     */
+    private static void sleep(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Failed to close {}", closeable, e);
+        }
+    }
+}
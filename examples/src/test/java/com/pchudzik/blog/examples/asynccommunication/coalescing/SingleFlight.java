@@ -0,0 +1,84 @@
+package com.pchudzik.blog.examples.asynccommunication.coalescing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent calls with the same key share single in-flight execution. The first caller runs the call, everybody else
+ * waits for its result or failure. Once the call completes the key is released and the next call starts new
+ * execution, so nothing is cached.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Blocking variant, the first caller runs {@code action} on its own thread.
+     */
+    public V execute(K key, Action<V> action) throws Throwable {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V result = action.run();
+            inFlight.remove(key, flight);
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public CompletableFuture<V> executeAsync(K key, Supplier<? extends CompletableFuture<V>> action) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing.thenApply(Function.identity());
+        }
+
+        CompletableFuture<V> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((value, failure) -> {
+            inFlight.remove(key, flight);
+            if (failure != null) {
+                flight.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure);
+            } else {
+                flight.complete(value);
+            }
+        });
+        // every caller gets its own future, so one of them canceling doesn't affect the others
+        return flight.thenApply(Function.identity());
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws Throwable {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    public interface Action<V> {
+        V run() throws Throwable;
+    }
+}
@@ -0,0 +1,186 @@
+package com.pchudzik.blog.examples.asynccommunication.coalescing;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Coalesces concurrent identical {@code GET} calls - same url and headers - of Retrofit client. Coalesced call is
+ * passed to the next call adapter, so any return type it supports works. Adapters registered before this one (like
+ * {@code CircuitBreakerCallAdapter}) decorate upstream call and see it only once.
+ * <p>
+ * Waiters share the converted body of successful {@link Response}. Error body is a stream which can be read only once,
+ * so it is buffered and every waiter gets its own copy. Canceling single waiter only detaches it, upstream call keeps
+ * going for the others.
+ */
+public class SingleFlightCallAdapter extends CallAdapter.Factory {
+    private SingleFlightCallAdapter() {
+    }
+
+    public static SingleFlightCallAdapter create() {
+        return new SingleFlightCallAdapter();
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (!isIdempotent(annotations)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        CallAdapter<Object, ?> nextAdapter = (CallAdapter<Object, ?>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // one per service method, methods with the same url might convert response differently
+        SingleFlight<String, SharedResponse> singleFlight = new SingleFlight<>();
+        return new CallAdapter<Object, Object>() {
+            @Override
+            public Type responseType() {
+                return nextAdapter.responseType();
+            }
+
+            @Override
+            public Object adapt(Call<Object> call) {
+                return nextAdapter.adapt(new SingleFlightCall<>(call, singleFlight));
+            }
+        };
+    }
+
+    private static boolean isIdempotent(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof GET) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class SingleFlightCall<T> implements Call<T> {
+        private final Call<T> delegate;
+        private final SingleFlight<String, SharedResponse> singleFlight;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+
+        private SingleFlightCall(Call<T> delegate, SingleFlight<String, SharedResponse> singleFlight) {
+            this.delegate = delegate;
+            this.singleFlight = singleFlight;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            executed = true;
+            try {
+                return singleFlight.execute(key(), () -> SharedResponse.of(delegate.execute())).copy();
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            executed = true;
+            singleFlight
+                    .executeAsync(key(), () -> {
+                        CompletableFuture<SharedResponse> result = new CompletableFuture<>();
+                        delegate.enqueue(new Callback<T>() {
+                            @Override
+                            public void onResponse(Call<T> call, Response<T> response) {
+                                try {
+                                    result.complete(SharedResponse.of(response));
+                                } catch (IOException e) {
+                                    result.completeExceptionally(e);
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(Call<T> call, Throwable t) {
+                                result.completeExceptionally(t);
+                            }
+                        });
+                        return result;
+                    })
+                    .whenComplete((response, failure) -> {
+                        if (canceled) {
+                            callback.onFailure(this, new IOException("Canceled"));
+                        } else if (failure != null) {
+                            callback.onFailure(this, failure instanceof CompletionException && failure.getCause() != null
+                                    ? failure.getCause()
+                                    : failure);
+                        } else {
+                            callback.onResponse(this, response.copy());
+                        }
+                    });
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public Call<T> clone() {
+            return new SingleFlightCall<>(delegate.clone(), singleFlight);
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+
+        private String key() {
+            Request request = delegate.request();
+            return request.method() + " " + request.url() + "\n" + request.headers();
+        }
+    }
+
+    private static class SharedResponse {
+        private final Response<?> response;
+        private final MediaType errorContentType;
+        private final byte[] errorBody;
+
+        private SharedResponse(Response<?> response, MediaType errorContentType, byte[] errorBody) {
+            this.response = response;
+            this.errorContentType = errorContentType;
+            this.errorBody = errorBody;
+        }
+
+        static SharedResponse of(Response<?> response) throws IOException {
+            ResponseBody errorBody = response.errorBody();
+            if (errorBody == null) {
+                return new SharedResponse(response, null, null);
+            }
+            try (ResponseBody body = errorBody) {
+                return new SharedResponse(response, body.contentType(), body.bytes());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> Response<T> copy() {
+            if (errorBody == null) {
+                return (Response<T>) response;
+            }
+            return Response.error(ResponseBody.create(errorContentType, errorBody), response.raw());
+        }
+    }
+}
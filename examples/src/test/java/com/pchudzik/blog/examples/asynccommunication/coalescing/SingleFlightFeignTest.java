@@ -0,0 +1,136 @@
+package com.pchudzik.blog.examples.asynccommunication.coalescing;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.FeignException;
+import feign.InvocationHandlerFactory;
+import feign.Logger;
+import feign.Request;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.lang.reflect.InvocationHandler;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SingleFlightFeignTest {
+    private static final int CALLERS = 100;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello world");
+    private BreakableService breakableService;
+    private HelloWorld helloWorld;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(
+                counting(new BreakableService.FixedResponseHandler(200, "hello world")),
+                ServerEngine.nio(2));
+        breakableService.startServer();
+
+        InvocationHandlerFactory withCircuitBreaker = (target, dispatch) -> {
+            InvocationHandler handler = new InvocationHandlerFactory.Default().create(target, dispatch);
+            return (proxy, method, args) -> circuitBreaker.executeCheckedSupplier(() -> handler.invoke(proxy, method, args));
+        };
+        helloWorld = Feign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .invocationHandlerFactory(new SingleFlightInvocationHandlerFactory(withCircuitBreaker))
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.BASIC)
+                .decoder(new GsonDecoder())
+                .target(HelloWorld.class, "http://localhost:" + breakableService.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void concurrent_calls_share_single_request() throws Exception {
+        for (Future<Hello> result : callConcurrently()) {
+            assertEquals("hello world", result.get().getMessage());
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    public void failure_is_propagated_to_all_callers_and_counts_once_against_circuit_breaker() throws Exception {
+        breakableService.useResponseHandler(counting(new BreakableService.FixedResponseHandler(500, "error")));
+
+        for (Future<Hello> result : callConcurrently()) {
+            try {
+                result.get();
+                fail("Call should fail");
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause(), instanceOf(FeignException.InternalServerError.class));
+            }
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    private List<Future<Hello>> callConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CyclicBarrier start = new CyclicBarrier(CALLERS);
+        try {
+            List<Future<Hello>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return helloWorld.sayHello();
+                }));
+            }
+            for (Future<Hello> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException ignored) {
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private BreakableService.ResponseHandler counting(BreakableService.ResponseHandler handler) {
+        BreakableService.ResponseHandler counting = () -> {
+            requests.incrementAndGet();
+            return handler.handleResponse();
+        };
+        return counting.withLatency(LatencyProfile.fixed(Duration.ofMillis(500)));
+    }
+
+    interface HelloWorld {
+        @GET
+        @Path("/hello")
+        Hello sayHello();
+    }
+}
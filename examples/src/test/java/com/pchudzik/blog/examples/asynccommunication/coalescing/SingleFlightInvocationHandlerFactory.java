@@ -0,0 +1,75 @@
+package com.pchudzik.blog.examples.asynccommunication.coalescing;
+
+import feign.InvocationHandlerFactory;
+import feign.RequestLine;
+import feign.Target;
+
+import javax.ws.rs.GET;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent identical {@code GET} calls of Feign client - same method with equal arguments. Wraps handler
+ * created by {@code delegate}, so anything the delegate does (circuit breaker, metrics) happens once per upstream call
+ * and not once per caller.
+ * <p>
+ * HystrixFeign doesn't allow custom invocation handler factory, use it with plain {@code Feign.builder()}.
+ */
+public class SingleFlightInvocationHandlerFactory implements InvocationHandlerFactory {
+    private final InvocationHandlerFactory delegate;
+
+    public SingleFlightInvocationHandlerFactory() {
+        this(new InvocationHandlerFactory.Default());
+    }
+
+    public SingleFlightInvocationHandlerFactory(InvocationHandlerFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    // InvocationHandlerFactory declares raw Target, create(Target<?>, ...) wouldn't override it
+    @Override
+    @SuppressWarnings("rawtypes")
+    public InvocationHandler create(Target target, Map<Method, MethodHandler> dispatch) {
+        return new SingleFlightInvocationHandler(target, delegate.create(target, dispatch));
+    }
+
+    private static class SingleFlightInvocationHandler implements InvocationHandler {
+        private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+        private final Target<?> target;
+        private final InvocationHandler delegate;
+
+        private SingleFlightInvocationHandler(Target<?> target, InvocationHandler delegate) {
+            this.target = target;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                Object other = args[0];
+                return other != null
+                        && Proxy.isProxyClass(other.getClass())
+                        && Proxy.getInvocationHandler(other) instanceof SingleFlightInvocationHandler
+                        && target.equals(((SingleFlightInvocationHandler) Proxy.getInvocationHandler(other)).target);
+            }
+            if (!isIdempotent(method)) {
+                return delegate.invoke(proxy, method, args);
+            }
+
+            List<Object> key = args == null
+                    ? Arrays.asList(method)
+                    : Arrays.asList(method, Arrays.asList(args));
+            return singleFlight.execute(key, () -> delegate.invoke(proxy, method, args));
+        }
+
+        private static boolean isIdempotent(Method method) {
+            RequestLine requestLine = method.getAnnotation(RequestLine.class);
+            return method.isAnnotationPresent(GET.class)
+                    || (requestLine != null && requestLine.value().startsWith("GET "));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.pchudzik.blog.examples.asynccommunication.coalescing;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retrofit.CircuitBreakerCallAdapter;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SingleFlightRetrofitTest {
+    private static final int CALLERS = 100;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(
+                counting(new BreakableService.FixedResponseHandler(200, "hello world")),
+                ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void concurrent_calls_share_single_request() throws Exception {
+        HelloWorld helloWorld = helloWorld(new Retrofit.Builder()
+                .addCallAdapterFactory(SingleFlightCallAdapter.create()));
+
+        List<Response<Hello>> responses = callConcurrently(() -> helloWorld.sayHello().execute());
+
+        for (Response<Hello> response : responses) {
+            assertEquals("hello world", response.body().getMessage());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void concurrent_async_calls_share_single_request() throws Exception {
+        HelloWorld helloWorld = helloWorld(new Retrofit.Builder()
+                .addCallAdapterFactory(SingleFlightCallAdapter.create()));
+
+        List<CompletableFuture<Hello>> responses = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            responses.add(helloWorld.sayHelloAsync());
+        }
+
+        for (CompletableFuture<Hello> response : responses) {
+            assertEquals("hello world", response.get(5, TimeUnit.SECONDS).getMessage());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void failure_counts_once_against_circuit_breaker() throws Exception {
+        breakableService.useResponseHandler(counting(new BreakableService.FixedResponseHandler(500, "error")));
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello world");
+        HelloWorld helloWorld = helloWorld(new Retrofit.Builder()
+                .addCallAdapterFactory(CircuitBreakerCallAdapter.of(circuitBreaker))
+                .addCallAdapterFactory(SingleFlightCallAdapter.create()));
+
+        List<Response<Hello>> responses = callConcurrently(() -> helloWorld.sayHello().execute());
+
+        for (Response<Hello> response : responses) {
+            assertEquals(500, response.code());
+            assertEquals(BreakableService.message("error"), response.errorBody().string());
+        }
+        assertEquals(1, requests.get());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    public void sequential_calls_are_not_cached() throws Exception {
+        breakableService.useResponseHandler(counting(new BreakableService.FixedResponseHandler(200, "hello world")));
+        HelloWorld helloWorld = helloWorld(new Retrofit.Builder()
+                .addCallAdapterFactory(SingleFlightCallAdapter.create()));
+
+        helloWorld.sayHello().execute();
+        helloWorld.sayHello().execute();
+
+        assertEquals(2, requests.get());
+    }
+
+    private BreakableService.ResponseHandler counting(BreakableService.ResponseHandler handler) {
+        BreakableService.ResponseHandler counting = () -> {
+            requests.incrementAndGet();
+            return handler.handleResponse();
+        };
+        return counting.withLatency(LatencyProfile.fixed(Duration.ofMillis(500)));
+    }
+
+    private static <T> List<T> callConcurrently(Callable<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CyclicBarrier start = new CyclicBarrier(CALLERS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private HelloWorld helloWorld(Retrofit.Builder retrofit) {
+        return retrofit
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+
+        @GET("hello")
+        CompletableFuture<Hello> sayHelloAsync();
+    }
+}
@@ -0,0 +1,37 @@
+package com.pchudzik.blog.examples.asynccommunication.codegen;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pchudzik.blog.examples.asynccommunication.streaming.BufferPool;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonConverterFactory;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonDecoder;
+import feign.codec.Decoder;
+import retrofit2.Converter;
+
+/**
+ * Gson, Feign decoder and Retrofit converter using generated adapters for {@link GenerateJson} types. Decoder and
+ * converter are the streaming ones, only the adapters they get from Gson differ.
+ */
+public class CodegenGson {
+    public static Gson gson() {
+        return Shared.GSON;
+    }
+
+    public static Gson create() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
+                .create();
+    }
+
+    public static Decoder decoder() {
+        return new StreamingGsonDecoder(gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    public static Converter.Factory converterFactory() {
+        return StreamingGsonConverterFactory.create(gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    private static class Shared {
+        private static final Gson GSON = create();
+    }
+}
@@ -0,0 +1,15 @@
+package com.pchudzik.blog.examples.asynccommunication.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks DTO for which {@code JsonAdapterProcessor} generates Gson type adapter at compile time. Retained at runtime so
+ * {@link GeneratedTypeAdapterFactory} can skip types without generated adapter without class loading attempts.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateJson {
+}
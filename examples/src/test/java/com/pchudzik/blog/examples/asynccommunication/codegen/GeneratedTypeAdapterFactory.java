@@ -0,0 +1,41 @@
+package com.pchudzik.blog.examples.asynccommunication.codegen;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out adapters generated for {@link GenerateJson} types. Gson caches adapter per type, so generated class is
+ * looked up once, after that serialization doesn't touch reflection at all. When adapter wasn't generated (processor
+ * not on the classpath) {@code null} is returned and Gson falls back to reflective adapter.
+ */
+public class GeneratedTypeAdapterFactory implements TypeAdapterFactory {
+    static final String ADAPTER_SUFFIX = "_JsonAdapter";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (!rawType.isAnnotationPresent(GenerateJson.class)) {
+            return null;
+        }
+        try {
+            Class<?> adapter = Class.forName(adapterName(rawType), true, rawType.getClassLoader());
+            return (TypeAdapter<T>) adapter.getConstructor(Gson.class).newInstance(gson);
+        } catch (ClassNotFoundException e) {
+            // logger is looked up only here, initializing logging on the happy path would cost more than reflection saves
+            LoggerFactory.getLogger(GeneratedTypeAdapterFactory.class).warn("No generated adapter for {}, falling back to reflection", rawType.getName());
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create generated adapter for " + rawType.getName(), e);
+        }
+    }
+
+    static String adapterName(Class<?> type) {
+        String packageName = type.getPackage() != null ? type.getPackage().getName() : "";
+        String binaryName = packageName.isEmpty() ? type.getName() : type.getName().substring(packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + binaryName.replace('$', '_') + ADAPTER_SUFFIX;
+    }
+}
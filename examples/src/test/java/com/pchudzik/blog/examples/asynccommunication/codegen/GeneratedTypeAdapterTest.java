@@ -0,0 +1,148 @@
+package com.pchudzik.blog.examples.asynccommunication.codegen;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.RequestLine;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratedTypeAdapterTest {
+    private final Gson gson = CodegenGson.gson();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void generated_adapter_is_used_for_annotated_type() {
+        assertThat(gson.getAdapter(Hello.class).getClass().getName(), equalTo(Hello.class.getName() + "_JsonAdapter"));
+        assertThat(gson.getAdapter(Order.class).getClass().getName(), equalTo(GeneratedTypeAdapterTest.class.getName() + "_Order_JsonAdapter"));
+    }
+
+    @Test
+    public void generated_adapter_writes_same_json_as_reflective_one() {
+        Order order = new Order(7, "hello", true, 2.5, null, Arrays.asList(new Hello("a"), new Hello("b")));
+
+        assertThat(gson.toJson(order), equalTo(new Gson().toJson(order)));
+        assertThat(gson.toJson(new Hello("hello world")), equalTo(new Gson().toJson(new Hello("hello world"))));
+    }
+
+    @Test
+    public void generated_adapter_reads_properties_and_skips_unknown_ones() {
+        Order order = gson.fromJson(
+                "{\"unknown\":{\"nested\":[1,2]},\"order_id\":7,\"name\":null,\"paid\":true,\"amount\":2.5,\"discount\":3,\"items\":[{\"message\":\"a\"}]}",
+                Order.class);
+
+        assertEquals(7, order.id);
+        assertThat(order.name, nullValue());
+        assertTrue(order.paid);
+        assertEquals(2.5, order.amount, 0.0);
+        assertThat(order.discount, equalTo(3));
+        assertThat(order.items.get(0).getMessage(), equalTo("a"));
+    }
+
+    @Test
+    public void generated_adapter_uses_setters_without_all_fields_constructor() {
+        Settings settings = gson.fromJson("{\"retries\":3,\"label\":\"hello\"}", Settings.class);
+
+        assertEquals(3, settings.getRetries());
+        assertThat(settings.label, equalTo("hello"));
+        assertThat(gson.toJson(settings), equalTo("{\"retries\":3,\"label\":\"hello\"}"));
+    }
+
+    @Test
+    public void retrofit_decodes_response_with_generated_adapter() throws Exception {
+        HelloWorld helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(CodegenGson.converterFactory())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+
+        assertThat(helloWorld.sayHello().execute().body().getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void feign_decodes_response_with_generated_adapter() {
+        FeignHelloWorld helloWorld = Feign.builder()
+                .decoder(CodegenGson.decoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        assertThat(helloWorld.sayHello().getMessage(), equalTo("hello world"));
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+    }
+
+    @GenerateJson
+    static class Order {
+        @SerializedName("order_id")
+        private final long id;
+        final String name;
+        final boolean paid;
+        final double amount;
+        final Integer discount;
+        final List<Hello> items;
+        transient int hash;
+
+        Order(long id, String name, boolean paid, double amount, Integer discount, List<Hello> items) {
+            this.id = id;
+            this.name = name;
+            this.paid = paid;
+            this.amount = amount;
+            this.discount = discount;
+            this.items = items;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    @GenerateJson
+    static class Settings {
+        private int retries;
+        String label;
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public void setRetries(int retries) {
+            this.retries = retries;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.pchudzik.blog.examples.asynccommunication.hedging;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+import com.pchudzik.blog.examples.asynccommunication.metrics.SlidingWindow;
+import com.pchudzik.blog.examples.asynccommunication.retries.RetryBudget;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedged requests for idempotent ({@code GET} and {@code HEAD}) calls. When the first attempt doesn't answer within
+ * observed percentile (p95 by default) second one is sent, the first response wins and the other call is canceled.
+ * Other methods are left to the next call adapter.
+ * <p>
+ * Hedging starts after {@code minSamples} responses were recorded. Only the first attempt's latency is recorded, also
+ * when the hedge wins - time the first attempt was waiting when it got canceled is its latency lower bound. Otherwise
+ * the slow tail would never make it to the window and the delay would keep going down. Samples come from a
+ * {@link SlidingWindow}, so the delay follows the service when it slows down. Optional {@link RetryBudget} caps how
+ * many extra requests hedging may add. Attempts are always enqueued, so OkHttp dispatcher limits apply to blocking
+ * {@code execute()} calls as well.
+ */
+public class HedgingCallAdapter {
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private HedgingCallAdapter() {
+    }
+
+    /**
+     * Hedges after p95 of the last minute.
+     */
+    public static CallAdapter.Factory of(TimerWheel timer) {
+        return of(timer, SlidingWindow.timeBased(Duration.ofMinutes(1), 6), 95, 100, null);
+    }
+
+    public static CallAdapter.Factory of(TimerWheel timer, SlidingWindow window, double percentile, long minSamples, RetryBudget budget) {
+        HedgeDelay hedgeDelay = new HedgeDelay(window, percentile, minSamples);
+        return new CallAdapter.Factory() {
+            @Override
+            public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+                if (getRawType(returnType) != Call.class || !isIdempotent(annotations)) {
+                    return null;
+                }
+                Type responseType = getParameterUpperBound(0, (ParameterizedType) returnType);
+                return new CallAdapter<Object, Call<?>>() {
+                    @Override
+                    public Type responseType() {
+                        return responseType;
+                    }
+
+                    @Override
+                    public Call<?> adapt(Call<Object> call) {
+                        return new HedgingCall<>(call, timer, hedgeDelay, budget);
+                    }
+                };
+            }
+        };
+    }
+
+    private static boolean isIdempotent(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof GET || annotation instanceof HEAD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merging and walking window histograms for every call would be too expensive, once there are enough samples
+     * percentile is refreshed periodically instead.
+     */
+    private static class HedgeDelay {
+        private final SlidingWindow window;
+        private final double percentile;
+        private final long minSamples;
+        private volatile long delayNanos = -1;
+        private volatile long refreshAt = System.nanoTime();
+
+        private HedgeDelay(SlidingWindow window, double percentile, long minSamples) {
+            this.window = window;
+            this.percentile = percentile;
+            this.minSamples = minSamples;
+        }
+
+        long delayNanos() {
+            long now = System.nanoTime();
+            if (delayNanos < 0 || now - refreshAt >= 0) {
+                refreshAt = now + REFRESH_INTERVAL_NANOS;
+                LatencyHistogram latencies = window.latencies();
+                delayNanos = latencies.count() >= minSamples
+                        ? latencies.valueAtPercentile(percentile)
+                        : -1;
+            }
+            return delayNanos;
+        }
+
+        void record(long latencyNanos) {
+            window.record(latencyNanos, false, false);
+        }
+    }
+
+    private static class HedgingCall<T> implements Call<T> {
+        private final Call<T> primary;
+        private final TimerWheel timer;
+        private final HedgeDelay hedgeDelay;
+        private final RetryBudget budget;
+        private Call<T> hedge;
+        private long primaryStart;
+        private boolean completed;
+        private volatile boolean canceled;
+        private int inFlight;
+
+        private HedgingCall(Call<T> primary, TimerWheel timer, HedgeDelay hedgeDelay, RetryBudget budget) {
+            this.primary = primary;
+            this.timer = timer;
+            this.hedgeDelay = hedgeDelay;
+            this.budget = budget;
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            if (budget != null) {
+                budget.recordRequest();
+            }
+            synchronized (this) {
+                inFlight++;
+                primaryStart = System.nanoTime();
+            }
+            primary.enqueue(new AttemptCallback(callback, primary));
+
+            long delayNanos = hedgeDelay.delayNanos();
+            if (delayNanos >= 0) {
+                timer.schedule(() -> sendHedge(callback), delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void sendHedge(Callback<T> callback) {
+            Call<T> hedgeCall;
+            synchronized (this) {
+                if (completed || canceled || (budget != null && !budget.tryRetry())) {
+                    return;
+                }
+                hedgeCall = primary.clone();
+                hedge = hedgeCall;
+                inFlight++;
+            }
+            hedgeCall.enqueue(new AttemptCallback(callback, hedgeCall));
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            CompletableFuture<Response<T>> result = new CompletableFuture<>();
+            enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    result.complete(response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return primary.isExecuted();
+        }
+
+        /**
+         * Canceled attempts fail, the first of these failures is reported as the outcome of the whole call.
+         */
+        @Override
+        public void cancel() {
+            Call<T> hedgeCall;
+            synchronized (this) {
+                canceled = true;
+                hedgeCall = hedge;
+            }
+            primary.cancel();
+            if (hedgeCall != null) {
+                hedgeCall.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled || primary.isCanceled();
+        }
+
+        @Override
+        public Call<T> clone() {
+            return new HedgingCall<>(primary.clone(), timer, hedgeDelay, budget);
+        }
+
+        @Override
+        public Request request() {
+            return primary.request();
+        }
+
+        private class AttemptCallback implements Callback<T> {
+            private final Callback<T> callback;
+            private final Call<T> attempt;
+
+            private AttemptCallback(Callback<T> callback, Call<T> attempt) {
+                this.callback = callback;
+                this.attempt = attempt;
+            }
+
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                Call<T> loser;
+                long primaryLatency;
+                synchronized (HedgingCall.this) {
+                    inFlight--;
+                    if (completed) {
+                        return;
+                    }
+                    completed = true;
+                    loser = attempt == primary ? hedge : primary;
+                    primaryLatency = System.nanoTime() - primaryStart;
+                }
+                if (loser != null) {
+                    loser.cancel();
+                }
+                hedgeDelay.record(primaryLatency);
+                callback.onResponse(HedgingCall.this, response);
+            }
+
+            /**
+             * Failed attempt is reported only if nothing else is in flight, otherwise the other attempt still has a
+             * chance to succeed. Once the call is canceled there is nothing to wait for.
+             */
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                synchronized (HedgingCall.this) {
+                    inFlight--;
+                    if (completed || (inFlight > 0 && !canceled)) {
+                        return;
+                    }
+                    completed = true;
+                }
+                callback.onFailure(HedgingCall.this, canceled ? new IOException("Canceled", t) : t);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.pchudzik.blog.examples.asynccommunication.hedging;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.metrics.SlidingWindow;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingCallAdapterTest {
+    private static final BreakableService.ResponseHandler HELLO = new BreakableService.FixedResponseHandler(200, "hello world");
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(500);
+
+    private final TimerWheel timer = new TimerWheel("hedging-timer");
+    private final AtomicInteger requests = new AtomicInteger();
+    private final BreakableService.ResponseHandler countingHandler = () -> {
+        requests.incrementAndGet();
+        return HELLO.handleResponse();
+    };
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(countingHandler, ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        timer.close();
+    }
+
+    @Test
+    public void slow_call_is_hedged_and_first_response_wins() throws Exception {
+        BreakableService.ResponseHandler slowHello = new BreakableService.FixedResponseHandler(200, "slow hello")
+                .withLatency(LatencyProfile.fixed(Duration.ofSeconds(2)));
+        breakableService.useResponseHandler(() -> requests.incrementAndGet() == 1
+                ? slowHello.handleResponse()
+                : HELLO.handleResponse());
+        HelloWorld helloWorld = helloWorld(HedgingCallAdapter.of(timer, fixedLatencies(HEDGE_DELAY), 95, 1, null));
+
+        Response<Hello> response = helloWorld.sayHello().execute();
+
+        assertEquals("hello world", response.body().getMessage());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void fast_call_is_not_hedged() throws Exception {
+        HelloWorld helloWorld = helloWorld(HedgingCallAdapter.of(timer, fixedLatencies(HEDGE_DELAY), 95, 1, null));
+
+        Response<Hello> response = helloWorld.sayHello().execute();
+        TimeUnit.MILLISECONDS.sleep(HEDGE_DELAY.toMillis() * 2);
+
+        assertEquals("hello world", response.body().getMessage());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void only_idempotent_requests_are_hedged() throws Exception {
+        breakableService.useResponseHandler(countingHandler
+                .withLatency(LatencyProfile.fixed(Duration.ofMillis(200))));
+        SlidingWindow window = SlidingWindow.timeBased(Duration.ofMinutes(1), 6);
+        window.record(TimeUnit.MILLISECONDS.toNanos(10), false, false);
+        HelloWorld helloWorld = helloWorld(HedgingCallAdapter.of(timer, window, 95, 1, null));
+
+        helloWorld.postHello().execute();
+        assertEquals(1, requests.getAndSet(0));
+
+        helloWorld.sayHello().execute();
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void canceled_call_is_reported_to_callback() throws Exception {
+        breakableService.useResponseHandler(countingHandler
+                .withLatency(LatencyProfile.fixed(Duration.ofMillis(500))));
+        SlidingWindow window = SlidingWindow.timeBased(Duration.ofMinutes(1), 6);
+        window.record(TimeUnit.MILLISECONDS.toNanos(10), false, false);
+        Call<Hello> call = helloWorld(HedgingCallAdapter.of(timer, window, 95, 1, null)).sayHello();
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        call.enqueue(new Callback<Hello>() {
+            @Override
+            public void onResponse(Call<Hello> call, Response<Hello> response) {
+                failure.completeExceptionally(new AssertionError("Canceled call got response"));
+            }
+
+            @Override
+            public void onFailure(Call<Hello> call, Throwable t) {
+                failure.complete(t);
+            }
+        });
+        waitFor(() -> requests.get() == 2);
+
+        call.cancel();
+
+        assertThat(failure.get(1, TimeUnit.SECONDS), instanceOf(IOException.class));
+        assertTrue(call.isCanceled());
+    }
+
+    /**
+     * Window full of the same latency, so a few recorded calls don't move the hedge delay.
+     */
+    private static SlidingWindow fixedLatencies(Duration latency) {
+        SlidingWindow window = SlidingWindow.timeBased(Duration.ofMinutes(1), 6);
+        for (int i = 0; i < 1_000; i++) {
+            window.record(latency.toNanos(), false, false);
+        }
+        return window;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private HelloWorld helloWorld(CallAdapter.Factory callAdapterFactory) {
+        // hedged calls are enqueued, default dispatcher would queue them above 5 requests per host
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(64);
+        Retrofit.Builder retrofit = new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .dispatcher(dispatcher)
+                        .build())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/");
+        if (callAdapterFactory != null) {
+            retrofit.addCallAdapterFactory(callAdapterFactory);
+        }
+        return retrofit.build().create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+
+        @POST("hello")
+        Call<Hello> postHello();
+    }
+}
@@ -0,0 +1,74 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adjusted from observed round trip times and overload signals. Request over the limit is rejected
+ * right away instead of queueing on a slow server.
+ */
+public class AdaptiveLimiter {
+    private final LimitAlgorithm algorithm;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    public AdaptiveLimiter(LimitAlgorithm algorithm, int initialLimit) {
+        this.algorithm = algorithm;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return permit to report request outcome with or {@code null} when limit is exceeded
+     */
+    public Permit tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return new Permit(System.nanoTime(), current + 1);
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtStart, boolean dropped) {
+        limit = algorithm.update(limit, rttNanos, inFlightAtStart, dropped);
+    }
+
+    public class Permit {
+        private final long start;
+        private final int inFlightAtStart;
+
+        private Permit(long start, int inFlightAtStart) {
+            this.start = start;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void onSuccess() {
+            inFlight.decrementAndGet();
+            update(System.nanoTime() - start, inFlightAtStart, false);
+        }
+
+        /**
+         * Overload signal - timeout, {@code 503} or {@code 429}.
+         */
+        public void onDropped() {
+            inFlight.decrementAndGet();
+            update(System.nanoTime() - start, inFlightAtStart, true);
+        }
+
+        /**
+         * Outcome that says nothing about server load, like {@code 404}.
+         */
+        public void onIgnore() {
+            inFlight.decrementAndGet();
+        }
+    }
+}
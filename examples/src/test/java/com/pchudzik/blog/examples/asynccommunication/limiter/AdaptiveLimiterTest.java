@@ -0,0 +1,226 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Client;
+import feign.Feign;
+import feign.RequestLine;
+import feign.RetryableException;
+import feign.Retryer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retrofit.CircuitBreakerCallAdapter;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdaptiveLimiterTest {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveLimiterTest.class);
+    private static final BreakableService.ResponseHandler HELLO = new BreakableService.FixedResponseHandler(200, "hello world");
+
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(HELLO, ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void aimd_limit_grows_while_used_and_backs_off_on_overload() {
+        LimitAlgorithm aimd = LimitAlgorithm.aimd(1, 100, 0.5, 100, TimeUnit.MILLISECONDS);
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+
+        assertEquals(11, aimd.update(10, fast, 10, false));
+        assertEquals(10, aimd.update(10, fast, 2, false));
+        assertEquals(5, aimd.update(10, fast, 10, true));
+        assertEquals(5, aimd.update(10, TimeUnit.SECONDS.toNanos(1), 10, false));
+    }
+
+    @Test
+    public void vegas_limit_shrinks_when_queue_builds_up() {
+        LimitAlgorithm vegas = LimitAlgorithm.vegas(1, 100);
+        long noLoad = TimeUnit.MILLISECONDS.toNanos(10);
+        vegas.update(50, noLoad, 50, false);
+
+        assertEquals(51, vegas.update(50, noLoad, 50, false));
+        assertEquals(49, vegas.update(50, noLoad * 2, 50, false));
+        assertEquals(25, vegas.update(50, noLoad, 50, true));
+    }
+
+    @Test
+    public void aimd_limit_keeps_latency_low_when_service_degrades() throws Exception {
+        verifyLimiterKeepsLatencyLow(() -> LimitAlgorithm.aimd(1, 200, 0.9, 25, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void vegas_limit_keeps_latency_low_when_service_degrades() throws Exception {
+        verifyLimiterKeepsLatencyLow(() -> LimitAlgorithm.vegas(1, 200));
+    }
+
+    @Test
+    public void rejections_are_recorded_by_circuit_breaker() throws Exception {
+        breakableService.useResponseHandler(HELLO.withLatency(LatencyProfile.fixed(Duration.ofMillis(200))));
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello world");
+        TargetLimiters limiters = new TargetLimiters(() -> new AdaptiveLimiter(LimitAlgorithm.vegas(1, 1), 1));
+        HelloWorld helloWorld = retrofit(limiters, circuitBreaker);
+
+        CompletableFuture<Hello> inFlight = CompletableFuture.supplyAsync(() -> {
+            try {
+                return helloWorld.sayHello().execute().body();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waitForInFlight(limiters);
+
+        try {
+            helloWorld.sayHello().execute();
+            fail("Request should be rejected");
+        } catch (LimitExceededException expected) {
+        }
+
+        assertEquals("hello world", inFlight.get(5, TimeUnit.SECONDS).getMessage());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    public void feign_client_rejects_requests_above_limit() throws Exception {
+        breakableService.useResponseHandler(HELLO.withLatency(LatencyProfile.fixed(Duration.ofMillis(200))));
+        TargetLimiters limiters = new TargetLimiters(() -> new AdaptiveLimiter(LimitAlgorithm.vegas(1, 1), 1));
+        FeignHelloWorld helloWorld = Feign.builder()
+                .client(new ConcurrencyLimitClient(new Client.Default(null, null), limiters))
+                .retryer(Retryer.NEVER_RETRY)
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        CompletableFuture<String> inFlight = CompletableFuture.supplyAsync(helloWorld::sayHello);
+        waitForInFlight(limiters);
+
+        try {
+            helloWorld.sayHello();
+            fail("Request should be rejected");
+        } catch (RetryableException expected) {
+            assertTrue(expected.getCause() instanceof LimitExceededException);
+        }
+        assertTrue(inFlight.get(5, TimeUnit.SECONDS).contains("hello world"));
+    }
+
+    /**
+     * Service has 4 workers, 10ms each. 32 clients calling in a loop overload it and without a limit every request
+     * waits in the queue. With a limit excess requests are rejected right away and accepted ones are served without
+     * queueing.
+     */
+    private void verifyLimiterKeepsLatencyLow(java.util.function.Supplier<LimitAlgorithm> algorithm) throws Exception {
+        breakableService.useResponseHandler(HELLO.withCapacity(4, Duration.ofMillis(10)));
+        LatencyHistogram withoutLimit = measure(retrofit(null, null));
+
+        breakableService.useResponseHandler(HELLO.withCapacity(4, Duration.ofMillis(10)));
+        TargetLimiters limiters = new TargetLimiters(() -> new AdaptiveLimiter(algorithm.get(), 10));
+        LatencyHistogram withLimit = measure(retrofit(limiters, null));
+
+        long medianWithoutLimit = TimeUnit.NANOSECONDS.toMillis(withoutLimit.valueAtPercentile(50));
+        long medianWithLimit = TimeUnit.NANOSECONDS.toMillis(withLimit.valueAtPercentile(50));
+        int limit = limiters.forTarget("http://localhost:" + breakableService.getPort()).limit();
+        log.info("Median without limit {}ms, with limit {}ms, final limit {}", medianWithoutLimit, medianWithLimit, limit);
+        assertTrue(medianWithLimit < medianWithoutLimit / 2);
+        assertTrue(limit < 32);
+    }
+
+    private static LatencyHistogram measure(HelloWorld helloWorld) throws Exception {
+        int threads = 32;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            assertEquals("hello world", helloWorld.sayHello().execute().body().getMessage());
+                            latencies.record(System.nanoTime() - start);
+                        } catch (LimitExceededException e) {
+                            rejected.incrementAndGet();
+                            TimeUnit.MILLISECONDS.sleep(5);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        log.info("Served {} requests, rejected {}", latencies.count(), rejected.get());
+        return latencies;
+    }
+
+    private void waitForInFlight(TargetLimiters limiters) throws InterruptedException {
+        AdaptiveLimiter limiter = limiters.forTarget("http://localhost:" + breakableService.getPort());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.inFlight() == 0) {
+            if (System.nanoTime() > deadline) {
+                fail("Request not started");
+            }
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private HelloWorld retrofit(TargetLimiters limiters, CircuitBreaker circuitBreaker) {
+        OkHttpClient.Builder client = new OkHttpClient.Builder();
+        if (limiters != null) {
+            client.addInterceptor(new ConcurrencyLimitInterceptor(limiters));
+        }
+        Retrofit.Builder retrofit = new Retrofit.Builder()
+                .client(client.build())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/");
+        if (circuitBreaker != null) {
+            retrofit.addCallAdapterFactory(CircuitBreakerCallAdapter.of(circuitBreaker));
+        }
+        return retrofit.build().create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        String sayHello();
+    }
+}
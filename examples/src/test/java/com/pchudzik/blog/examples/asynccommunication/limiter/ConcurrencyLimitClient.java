@@ -0,0 +1,56 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Feign {@link Client} rejecting requests above adaptive concurrency limit of the target with
+ * {@link LimitExceededException}. Feign turns it into {@code RetryableException}, so use it with
+ * {@code Retryer.NEVER_RETRY} or a retry budget - retrying rejected request right away only adds load. Hystrix
+ * counts rejections as command failures.
+ */
+public class ConcurrencyLimitClient implements Client {
+    private final Client delegate;
+    private final TargetLimiters limiters;
+
+    public ConcurrencyLimitClient(Client delegate, TargetLimiters limiters) {
+        this.delegate = delegate;
+        this.limiters = limiters;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        String target = TargetLimiters.targetOf(URI.create(request.url()));
+        AdaptiveLimiter limiter = limiters.forTarget(target);
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            throw new LimitExceededException(target, limiter.limit());
+        }
+
+        Response response;
+        try {
+            response = delegate.execute(request, options);
+        } catch (IOException e) {
+            if (TargetLimiters.isOverload(e)) {
+                permit.onDropped();
+            } else {
+                permit.onIgnore();
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            permit.onIgnore();
+            throw e;
+        }
+
+        if (TargetLimiters.isOverload(response.status())) {
+            permit.onDropped();
+        } else {
+            permit.onSuccess();
+        }
+        return response;
+    }
+}
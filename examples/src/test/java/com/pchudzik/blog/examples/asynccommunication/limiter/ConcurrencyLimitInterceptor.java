@@ -0,0 +1,52 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Rejects requests above adaptive concurrency limit of the target with {@link LimitExceededException}. Add it as
+ * application interceptor, rejected request never reaches the connection pool. Wrapped with Resilience4j
+ * {@code CircuitBreakerCallAdapter} rejections are recorded as failures, so a breaker opens when the target is
+ * overloaded for longer.
+ */
+public class ConcurrencyLimitInterceptor implements Interceptor {
+    private final TargetLimiters limiters;
+
+    public ConcurrencyLimitInterceptor(TargetLimiters limiters) {
+        this.limiters = limiters;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String target = TargetLimiters.targetOf(chain.request().url().uri());
+        AdaptiveLimiter limiter = limiters.forTarget(target);
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            throw new LimitExceededException(target, limiter.limit());
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            if (TargetLimiters.isOverload(e)) {
+                permit.onDropped();
+            } else {
+                permit.onIgnore();
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            permit.onIgnore();
+            throw e;
+        }
+
+        if (TargetLimiters.isOverload(response.code())) {
+            permit.onDropped();
+        } else {
+            permit.onSuccess();
+        }
+        return response;
+    }
+}
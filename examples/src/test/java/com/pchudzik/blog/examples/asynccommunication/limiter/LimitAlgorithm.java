@@ -0,0 +1,79 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes new concurrency limit after every completed request. Called by {@link AdaptiveLimiter} under its lock, so
+ * implementations may keep state without synchronization.
+ */
+public interface LimitAlgorithm {
+    int update(int limit, long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * Additive increase, multiplicative decrease. Limit grows by one while requests succeed and it is actually used,
+     * drops by {@code backoffRatio} on overload signal or response slower than {@code timeout}.
+     */
+    static LimitAlgorithm aimd(int minLimit, int maxLimit, double backoffRatio, long timeout, TimeUnit unit) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        long timeoutNanos = unit.toNanos(timeout);
+        return (limit, rttNanos, inFlight, dropped) -> {
+            if (dropped || rttNanos > timeoutNanos) {
+                return Math.max(minLimit, (int) (limit * backoffRatio));
+            }
+            if (inFlight * 2 >= limit) {
+                return Math.min(maxLimit, limit + 1);
+            }
+            return limit;
+        };
+    }
+
+    static LimitAlgorithm vegas(int minLimit, int maxLimit) {
+        return new VegasLimit(minLimit, maxLimit);
+    }
+
+    /**
+     * Estimates queue building up in the server from RTT growth over the lowest observed (no load) RTT:
+     * {@code queue = limit * (1 - rttNoLoad / rtt)}. Short queue lets limit grow, long one shrinks it before any
+     * request fails. Baseline is re-measured every {@value #PROBE_INTERVAL} samples, in case the service got faster or
+     * the first samples were not representative.
+     */
+    class VegasLimit implements LimitAlgorithm {
+        private static final int PROBE_INTERVAL = 1_000;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private long rttNoLoad;
+        private int samples;
+
+        VegasLimit(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+
+        @Override
+        public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+            if (dropped) {
+                return Math.max(minLimit, limit / 2);
+            }
+            if (++samples % PROBE_INTERVAL == 0 || rttNoLoad == 0 || rttNanos < rttNoLoad) {
+                rttNoLoad = rttNanos;
+                return limit;
+            }
+            if (inFlight * 2 < limit) {
+                return limit;
+            }
+
+            double queue = limit * (1 - (double) rttNoLoad / rttNanos);
+            double threshold = Math.max(1, Math.log10(limit));
+            if (queue < 3 * threshold) {
+                return Math.min(maxLimit, limit + 1);
+            }
+            if (queue > 6 * threshold) {
+                return Math.max(minLimit, limit - 1);
+            }
+            return limit;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import java.io.IOException;
+
+/**
+ * Request rejected by {@link AdaptiveLimiter}. It's an {@link IOException} so HTTP clients report it like any other
+ * failed request and circuit breakers count it.
+ */
+public class LimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public LimitExceededException(String target, int limit) {
+        super("Concurrency limit " + limit + " of " + target + " exceeded");
+    }
+}
@@ -0,0 +1,37 @@
+package com.pchudzik.blog.examples.asynccommunication.limiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Separate {@link AdaptiveLimiter} per target ({@code scheme://host:port}), so slow service doesn't take the limit
+ * of the others down.
+ */
+public class TargetLimiters {
+    private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private final Supplier<AdaptiveLimiter> limiterFactory;
+
+    public TargetLimiters(Supplier<AdaptiveLimiter> limiterFactory) {
+        this.limiterFactory = limiterFactory;
+    }
+
+    public AdaptiveLimiter forTarget(String target) {
+        return limiters.computeIfAbsent(target, name -> limiterFactory.get());
+    }
+
+    static String targetOf(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    static boolean isOverload(int statusCode) {
+        return statusCode == 503 || statusCode == 429;
+    }
+
+    static boolean isOverload(IOException e) {
+        return e instanceof InterruptedIOException;
+    }
+}
@@ -0,0 +1,268 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link LoadTarget} and collects {@link LoadReport}.
+ * <ul>
+ * <li>open model - requests start at constant rate no matter how fast the previous ones complete, as real users
+ * arriving at the service do. Latency is measured from the time request was scheduled to start, so requests delayed
+ * because all {@code maxConcurrency} workers were busy (or the generator itself stalled) are not hidden, which is
+ * the coordinated omission correction. Service time, measured from the actual start, is reported separately.</li>
+ * <li>closed model - {@code users} threads calling the target one request after another with optional think time.
+ * Slower service means fewer requests, latency is measured from the actual start. With {@code expectedInterval} set,
+ * HdrHistogram back-fills requests a user would have sent while waiting for a slow response.</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double requestsPerSecond;
+    private final int users;
+    private final Duration duration;
+    private final int maxConcurrency;
+    private final Duration thinkTime;
+    private final Duration expectedInterval;
+    private final Duration sampleInterval;
+
+    private LoadGenerator(Builder builder) {
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.users = builder.users;
+        this.duration = Objects.requireNonNull(builder.duration, "Duration is required");
+        this.maxConcurrency = builder.maxConcurrency;
+        this.thinkTime = builder.thinkTime;
+        this.expectedInterval = builder.expectedInterval;
+        this.sampleInterval = builder.sampleInterval;
+    }
+
+    public static Builder openModel(double requestsPerSecond) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        return new Builder(requestsPerSecond, 0);
+    }
+
+    public static Builder closedModel(int users) {
+        if (users < 1) {
+            throw new IllegalArgumentException("At least one user is required");
+        }
+        return new Builder(0, users);
+    }
+
+    public LoadReport run(LoadTarget target) throws InterruptedException {
+        // open model latency is measured from the schedule already, correcting it again would count stalls twice
+        Run run = new Run(target, users > 0 ? expectedInterval.toNanos() : 0);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long retriesBefore = target.retries();
+        sampler.scheduleAtFixedRate(run::sampleBreakerState, 0, sampleInterval.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            if (users > 0) {
+                runClosedModel(run);
+            } else {
+                runOpenModel(run);
+            }
+        } finally {
+            sampler.shutdownNow();
+        }
+        run.sampleBreakerState();
+
+        long elapsed = System.nanoTime() - run.start;
+        return new LoadReport(
+                users > 0 ? "closed" : "open",
+                requestsPerSecond,
+                users,
+                duration,
+                Duration.ofNanos(elapsed),
+                run.latency,
+                run.serviceTime,
+                run.timeline(elapsed),
+                run.breakerStates,
+                target.retries() - retriesBefore);
+    }
+
+    private void runOpenModel(Run run) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(maxConcurrency);
+        double intervalNanos = SECOND / requestsPerSecond;
+        long end = run.start + duration.toNanos();
+        try {
+            for (long i = 0; ; i++) {
+                long scheduled = run.start + (long) (i * intervalNanos);
+                if (scheduled - end >= 0) {
+                    break;
+                }
+                long delay;
+                while ((delay = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                workers.execute(() -> run.call(scheduled));
+            }
+        } finally {
+            workers.shutdown();
+        }
+        awaitCompletion(workers);
+    }
+
+    private void runClosedModel(Run run) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(users);
+        long end = run.start + duration.toNanos();
+        long thinkTimeNanos = thinkTime.toNanos();
+        for (int i = 0; i < users; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() - end < 0 && !Thread.currentThread().isInterrupted()) {
+                    run.call(System.nanoTime());
+                    if (thinkTimeNanos > 0) {
+                        LockSupport.parkNanos(thinkTimeNanos);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        awaitCompletion(workers);
+    }
+
+    /**
+     * Requests in flight at the end of the test complete and are recorded, as long as they don't take longer than
+     * the test itself.
+     */
+    private void awaitCompletion(ExecutorService workers) throws InterruptedException {
+        if (!workers.awaitTermination(duration.toMillis() + TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private class Run {
+        private final LoadTarget target;
+        private final long start = System.nanoTime();
+        private final long expectedIntervalNanos;
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final Histogram serviceTime = new ConcurrentHistogram(3);
+        private final AtomicLongArray requestsPerSecond;
+        private final AtomicLongArray failuresPerSecond;
+        private final List<LoadReport.StateChange> breakerStates = new ArrayList<>();
+        private String lastBreakerState;
+
+        private Run(LoadTarget target, long expectedIntervalNanos) {
+            int seconds = (int) (duration.getSeconds() * 2 + 12);
+            this.target = target;
+            this.expectedIntervalNanos = expectedIntervalNanos;
+            this.requestsPerSecond = new AtomicLongArray(seconds);
+            this.failuresPerSecond = new AtomicLongArray(seconds);
+        }
+
+        private void call(long scheduled) {
+            long begin = System.nanoTime();
+            boolean failed = false;
+            try {
+                target.call();
+            } catch (Exception e) {
+                failed = true;
+            }
+            long done = System.nanoTime();
+            latency.recordValueWithExpectedInterval(done - scheduled, expectedIntervalNanos);
+            serviceTime.recordValue(done - begin);
+
+            int second = (int) Math.min((done - start) / SECOND, requestsPerSecond.length() - 1);
+            requestsPerSecond.incrementAndGet(second);
+            if (failed) {
+                failuresPerSecond.incrementAndGet(second);
+            }
+        }
+
+        /**
+         * Called by the sampler thread and once more at the end, after the sampler has stopped.
+         */
+        private synchronized void sampleBreakerState() {
+            String state = target.breakerState();
+            if (state != null && !state.equals(lastBreakerState)) {
+                breakerStates.add(new LoadReport.StateChange(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        state));
+                lastBreakerState = state;
+            }
+        }
+
+        private List<LoadReport.Second> timeline(long elapsed) {
+            int seconds = (int) Math.min((elapsed + SECOND - 1) / SECOND, requestsPerSecond.length());
+            List<LoadReport.Second> timeline = new ArrayList<>(seconds);
+            for (int i = 0; i < seconds; i++) {
+                timeline.add(new LoadReport.Second(i, requestsPerSecond.get(i), failuresPerSecond.get(i)));
+            }
+            return timeline;
+        }
+    }
+
+    public static class Builder {
+        private final double requestsPerSecond;
+        private final int users;
+        private Duration duration;
+        private int maxConcurrency = 200;
+        private Duration thinkTime = Duration.ZERO;
+        private Duration expectedInterval = Duration.ZERO;
+        private Duration sampleInterval = Duration.ofMillis(100);
+
+        private Builder(double requestsPerSecond, int users) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.users = users;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Open model only - number of workers executing requests. Requests scheduled when all of them are busy wait
+         * and the wait is part of their latency.
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Closed model only - pause of every user between requests.
+         */
+        public Builder thinkTime(Duration thinkTime) {
+            this.thinkTime = thinkTime;
+            return this;
+        }
+
+        /**
+         * Closed model only - how often every user is expected to send a request. Response slower than that stands
+         * for the requests user didn't send meanwhile, they are recorded in latency with the waiting time they would
+         * have had. Zero, the default, records latency as measured.
+         */
+        public Builder expectedInterval(Duration expectedInterval) {
+            this.expectedInterval = expectedInterval;
+            return this;
+        }
+
+        /**
+         * How often breaker state is sampled for the timeline.
+         */
+        public Builder sampleInterval(Duration sampleInterval) {
+            this.sampleInterval = sampleInterval;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LoadGeneratorTest {
+    private BreakableService breakableService;
+
+    @After
+    public void tearDown() {
+        if (breakableService != null) {
+            breakableService.stopServer();
+        }
+    }
+
+    @Test
+    public void open_model_includes_queueing_delay_in_latency() throws Exception {
+        AtomicBoolean stalled = new AtomicBoolean();
+        LoadTarget target = () -> {
+            if (stalled.compareAndSet(false, true)) {
+                TimeUnit.MILLISECONDS.sleep(500);
+            }
+        };
+
+        LoadReport report = LoadGenerator.openModel(100)
+                .duration(Duration.ofSeconds(2))
+                .maxConcurrency(1)
+                .build()
+                .run(target);
+
+        assertTrue(report.toString(), report.requests() >= 190);
+        assertTrue(report.toString(), report.latency().p99() >= 200);
+        assertTrue(report.toString(), report.serviceTime().p99() < 100);
+    }
+
+    @Test
+    public void closed_model_throughput_depends_on_service_time() throws Exception {
+        LoadTarget target = () -> TimeUnit.MILLISECONDS.sleep(20);
+
+        LoadReport report = LoadGenerator.closedModel(4)
+                .duration(Duration.ofSeconds(1))
+                .build()
+                .run(target);
+
+        assertTrue(report.toString(), report.throughput() > 100);
+        assertTrue(report.toString(), report.throughput() < 250);
+        assertThat(report.failures(), equalTo(0L));
+    }
+
+    @Test
+    public void closed_model_back_fills_requests_delayed_by_slow_response() throws Exception {
+        AtomicBoolean stalled = new AtomicBoolean();
+        LoadTarget target = () -> TimeUnit.MILLISECONDS.sleep(stalled.compareAndSet(false, true) ? 500 : 10);
+
+        LoadReport report = LoadGenerator.closedModel(1)
+                .duration(Duration.ofSeconds(1))
+                .expectedInterval(Duration.ofMillis(10))
+                .build()
+                .run(target);
+
+        assertTrue(report.toString(), report.latency().p90() >= 100);
+        assertTrue(report.toString(), report.serviceTime().p90() < 100);
+    }
+
+    @Test
+    public void report_contains_breaker_timeline_and_retries() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(500, "boom"), ServerEngine.nio(2));
+        breakableService.startServer();
+        CircuitBreaker circuitBreaker = CircuitBreaker.of("load", CircuitBreakerConfig.custom()
+                .slidingWindowSize(10)
+                .minimumNumberOfCalls(10)
+                .waitDurationInOpenState(Duration.ofMillis(300))
+                .build());
+        Retry retry = Retry.of("load", RetryConfig.custom()
+                .maxAttempts(2)
+                .waitDuration(Duration.ofMillis(10))
+                .build());
+        Path file = Files.createTempFile("load-report", ".json");
+
+        LoadGenerator.openModel(50)
+                .duration(Duration.ofSeconds(1))
+                .sampleInterval(Duration.ofMillis(10))
+                .build()
+                .run(LoadTargets.retrofitResilience4j("http://localhost:" + breakableService.getPort(), circuitBreaker, retry))
+                .writeTo(file);
+
+        JsonObject report;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            report = new JsonParser().parse(reader).getAsJsonObject();
+        } finally {
+            Files.delete(file);
+        }
+        assertThat(report.get("model").getAsString(), equalTo("open"));
+        assertThat(report.get("failures").getAsLong(), equalTo(report.get("requests").getAsLong()));
+        assertTrue(report.get("retries").getAsLong() > 0);
+        assertTrue(report.get("breakerStates").toString(), report.get("breakerStates").toString().contains("\"OPEN\""));
+        assertTrue(report.getAsJsonObject("latency").has("p999"));
+    }
+}
@@ -0,0 +1,207 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a {@link LoadGenerator} run, written as JSON with {@link #writeTo(Path)}. Latencies are in milliseconds,
+ * percentiles come from HdrHistogram with 3 significant digits.
+ */
+public class LoadReport {
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final String model;
+    private final double requestsPerSecond;
+    private final int users;
+    private final long durationMillis;
+    private final long elapsedMillis;
+    private final long requests;
+    private final long failures;
+    private final double throughput;
+    private final Percentiles latency;
+    private final Percentiles serviceTime;
+    private final long retries;
+    private final List<StateChange> breakerStates;
+    private final List<Second> timeline;
+
+    LoadReport(
+            String model,
+            double requestsPerSecond,
+            int users,
+            Duration duration,
+            Duration elapsed,
+            Histogram latency,
+            Histogram serviceTime,
+            List<Second> timeline,
+            List<StateChange> breakerStates,
+            long retries) {
+        long requests = 0;
+        long failures = 0;
+        for (Second second : timeline) {
+            requests += second.requests;
+            failures += second.failures;
+        }
+        this.model = model;
+        this.requestsPerSecond = requestsPerSecond;
+        this.users = users;
+        this.durationMillis = duration.toMillis();
+        this.elapsedMillis = elapsed.toMillis();
+        this.requests = requests;
+        this.failures = failures;
+        this.throughput = elapsed.isZero() ? 0 : requests * 1_000.0 / elapsed.toMillis();
+        this.latency = new Percentiles(latency);
+        this.serviceTime = new Percentiles(serviceTime);
+        this.retries = retries;
+        this.breakerStates = new ArrayList<>(breakerStates);
+        this.timeline = timeline;
+    }
+
+    public void writeTo(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+    }
+
+    public long requests() {
+        return requests;
+    }
+
+    public long failures() {
+        return failures;
+    }
+
+    /**
+     * Completed requests per second.
+     */
+    public double throughput() {
+        return throughput;
+    }
+
+    /**
+     * Open model - from scheduled start to completion, closed model - the same as {@link #serviceTime()} plus requests
+     * back-filled with expected interval.
+     */
+    public Percentiles latency() {
+        return latency;
+    }
+
+    public Percentiles serviceTime() {
+        return serviceTime;
+    }
+
+    public long retries() {
+        return retries;
+    }
+
+    public List<StateChange> breakerStates() {
+        return Collections.unmodifiableList(breakerStates);
+    }
+
+    public List<Second> timeline() {
+        return Collections.unmodifiableList(timeline);
+    }
+
+    @Override
+    public String toString() {
+        return model + " model: requests=" + requests + ", failures=" + failures
+                + ", throughput=" + Math.round(throughput) + "/s, latency " + latency + ", service time " + serviceTime;
+    }
+
+    public static class Percentiles {
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        private Percentiles(Histogram histogram) {
+            this.p50 = millis(histogram.getValueAtPercentile(50));
+            this.p90 = millis(histogram.getValueAtPercentile(90));
+            this.p99 = millis(histogram.getValueAtPercentile(99));
+            this.p999 = millis(histogram.getValueAtPercentile(99.9));
+            this.max = millis(histogram.getMaxValue());
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+
+        public double p50() {
+            return p50;
+        }
+
+        public double p90() {
+            return p90;
+        }
+
+        public double p99() {
+            return p99;
+        }
+
+        public double p999() {
+            return p999;
+        }
+
+        public double max() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50=%.1fms, p99=%.1fms, max=%.1fms", p50, p99, max);
+        }
+    }
+
+    public static class StateChange {
+        private final long atMillis;
+        private final String state;
+
+        StateChange(long atMillis, String state) {
+            this.atMillis = atMillis;
+            this.state = state;
+        }
+
+        public long atMillis() {
+            return atMillis;
+        }
+
+        public String state() {
+            return state;
+        }
+    }
+
+    public static class Second {
+        private final int second;
+        private final long requests;
+        private final long failures;
+
+        Second(int second, long requests, long failures) {
+            this.second = second;
+            this.requests = requests;
+            this.failures = failures;
+        }
+
+        public int second() {
+            return second;
+        }
+
+        public long requests() {
+            return requests;
+        }
+
+        public long failures() {
+            return failures;
+        }
+    }
+}
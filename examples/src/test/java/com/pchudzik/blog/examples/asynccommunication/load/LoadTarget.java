@@ -0,0 +1,23 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+/**
+ * One request through a client stack, exception means failed request. {@link LoadGenerator} samples breaker state
+ * and retry counter while the test runs.
+ */
+public interface LoadTarget {
+    void call() throws Exception;
+
+    /**
+     * @return current state of the breaker or {@code null} when the stack has none
+     */
+    default String breakerState() {
+        return null;
+    }
+
+    /**
+     * @return retries made since the target was created
+     */
+    default long retries() {
+        return 0;
+    }
+}
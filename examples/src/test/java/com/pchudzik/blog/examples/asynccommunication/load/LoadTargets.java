@@ -0,0 +1,170 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+import com.netflix.hystrix.HystrixCircuitBreaker;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.codegen.CodegenGson;
+import com.pchudzik.blog.examples.asynccommunication.metrics.MetricRegistry;
+import com.pchudzik.blog.examples.asynccommunication.metrics.ResilienceMetrics;
+import feign.Feign;
+import feign.Request;
+import feign.RequestLine;
+import feign.Response;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.codec.ErrorDecoder;
+import feign.hystrix.HystrixFeign;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retrofit.CircuitBreakerCallAdapter;
+import io.github.resilience4j.retry.Retry;
+import okhttp3.OkHttpClient;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link LoadTarget}s calling {@code /hello} through the three client stacks of the project. Every target gets its
+ * own client, so targets of one test don't share connection pools.
+ */
+public class LoadTargets {
+    private static final Request.Options OPTIONS = new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true);
+
+    private LoadTargets() {
+    }
+
+    /**
+     * Hystrix command without fallback, so short circuited and rejected calls are counted as failures.
+     */
+    public static LoadTarget hystrixFeign(String baseUrl, HystrixCommandProperties.Setter properties) {
+        HystrixHelloWorld helloWorld = HystrixFeign.builder()
+                .options(OPTIONS)
+                .decoder(CodegenGson.decoder())
+                .setterFactory((target, method) -> HystrixCommand.Setter
+                        .withGroupKey(HystrixCommandGroupKey.Factory.asKey(target.name()))
+                        .andCommandKey(HystrixCommandKey.Factory.asKey(Feign.configKey(target.type(), method)))
+                        .andCommandPropertiesDefaults(properties))
+                .target(HystrixHelloWorld.class, baseUrl);
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey(configKey(HystrixHelloWorld.class));
+
+        return new LoadTarget() {
+            @Override
+            public void call() {
+                helloWorld.sayHello().execute();
+            }
+
+            @Override
+            public String breakerState() {
+                HystrixCircuitBreaker circuitBreaker = HystrixCircuitBreaker.Factory.getInstance(commandKey);
+                return circuitBreaker != null && circuitBreaker.isOpen() ? "OPEN" : "CLOSED";
+            }
+        };
+    }
+
+    /**
+     * Plain Feign with {@code retryer}, server errors are retried like connection failures.
+     */
+    public static LoadTarget feignRetryer(String baseUrl, Retryer retryer) {
+        MetricRegistry registry = new MetricRegistry();
+        FeignHelloWorld helloWorld = Feign.builder()
+                .options(OPTIONS)
+                .decoder(CodegenGson.decoder())
+                .retryer(ResilienceMetrics.retryer(registry, "load", retryer))
+                .errorDecoder(new ErrorDecoder.Default() {
+                    @Override
+                    public Exception decode(String methodKey, Response response) {
+                        if (response.status() >= 500) {
+                            return new RetryableException(
+                                    response.status(), "Received " + response.status() + " from server",
+                                    response.request().httpMethod(), null, response.request());
+                        }
+                        return super.decode(methodKey, response);
+                    }
+                })
+                .target(FeignHelloWorld.class, baseUrl);
+        MetricRegistry.Counter retries = registry.counter("retry_attempts_total", "name", "load");
+
+        return new LoadTarget() {
+            @Override
+            public void call() {
+                helloWorld.sayHello();
+            }
+
+            @Override
+            public long retries() {
+                return retries.count();
+            }
+        };
+    }
+
+    /**
+     * Retrofit with Resilience4j breaker call adapter, every call wrapped in {@code retry}. Unsuccessful response is
+     * a failure.
+     */
+    public static LoadTarget retrofitResilience4j(String baseUrl, CircuitBreaker circuitBreaker, Retry retry) {
+        RetrofitHelloWorld helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .connectTimeout(2, TimeUnit.SECONDS)
+                        .readTimeout(2, TimeUnit.SECONDS)
+                        .build())
+                .addCallAdapterFactory(CircuitBreakerCallAdapter.of(circuitBreaker))
+                .addConverterFactory(CodegenGson.converterFactory())
+                .baseUrl(baseUrl + "/")
+                .build()
+                .create(RetrofitHelloWorld.class);
+        LongAdder retries = new LongAdder();
+        retry.getEventPublisher().onRetry(event -> retries.increment());
+
+        return new LoadTarget() {
+            @Override
+            public void call() throws Exception {
+                retry.executeCallable(() -> {
+                    retrofit2.Response<Hello> response = helloWorld.sayHello().execute();
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Received " + response.code() + " from server");
+                    }
+                    return response.body();
+                });
+            }
+
+            @Override
+            public String breakerState() {
+                return circuitBreaker.getState().name();
+            }
+
+            @Override
+            public long retries() {
+                return retries.sum();
+            }
+        };
+    }
+
+    private static String configKey(Class<?> type) {
+        try {
+            return Feign.configKey(type, type.getMethod("sayHello"));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    interface HystrixHelloWorld {
+        @RequestLine("GET /hello")
+        HystrixCommand<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+    }
+
+    interface RetrofitHelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+}
@@ -0,0 +1,76 @@
+package com.pchudzik.blog.examples.asynccommunication.load;
+
+import com.netflix.hystrix.Hystrix;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Retryer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LoadTargetsTest {
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(500, "boom"), ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+        Hystrix.reset();
+    }
+
+    @Test
+    public void hystrix_feign_target_reports_open_breaker() throws Exception {
+        LoadTarget target = LoadTargets.hystrixFeign(baseUrl(), HystrixCommandProperties.Setter()
+                .withCircuitBreakerRequestVolumeThreshold(10)
+                .withMetricsHealthSnapshotIntervalInMilliseconds(10));
+
+        LoadReport report = run(target);
+
+        assertThat(report.failures(), equalTo(report.requests()));
+        assertThat(stateNames(report), hasItem("OPEN"));
+    }
+
+    @Test
+    public void feign_retryer_target_counts_retries() throws Exception {
+        LoadTarget target = LoadTargets.feignRetryer(baseUrl(), new Retryer.Default(10, 10, 2));
+
+        LoadReport report = run(target);
+
+        assertThat(report.failures(), equalTo(report.requests()));
+        assertThat(report.retries(), equalTo(report.requests()));
+    }
+
+    private static LoadReport run(LoadTarget target) throws InterruptedException {
+        return LoadGenerator.openModel(50)
+                .duration(Duration.ofSeconds(1))
+                .sampleInterval(Duration.ofMillis(10))
+                .build()
+                .run(target);
+    }
+
+    private static List<String> stateNames(LoadReport report) {
+        List<String> states = new ArrayList<>();
+        for (LoadReport.StateChange stateChange : report.breakerStates()) {
+            states.add(stateChange.state());
+        }
+        return states;
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + breakableService.getPort();
+    }
+}
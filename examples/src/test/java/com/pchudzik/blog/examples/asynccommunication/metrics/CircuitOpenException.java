@@ -0,0 +1,9 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+public class CircuitOpenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String name) {
+        super("Circuit breaker " + name + " is open");
+    }
+}
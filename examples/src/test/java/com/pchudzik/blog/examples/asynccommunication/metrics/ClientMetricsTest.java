@@ -0,0 +1,176 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.RequestLine;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.codec.Decoder;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ClientMetricsTest {
+    private final MetricRegistry registry = new MetricRegistry();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void okhttp_call_phases_are_recorded() throws Exception {
+        HelloWorld helloWorld = retrofit();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("hello world", helloWorld.sayHello().execute().body().getMessage());
+        }
+
+        assertEquals(1, timer("hello", "dns").count());
+        assertEquals(1, timer("hello", "connect").count());
+        assertEquals(10, timer("hello", "ttfb").count());
+        assertEquals(10, timer("hello", "decode").count());
+        assertEquals(10, timer("hello", "call").count());
+    }
+
+    @Test
+    public void feign_request_and_decoding_are_recorded() {
+        FeignHelloWorld helloWorld = Feign.builder()
+                .client(new MetricsClient(new feign.Client.Default(null, null), registry, "feign-hello"))
+                .decoder(MetricsClient.decoder(new Decoder.Default(), registry, "feign-hello"))
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(helloWorld.sayHello(), containsString("hello world"));
+        }
+
+        assertEquals(5, timer("feign-hello", "request").count());
+        assertEquals(5, timer("feign-hello", "decode").count());
+    }
+
+    @Test
+    public void breaker_transitions_and_retries_are_counted() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("hello world");
+        Retry retry = Retry.of("hello world", RetryConfig.custom()
+                .maxAttempts(3)
+                .waitDuration(Duration.ofMillis(1))
+                .build());
+        ResilienceMetrics.bind(registry, circuitBreaker);
+        ResilienceMetrics.bind(registry, retry);
+
+        circuitBreaker.transitionToOpenState();
+        circuitBreaker.transitionToHalfOpenState();
+        try {
+            retry.executeRunnable(() -> {
+                throw new IllegalStateException("failure");
+            });
+            fail("Call should fail");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, registry.counter("circuitbreaker_transitions_total", "name", "hello world", "from", "CLOSED", "to", "OPEN").count());
+        assertEquals(1, registry.counter("circuitbreaker_transitions_total", "name", "hello world", "from", "OPEN", "to", "HALF_OPEN").count());
+        assertEquals(2, registry.counter("retry_attempts_total", "name", "hello world").count());
+        assertEquals(1, registry.counter("retry_exhausted_total", "name", "hello world").count());
+    }
+
+    @Test
+    public void feign_retries_are_counted() {
+        breakableService.useResponseHandler(BreakableService.ResponseHandler.FixedResponse::connectionReset);
+        FeignHelloWorld helloWorld = Feign.builder()
+                .retryer(ResilienceMetrics.retryer(registry, "feign-hello", new Retryer.Default(1, 1, 3)))
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        try {
+            helloWorld.sayHello();
+            fail("Call should fail");
+        } catch (RetryableException expected) {
+        }
+
+        assertEquals(2, registry.counter("retry_attempts_total", "name", "feign-hello").count());
+        assertEquals(1, registry.counter("retry_exhausted_total", "name", "feign-hello").count());
+    }
+
+    @Test
+    public void metrics_are_exported_in_prometheus_format() throws Exception {
+        retrofit().sayHello().execute();
+        ResilienceMetrics.bind(registry, CircuitBreaker.ofDefaults("hello world"));
+
+        try (PrometheusExporter exporter = new PrometheusExporter(registry)) {
+            int port = exporter.start(0);
+            Response response = new OkHttpClient().newCall(new Request.Builder()
+                    .url("http://localhost:" + port + "/metrics")
+                    .build())
+                    .execute();
+            String metrics = response.body().string();
+
+            assertThat(metrics, containsString("# TYPE http_client_seconds summary\n"));
+            assertThat(metrics, containsString("http_client_seconds{client=\"hello\",phase=\"ttfb\",quantile=\"0.99\"} "));
+            assertThat(metrics, containsString("http_client_seconds_count{client=\"hello\",phase=\"call\"} 1\n"));
+            assertThat(metrics, containsString("circuitbreaker_transitions_total{name=\"hello world\",from=\"CLOSED\",to=\"OPEN\"} 0\n"));
+        }
+    }
+
+    @Test
+    public void metrics_are_exported_over_jmx() throws Exception {
+        retrofit().sayHello().execute();
+
+        try (JmxExporter exporter = new JmxExporter(registry, "hello")) {
+            Object calls = ManagementFactory.getPlatformMBeanServer().getAttribute(exporter.objectName(), "http_client_seconds.hello.call.count");
+
+            assertEquals(1L, calls);
+        }
+    }
+
+    private MetricRegistry.Timer timer(String client, String phase) {
+        return registry.timer("http_client_seconds", "client", client, "phase", phase);
+    }
+
+    private HelloWorld retrofit() {
+        return new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .eventListenerFactory(MetricsEventListener.factory(registry, "hello"))
+                        .build())
+                .addConverterFactory(new TimingConverterFactory(GsonConverterFactory.create(), registry, "hello"))
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        String sayHello();
+    }
+}
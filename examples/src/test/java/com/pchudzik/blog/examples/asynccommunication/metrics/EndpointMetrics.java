@@ -0,0 +1,71 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Time based {@link SlidingWindow} per endpoint. Window can be shared with {@link SlowCallCircuitBreaker} of the
+ * endpoint, then calls recorded by the breaker show up in latency percentiles as well.
+ */
+public class EndpointMetrics {
+    private final ConcurrentMap<String, SlidingWindow> windows = new ConcurrentHashMap<>();
+    private final Duration window;
+    private final int buckets;
+
+    public EndpointMetrics(Duration window, int buckets) {
+        this.window = window;
+        this.buckets = buckets;
+    }
+
+    public SlidingWindow window(String endpoint) {
+        return windows.computeIfAbsent(endpoint, name -> SlidingWindow.timeBased(window, buckets));
+    }
+
+    public void record(String endpoint, long latencyNanos, boolean failed) {
+        window(endpoint).record(latencyNanos, failed, false);
+    }
+
+    public Latencies latencies(String endpoint) {
+        return new Latencies(window(endpoint).latencies());
+    }
+
+    public Map<String, Latencies> latencies() {
+        Map<String, Latencies> latencies = new TreeMap<>();
+        windows.forEach((endpoint, window) -> latencies.put(endpoint, new Latencies(window.latencies())));
+        return latencies;
+    }
+
+    public static class Latencies {
+        private final long count;
+        private final Duration p50;
+        private final Duration p99;
+
+        private Latencies(LatencyHistogram histogram) {
+            this.count = histogram.count();
+            this.p50 = Duration.ofNanos(histogram.valueAtPercentile(50));
+            this.p99 = Duration.ofNanos(histogram.valueAtPercentile(99));
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public Duration p50() {
+            return p50;
+        }
+
+        public Duration p99() {
+            return p99;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", p50=" + p50.toMillis() + "ms, p99=" + p99.toMillis() + "ms";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MetricRegistry} as a single MBean, attribute name is metric name followed by label values, e.g.
+ * {@code http_client_seconds.hello.ttfb.p99}. Timer attributes are in milliseconds. Attribute list is built when
+ * MBean info is read, so metrics created later show up after reconnecting JMX client.
+ */
+public class JmxExporter implements DynamicMBean, AutoCloseable {
+    private final MetricRegistry registry;
+    private final ObjectName objectName;
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    public JmxExporter(MetricRegistry registry, String name) throws JMException {
+        this.registry = registry;
+        this.objectName = new ObjectName("com.pchudzik.blog.examples.asynccommunication:type=ClientMetrics,name=" + ObjectName.quote(name));
+        mBeanServer.registerMBean(this, objectName);
+    }
+
+    public ObjectName objectName() {
+        return objectName;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = values().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = values();
+        AttributeList result = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                result.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Object> values = values();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(), value.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "HTTP client metrics", attributes, null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("No operations");
+    }
+
+    @Override
+    public void close() throws JMException {
+        mBeanServer.unregisterMBean(objectName);
+    }
+
+    private Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (MetricRegistry.Metric metric : registry.metrics()) {
+            String prefix = attributeName(metric.id());
+            if (metric instanceof MetricRegistry.Timer) {
+                MetricRegistry.Timer timer = (MetricRegistry.Timer) metric;
+                LatencyHistogram latencies = timer.window().latencies();
+                values.put(prefix + ".count", timer.count());
+                values.put(prefix + ".p50", toMillis(latencies.valueAtPercentile(50)));
+                values.put(prefix + ".p99", toMillis(latencies.valueAtPercentile(99)));
+            } else {
+                values.put(prefix, ((MetricRegistry.Counter) metric).count());
+            }
+        }
+        return values;
+    }
+
+    private static String attributeName(MetricRegistry.MetricId id) {
+        StringBuilder name = new StringBuilder(id.name());
+        String[] labels = id.labels();
+        for (int i = 1; i < labels.length; i += 2) {
+            name.append('.').append(labels[i]);
+        }
+        return name.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,167 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters shared by HTTP client instrumentation and exporters. Metric is looked up once when the
+ * instrumented component is created, recording is then a couple of adder increments without map lookups, string
+ * formatting or allocation.
+ */
+public class MetricRegistry {
+    private final ConcurrentMap<MetricId, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public Timer timer(String name, String... labels) {
+        return (Timer) metrics.computeIfAbsent(new MetricId(name, labels), Timer::new);
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public Counter counter(String name, String... labels) {
+        return (Counter) metrics.computeIfAbsent(new MetricId(name, labels), Counter::new);
+    }
+
+    /**
+     * All metrics sorted by id, so metrics with the same name are next to each other.
+     */
+    public List<Metric> metrics() {
+        List<Metric> result = new ArrayList<>(metrics.values());
+        result.sort(Comparator.comparing(Metric::id));
+        return result;
+    }
+
+    public static final class MetricId implements Comparable<MetricId> {
+        private final String name;
+        private final String[] labels;
+        private final String text;
+
+        private MetricId(String name, String[] labels) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("Labels must be name and value pairs");
+            }
+            this.name = name;
+            this.labels = labels.clone();
+            this.text = name + labelsText(labels);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String[] labels() {
+            return labels.clone();
+        }
+
+        private static String labelsText(String[] labels) {
+            if (labels.length == 0) {
+                return "";
+            }
+            StringBuilder text = new StringBuilder("{");
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+            }
+            return text.append('}').toString();
+        }
+
+        @Override
+        public int compareTo(MetricId other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : text.compareTo(other.text);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            MetricId metricId = (MetricId) o;
+            return name.equals(metricId.name) && Arrays.equals(labels, metricId.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + Arrays.hashCode(labels);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    public abstract static class Metric {
+        private final MetricId id;
+
+        private Metric(MetricId id) {
+            this.id = id;
+        }
+
+        public MetricId id() {
+            return id;
+        }
+    }
+
+    /**
+     * Count and total time since start, percentiles from the last minute.
+     */
+    public static final class Timer extends Metric {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final SlidingWindow window = SlidingWindow.timeBased(Duration.ofMinutes(1), 6);
+
+        private Timer(MetricId id) {
+            super(id);
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            window.record(nanos, false, false);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public SlidingWindow window() {
+            return window;
+        }
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder count = new LongAdder();
+
+        private Counter(MetricId id) {
+            super(id);
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public long count() {
+            return count.sum();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.codec.Decoder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Feign counterpart of {@link MetricsEventListener}. Feign clients don't report connection phases, so the whole
+ * {@code execute} - connect and time to first byte, body is read later by the decoder - is recorded as
+ * {@code request} phase. Use {@link #decoder(Decoder, MetricRegistry, String)} for decoding time.
+ */
+public class MetricsClient implements Client {
+    private final Client delegate;
+    private final MetricRegistry.Timer request;
+    private final MetricRegistry.Counter failures;
+
+    public MetricsClient(Client delegate, MetricRegistry registry, String client) {
+        this.delegate = delegate;
+        this.request = registry.timer("http_client_seconds", "client", client, "phase", "request");
+        this.failures = registry.counter("http_client_failures_total", "client", client, "phase", "request");
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.execute(request, options);
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            this.request.record(System.nanoTime() - start);
+        }
+    }
+
+    public static Decoder decoder(Decoder delegate, MetricRegistry registry, String client) {
+        MetricRegistry.Timer decode = registry.timer("http_client_seconds", "client", client, "phase", "decode");
+        return (Response response, Type type) -> {
+            long start = System.nanoTime();
+            try {
+                return delegate.decode(response, type);
+            } finally {
+                decode.record(System.nanoTime() - start);
+            }
+        };
+    }
+}
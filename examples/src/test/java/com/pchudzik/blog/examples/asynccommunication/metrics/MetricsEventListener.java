@@ -0,0 +1,103 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * OkHttp call phases recorded as {@code http_client_seconds} timers labelled with client name and phase: DNS lookup,
+ * connect (including TLS), time to first byte (request start to response headers) and whole call. Phases of calls
+ * served from pooled connections skip DNS and connect. Replaces {@code HttpLoggingInterceptor} in load tests, one
+ * small listener is the only per call allocation.
+ */
+public class MetricsEventListener extends EventListener {
+    private final Timers timers;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long requestStart;
+
+    private MetricsEventListener(Timers timers) {
+        this.timers = timers;
+    }
+
+    public static EventListener.Factory factory(MetricRegistry registry, String client) {
+        Timers timers = new Timers(registry, client);
+        return call -> new MetricsEventListener(timers);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        timers.dns.record(System.nanoTime() - dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        timers.connect.record(System.nanoTime() - connectStart);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+        timers.connectFailures.increment();
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        timers.ttfb.record(System.nanoTime() - requestStart);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        timers.call.record(System.nanoTime() - callStart);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        timers.call.record(System.nanoTime() - callStart);
+        timers.callFailures.increment();
+    }
+
+    private static class Timers {
+        private final MetricRegistry.Timer dns;
+        private final MetricRegistry.Timer connect;
+        private final MetricRegistry.Timer ttfb;
+        private final MetricRegistry.Timer call;
+        private final MetricRegistry.Counter connectFailures;
+        private final MetricRegistry.Counter callFailures;
+
+        private Timers(MetricRegistry registry, String client) {
+            this.dns = registry.timer("http_client_seconds", "client", client, "phase", "dns");
+            this.connect = registry.timer("http_client_seconds", "client", client, "phase", "connect");
+            this.ttfb = registry.timer("http_client_seconds", "client", client, "phase", "ttfb");
+            this.call = registry.timer("http_client_seconds", "client", client, "phase", "call");
+            this.connectFailures = registry.counter("http_client_failures_total", "client", client, "phase", "connect");
+            this.callFailures = registry.counter("http_client_failures_total", "client", client, "phase", "call");
+        }
+    }
+}
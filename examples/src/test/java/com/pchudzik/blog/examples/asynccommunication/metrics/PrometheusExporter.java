@@ -0,0 +1,101 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link MetricRegistry} in Prometheus text format, served on {@code /metrics}. Timers are summaries in seconds with
+ * quantiles from the last minute. Text is built on scrape only.
+ */
+public class PrometheusExporter implements AutoCloseable {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final MetricRegistry registry;
+    private HttpServer server;
+
+    public PrometheusExporter(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        String previousName = null;
+        for (MetricRegistry.Metric metric : registry.metrics()) {
+            MetricRegistry.MetricId id = metric.id();
+            boolean timer = metric instanceof MetricRegistry.Timer;
+            if (!id.name().equals(previousName)) {
+                text.append("# TYPE ").append(id.name()).append(timer ? " summary" : " counter").append('\n');
+                previousName = id.name();
+            }
+            if (timer) {
+                appendTimer(text, (MetricRegistry.Timer) metric);
+            } else {
+                append(text, id.name(), id.labels(), null, ((MetricRegistry.Counter) metric).count());
+            }
+        }
+        return text.toString();
+    }
+
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static void appendTimer(StringBuilder text, MetricRegistry.Timer timer) {
+        MetricRegistry.MetricId id = timer.id();
+        LatencyHistogram latencies = timer.window().latencies();
+        for (double quantile : QUANTILES) {
+            append(text, id.name(), id.labels(), Double.toString(quantile), latencies.valueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+        }
+        append(text, id.name() + "_sum", id.labels(), null, timer.totalNanos() / NANOS_PER_SECOND);
+        append(text, id.name() + "_count", id.labels(), null, timer.count());
+    }
+
+    private static void append(StringBuilder text, String name, String[] labels, String quantile, double value) {
+        text.append(name);
+        if (labels.length > 0 || quantile != null) {
+            text.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                text.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append("\",");
+            }
+            if (quantile != null) {
+                text.append("quantile=\"").append(quantile).append("\",");
+            }
+            text.setLength(text.length() - 1);
+            text.append('}');
+        }
+        text.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
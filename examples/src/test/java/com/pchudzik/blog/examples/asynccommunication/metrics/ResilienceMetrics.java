@@ -0,0 +1,79 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import feign.RetryableException;
+import feign.Retryer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Breaker state transitions ({@code circuitbreaker_transitions_total}) and retry attempts
+ * ({@code retry_attempts_total}) as counters. Counters are created up front, event consumers only increment them.
+ */
+public class ResilienceMetrics {
+    private ResilienceMetrics() {
+    }
+
+    public static void bind(MetricRegistry registry, CircuitBreaker circuitBreaker) {
+        String name = circuitBreaker.getName();
+        Map<CircuitBreaker.StateTransition, MetricRegistry.Counter> transitions = new EnumMap<>(CircuitBreaker.StateTransition.class);
+        for (CircuitBreaker.StateTransition transition : CircuitBreaker.StateTransition.values()) {
+            transitions.put(transition, registry.counter("circuitbreaker_transitions_total",
+                    "name", name,
+                    "from", transition.getFromState().name(),
+                    "to", transition.getToState().name()));
+        }
+        MetricRegistry.Counter notPermitted = registry.counter("circuitbreaker_not_permitted_calls_total", "name", name);
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> transitions.get(event.getStateTransition()).increment())
+                .onCallNotPermitted(event -> notPermitted.increment());
+    }
+
+    public static void bind(MetricRegistry registry, Retry retry) {
+        MetricRegistry.Counter attempts = registry.counter("retry_attempts_total", "name", retry.getName());
+        MetricRegistry.Counter exhausted = registry.counter("retry_exhausted_total", "name", retry.getName());
+        retry.getEventPublisher()
+                .onRetry(event -> attempts.increment())
+                .onError(event -> exhausted.increment());
+    }
+
+    /**
+     * Counts attempts of Feign retryer, every {@code continueOrPropagate} call that doesn't give up is one retry.
+     */
+    public static Retryer retryer(MetricRegistry registry, String name, Retryer delegate) {
+        return new CountingRetryer(
+                delegate,
+                registry.counter("retry_attempts_total", "name", name),
+                registry.counter("retry_exhausted_total", "name", name));
+    }
+
+    private static class CountingRetryer implements Retryer {
+        private final Retryer delegate;
+        private final MetricRegistry.Counter attempts;
+        private final MetricRegistry.Counter exhausted;
+
+        private CountingRetryer(Retryer delegate, MetricRegistry.Counter attempts, MetricRegistry.Counter exhausted) {
+            this.delegate = delegate;
+            this.attempts = attempts;
+            this.exhausted = exhausted;
+        }
+
+        @Override
+        public void continueOrPropagate(RetryableException e) {
+            try {
+                delegate.continueOrPropagate(e);
+            } catch (RuntimeException propagated) {
+                exhausted.increment();
+                throw propagated;
+            }
+            attempts.increment();
+        }
+
+        @Override
+        public Retryer clone() {
+            return new CountingRetryer(delegate.clone(), attempts, exhausted);
+        }
+    }
+}
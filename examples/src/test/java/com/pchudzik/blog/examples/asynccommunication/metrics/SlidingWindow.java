@@ -0,0 +1,191 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Call outcomes from the last time period or the last N calls, kept in a ring of buckets. Recording touches only the
+ * current bucket - striped {@link LongAdder}s and lock-free {@link LatencyHistogram} - so concurrent callers don't
+ * contend on a lock the way they do on Resilience4j sliding window.
+ * <p>
+ * Bucket is reused when the window moves past it. Reset is not atomic with concurrent recording, a handful of calls
+ * recorded at the bucket boundary can be lost. That's fine for breaker decisions and latency percentiles, the same
+ * trade-off Hystrix rolling counters make.
+ */
+public class SlidingWindow {
+    private final Bucket[] buckets;
+    private final LongSupplier recordEpoch;
+    private final LongSupplier readEpoch;
+
+    private SlidingWindow(int buckets, LongSupplier recordEpoch, LongSupplier readEpoch) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("At least one bucket is required");
+        }
+        this.buckets = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new Bucket();
+        }
+        this.recordEpoch = recordEpoch;
+        this.readEpoch = readEpoch;
+        // current bucket is clean already, claiming it right away avoids the reset race on the first calls
+        long epoch = readEpoch.getAsLong();
+        this.buckets[(int) Math.floorMod(epoch, (long) buckets)].epoch.set(epoch);
+    }
+
+    /**
+     * Calls from the last {@code window}, which moves by {@code window / buckets}.
+     */
+    public static SlidingWindow timeBased(Duration window, int buckets) {
+        long bucketNanos = window.toNanos() / buckets;
+        if (bucketNanos <= 0) {
+            throw new IllegalArgumentException("Window is too short for " + buckets + " buckets");
+        }
+        LongSupplier clock = () -> System.nanoTime() / bucketNanos;
+        return new SlidingWindow(buckets, clock, clock);
+    }
+
+    /**
+     * Last {@code calls} calls, window moves by {@code calls / buckets}. Calls are numbered with a single atomic
+     * counter.
+     */
+    public static SlidingWindow countBased(int calls, int buckets) {
+        int callsPerBucket = calls / buckets;
+        if (callsPerBucket <= 0) {
+            throw new IllegalArgumentException("Window is too short for " + buckets + " buckets");
+        }
+        AtomicLong sequence = new AtomicLong();
+        return new SlidingWindow(
+                buckets,
+                () -> sequence.getAndIncrement() / callsPerBucket,
+                () -> (sequence.get() - 1) / callsPerBucket);
+    }
+
+    public void record(long latencyNanos, boolean failed, boolean slow) {
+        Bucket bucket = currentBucket();
+        bucket.calls.increment();
+        bucket.latencyNanos.add(latencyNanos);
+        bucket.histogram.record(latencyNanos);
+        if (failed) {
+            bucket.failures.increment();
+        }
+        if (slow) {
+            bucket.slowCalls.increment();
+        }
+    }
+
+    /**
+     * Call counts of the window, doesn't touch the histograms.
+     */
+    public Snapshot snapshot() {
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        long latencyNanos = 0;
+        long oldestEpoch = readEpoch.getAsLong() - buckets.length;
+        for (Bucket bucket : buckets) {
+            if (bucket.epoch.get() > oldestEpoch) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+                latencyNanos += bucket.latencyNanos.sum();
+            }
+        }
+        return new Snapshot(calls, failures, slowCalls, latencyNanos);
+    }
+
+    /**
+     * Latency histogram of the window, merged from all buckets.
+     */
+    public LatencyHistogram latencies() {
+        LatencyHistogram latencies = new LatencyHistogram();
+        long oldestEpoch = readEpoch.getAsLong() - buckets.length;
+        for (Bucket bucket : buckets) {
+            if (bucket.epoch.get() > oldestEpoch) {
+                latencies.add(bucket.histogram);
+            }
+        }
+        return latencies;
+    }
+
+    public void reset() {
+        for (Bucket bucket : buckets) {
+            bucket.epoch.set(Long.MIN_VALUE);
+            bucket.clear();
+        }
+    }
+
+    private Bucket currentBucket() {
+        long epoch = recordEpoch.getAsLong();
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) buckets.length)];
+        long bucketEpoch = bucket.epoch.get();
+        if (bucketEpoch < epoch && bucket.epoch.compareAndSet(bucketEpoch, epoch)) {
+            bucket.clear();
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private void clear() {
+            calls.reset();
+            failures.reset();
+            slowCalls.reset();
+            latencyNanos.reset();
+            histogram.reset();
+        }
+    }
+
+    public static class Snapshot {
+        private final long calls;
+        private final long failures;
+        private final long slowCalls;
+        private final long latencyNanos;
+
+        private Snapshot(long calls, long failures, long slowCalls, long latencyNanos) {
+            this.calls = calls;
+            this.failures = failures;
+            this.slowCalls = slowCalls;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public long calls() {
+            return calls;
+        }
+
+        public long failures() {
+            return failures;
+        }
+
+        public long slowCalls() {
+            return slowCalls;
+        }
+
+        /**
+         * @return percentage of failed calls, 0 - 100
+         */
+        public float failureRate() {
+            return calls == 0 ? 0 : failures * 100f / calls;
+        }
+
+        /**
+         * @return percentage of slow calls, 0 - 100
+         */
+        public float slowCallRate() {
+            return calls == 0 ? 0 : slowCalls * 100f / calls;
+        }
+
+        public Duration averageLatency() {
+            return Duration.ofNanos(calls == 0 ? 0 : latencyNanos / calls);
+        }
+    }
+}
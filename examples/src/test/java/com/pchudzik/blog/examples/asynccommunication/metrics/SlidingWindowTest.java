@@ -0,0 +1,74 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlidingWindowTest {
+    @Test
+    public void count_based_window_forgets_oldest_calls() {
+        SlidingWindow window = SlidingWindow.countBased(10, 5);
+        for (int i = 0; i < 10; i++) {
+            window.record(1_000, true, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            window.record(1_000, false, false);
+        }
+
+        SlidingWindow.Snapshot snapshot = window.snapshot();
+        assertEquals(10, snapshot.calls());
+        assertEquals(0, snapshot.failures());
+    }
+
+    @Test
+    public void time_based_window_forgets_old_calls() throws Exception {
+        SlidingWindow window = SlidingWindow.timeBased(Duration.ofMillis(100), 10);
+        window.record(1_000, true, true);
+        assertEquals(1, window.snapshot().calls());
+
+        TimeUnit.MILLISECONDS.sleep(150);
+
+        assertEquals(0, window.snapshot().calls());
+        assertEquals(0, window.latencies().count());
+    }
+
+    @Test
+    public void rates_and_percentiles_are_calculated_from_whole_window() {
+        SlidingWindow window = SlidingWindow.countBased(100, 10);
+        for (int i = 1; i <= 100; i++) {
+            window.record(TimeUnit.MILLISECONDS.toNanos(i), i % 4 == 0, i > 90);
+        }
+
+        SlidingWindow.Snapshot snapshot = window.snapshot();
+        assertEquals(25, snapshot.failureRate(), 0.01);
+        assertEquals(10, snapshot.slowCallRate(), 0.01);
+        long p99 = TimeUnit.NANOSECONDS.toMillis(window.latencies().valueAtPercentile(99));
+        assertTrue("p99 was " + p99, p99 >= 98 && p99 <= 102);
+    }
+
+    @Test
+    public void concurrent_calls_are_counted() throws Exception {
+        SlidingWindow window = SlidingWindow.countBased(1_000_000, 10);
+        int threads = 8;
+        int callsPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                for (int call = 0; call < callsPerThread; call++) {
+                    window.record(call, false, false);
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // calls recorded while a bucket is reused can be lost, all of these fit into the first bucket
+        assertEquals(threads * callsPerThread, window.snapshot().calls());
+    }
+}
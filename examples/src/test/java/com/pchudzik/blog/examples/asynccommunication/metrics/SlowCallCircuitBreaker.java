@@ -0,0 +1,242 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker driven by {@link SlidingWindow}, opening on failure rate or on slow call rate. Service that still
+ * answers but takes seconds to do so hurts callers as much as one that fails and fixed timeouts catch it too late.
+ * <p>
+ * Call outcome is recorded with a few adder increments and the window is evaluated only after failed or slow call,
+ * fast successful calls never sum the buckets. In half open state {@code permittedCallsInHalfOpenState} trial calls
+ * decide whether the breaker closes or opens again, they are counted apart from the window.
+ * <p>
+ * Window can be shared with {@link EndpointMetrics}, so it is never reset. Closed breaker evaluates it only after
+ * {@code minimumNumberOfCalls} calls were made since closing. Calls from before the breaker opened count towards the
+ * rates until they leave the window, time based window is a better fit than count based one.
+ */
+public class SlowCallCircuitBreaker {
+    private final String name;
+    private final SlidingWindow window;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final AtomicReference<StateHolder> state = new AtomicReference<>(StateHolder.closed());
+
+    private SlowCallCircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.window = builder.window;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDuration.toNanos();
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.waitDurationInOpenStateNanos = builder.waitDurationInOpenState.toNanos();
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    public <T> T executeCallable(Callable<T> callable) throws Exception {
+        StateHolder admittedIn = acquirePermission();
+        if (admittedIn == null) {
+            throw new CircuitOpenException(name);
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = callable.call();
+        } catch (Exception e) {
+            record(admittedIn, System.nanoTime() - start, true);
+            throw e;
+        }
+        record(admittedIn, System.nanoTime() - start, false);
+        return result;
+    }
+
+    /**
+     * Returns state in which call was admitted or null when it is not permitted. Call admitted while half open is a
+     * trial call, calls started before the breaker went half open are not.
+     */
+    private StateHolder acquirePermission() {
+        while (true) {
+            StateHolder current = state.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (System.nanoTime() - current.openUntil < 0) {
+                        return null;
+                    }
+                    state.compareAndSet(current, StateHolder.halfOpen());
+                    break;
+                case HALF_OPEN:
+                    int permitted;
+                    do {
+                        permitted = current.permitted.get();
+                        if (permitted >= permittedCallsInHalfOpenState) {
+                            return null;
+                        }
+                    } while (!current.permitted.compareAndSet(permitted, permitted + 1));
+                    return current;
+                default:
+                    throw new IllegalStateException("Unknown state " + current.state);
+            }
+        }
+    }
+
+    public State getState() {
+        StateHolder current = state.get();
+        if (current.state == State.OPEN && System.nanoTime() - current.openUntil >= 0) {
+            return State.HALF_OPEN;
+        }
+        return current.state;
+    }
+
+    public SlidingWindow window() {
+        return window;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(StateHolder admittedIn, long durationNanos, boolean failed) {
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        window.record(durationNanos, failed, slow);
+        if (admittedIn.state == State.HALF_OPEN) {
+            recordTrialCall(admittedIn, failed, slow);
+            return;
+        }
+
+        StateHolder current = state.get();
+        if (current.state != State.CLOSED) {
+            return;
+        }
+        int completed = current.completed.incrementAndGet();
+        if ((failed || slow) && completed >= minimumNumberOfCalls && exceedsThresholds(window.snapshot())) {
+            open(current);
+        }
+    }
+
+    private void recordTrialCall(StateHolder halfOpen, boolean failed, boolean slow) {
+        if (failed) {
+            halfOpen.failures.incrementAndGet();
+        }
+        if (slow) {
+            halfOpen.slowCalls.incrementAndGet();
+        }
+        int completed = halfOpen.completed.incrementAndGet();
+        if (completed < permittedCallsInHalfOpenState) {
+            return;
+        }
+        if (halfOpen.failures.get() * 100f / completed >= failureRateThreshold
+                || halfOpen.slowCalls.get() * 100f / completed >= slowCallRateThreshold) {
+            open(halfOpen);
+        } else {
+            state.compareAndSet(halfOpen, StateHolder.closed());
+        }
+    }
+
+    private boolean exceedsThresholds(SlidingWindow.Snapshot snapshot) {
+        return snapshot.calls() >= minimumNumberOfCalls
+                && (snapshot.failureRate() >= failureRateThreshold || snapshot.slowCallRate() >= slowCallRateThreshold);
+    }
+
+    private void open(StateHolder current) {
+        state.compareAndSet(current, StateHolder.open(System.nanoTime() + waitDurationInOpenStateNanos));
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Counters are per state - calls completed since closing or trial calls of half open state.
+     */
+    private static class StateHolder {
+        private final State state;
+        private final long openUntil;
+        private final AtomicInteger permitted = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        private StateHolder(State state, long openUntil) {
+            this.state = state;
+            this.openUntil = openUntil;
+        }
+
+        static StateHolder closed() {
+            return new StateHolder(State.CLOSED, 0);
+        }
+
+        static StateHolder open(long openUntil) {
+            return new StateHolder(State.OPEN, openUntil);
+        }
+
+        static StateHolder halfOpen() {
+            return new StateHolder(State.HALF_OPEN, 0);
+        }
+    }
+
+    public static class Builder {
+        private final String name;
+        private SlidingWindow window = SlidingWindow.countBased(100, 10);
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private Duration slowCallDuration = Duration.ofSeconds(60);
+        private int minimumNumberOfCalls = 100;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(60);
+        private int permittedCallsInHalfOpenState = 10;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder slidingWindow(SlidingWindow window) {
+            this.window = window;
+            return this;
+        }
+
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder slowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        public Builder waitDurationInOpenState(Duration waitDurationInOpenState) {
+            this.waitDurationInOpenState = waitDurationInOpenState;
+            return this;
+        }
+
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public SlowCallCircuitBreaker build() {
+            return new SlowCallCircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlowCallCircuitBreakerTest {
+    private static final String ENDPOINT = "GET /hello";
+    private static final BreakableService.ResponseHandler HELLO = new BreakableService.FixedResponseHandler(200, "hello world");
+    private static final BreakableService.ResponseHandler SLOW_HELLO = HELLO.withLatency(LatencyProfile.fixed(Duration.ofMillis(50)));
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final EndpointMetrics metrics = new EndpointMetrics(Duration.ofSeconds(10), 10);
+    private final SlowCallCircuitBreaker circuitBreaker = SlowCallCircuitBreaker.builder("hello world")
+            .slidingWindow(metrics.window(ENDPOINT))
+            .slowCallDuration(Duration.ofMillis(30))
+            .slowCallRateThreshold(50)
+            .minimumNumberOfCalls(10)
+            .waitDurationInOpenState(Duration.ofMillis(200))
+            .permittedCallsInHalfOpenState(3)
+            .build();
+    private BreakableService breakableService;
+    private HelloWorld helloWorld;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(HELLO, ServerEngine.nio(2));
+        breakableService.startServer();
+        helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void circuit_stays_closed_when_calls_are_fast() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            assertThat(sayHello().getMessage(), equalTo("hello world"));
+        }
+
+        assertEquals(SlowCallCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void circuit_opens_when_calls_are_slow_although_they_succeed() throws Exception {
+        useResponseHandler(SLOW_HELLO);
+        for (int i = 0; i < 10; i++) {
+            assertThat(sayHello().getMessage(), equalTo("hello world"));
+        }
+
+        assertEquals(SlowCallCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        try {
+            sayHello();
+            fail("Call should not be permitted");
+        } catch (CircuitOpenException expected) {
+        }
+        assertEquals(10, requests.get());
+    }
+
+    @Test
+    public void circuit_closes_when_trial_calls_are_fast() throws Exception {
+        useResponseHandler(SLOW_HELLO);
+        for (int i = 0; i < 10; i++) {
+            sayHello();
+        }
+        useResponseHandler(HELLO);
+
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertEquals(SlowCallCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        for (int i = 0; i < 3; i++) {
+            sayHello();
+        }
+
+        assertEquals(SlowCallCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(13, metrics.latencies(ENDPOINT).count());
+    }
+
+    @Test
+    public void call_started_before_half_open_is_not_trial_call() throws Exception {
+        useResponseHandler(HELLO.withLatency(LatencyProfile.fixed(Duration.ofMillis(1500))));
+        CompletableFuture<Hello> startedWhenClosed = CompletableFuture.supplyAsync(() -> {
+            try {
+                return sayHello();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        while (requests.get() == 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        useResponseHandler(SLOW_HELLO);
+        for (int i = 0; i < 10; i++) {
+            sayHello();
+        }
+        useResponseHandler(HELLO);
+        TimeUnit.MILLISECONDS.sleep(250);
+
+        sayHello();
+        startedWhenClosed.get(5, TimeUnit.SECONDS);
+        sayHello();
+        assertEquals(SlowCallCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        sayHello();
+
+        assertEquals(SlowCallCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(14, metrics.latencies(ENDPOINT).count());
+    }
+
+    @Test
+    public void endpoint_latency_percentiles_include_calls_recorded_by_breaker() throws Exception {
+        useResponseHandler(SLOW_HELLO);
+        for (int i = 0; i < 5; i++) {
+            sayHello();
+        }
+
+        EndpointMetrics.Latencies latencies = metrics.latencies(ENDPOINT);
+        assertEquals(5, latencies.count());
+        assertTrue(latencies.toString(), latencies.p50().toMillis() >= 50);
+        assertEquals(latencies.toString(), metrics.latencies().get(ENDPOINT).toString());
+    }
+
+    private Hello sayHello() throws Exception {
+        return circuitBreaker.executeCallable(() -> helloWorld.sayHello().execute().body());
+    }
+
+    private void useResponseHandler(BreakableService.ResponseHandler handler) {
+        breakableService.useResponseHandler(() -> {
+            requests.incrementAndGet();
+            return handler.handleResponse();
+        });
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+}
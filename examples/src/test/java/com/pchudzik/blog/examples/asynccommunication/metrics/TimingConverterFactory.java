@@ -0,0 +1,48 @@
+package com.pchudzik.blog.examples.asynccommunication.metrics;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Records response body decoding time of the delegate converter as {@code decode} phase. Register it instead of the
+ * delegate factory, not next to it.
+ */
+public class TimingConverterFactory extends Converter.Factory {
+    private final Converter.Factory delegate;
+    private final MetricRegistry.Timer decode;
+
+    public TimingConverterFactory(Converter.Factory delegate, MetricRegistry registry, String client) {
+        this.delegate = delegate;
+        this.decode = registry.timer("http_client_seconds", "client", client, "phase", "decode");
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        Converter<ResponseBody, ?> converter = delegate.responseBodyConverter(type, annotations, retrofit);
+        if (converter == null) {
+            return null;
+        }
+        return body -> {
+            long start = System.nanoTime();
+            try {
+                return converter.convert(body);
+            } finally {
+                decode.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, okhttp3.RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        return delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+    }
+
+    @Override
+    public Converter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        return delegate.stringConverter(type, annotations, retrofit);
+    }
+}
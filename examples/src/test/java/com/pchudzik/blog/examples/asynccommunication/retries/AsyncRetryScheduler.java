@@ -0,0 +1,117 @@
+package com.pchudzik.blog.examples.asynccommunication.retries;
+
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries without sleeping. {@code Retryer.Default} and resilience4j {@code executeCallable} park calling thread for
+ * the whole backoff, so retry storm ends up with a thread per waiting request. Here waiting call is a small
+ * {@link RetryingCall} sitting in the {@link TimerWheel} and attempts are handed to the executor only when backoff
+ * expires.
+ */
+public class AsyncRetryScheduler {
+    private final TimerWheel timer;
+    private final Executor executor;
+
+    public AsyncRetryScheduler(TimerWheel timer, Executor executor) {
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    /**
+     * For blocking clients like Feign or Retrofit's {@code execute()} - build them without own retries
+     * ({@code Retryer.NEVER_RETRY}) and let policy decide. Attempt blocks executor thread only while request is in
+     * progress.
+     */
+    public <T> CompletableFuture<T> retry(Callable<T> call, RetryPolicy<T> policy) {
+        return retryAsync(() -> {
+            try {
+                return CompletableFuture.completedFuture(call.call());
+            } catch (Exception e) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }, policy);
+    }
+
+    public <T> CompletableFuture<T> retryAsync(Supplier<? extends CompletionStage<T>> call, RetryPolicy<T> policy) {
+        RetryingCall<T> retryingCall = new RetryingCall<>(call, policy);
+        executor.execute(retryingCall);
+        return retryingCall.result;
+    }
+
+    private final class RetryingCall<T> implements Runnable {
+        private final Supplier<? extends CompletionStage<T>> call;
+        private final RetryPolicy<T> policy;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempt;
+
+        private RetryingCall(Supplier<? extends CompletionStage<T>> call, RetryPolicy<T> policy) {
+            this.call = call;
+            this.policy = policy;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+
+            attempt++;
+            try {
+                call.get().whenComplete(this::onAttemptCompleted);
+            } catch (RuntimeException e) {
+                onAttemptCompleted(null, e);
+            }
+        }
+
+        private void onAttemptCompleted(T value, Throwable failure) {
+            Throwable cause = unwrap(failure);
+            if (attempt < policy.maxAttempts() && !result.isDone() && policy.shouldRetry(value, cause)) {
+                try {
+                    timer.schedule(this::execute, policy.delayMillis(attempt), TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e) {
+                    fail(e, cause);
+                }
+            } else if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(value);
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                fail(e, null);
+            }
+        }
+
+        /**
+         * Stopped timer or executor rejecting the retry would otherwise leave the result incomplete forever. Failure of
+         * the last attempt, if any, is kept as suppressed.
+         */
+        private void fail(RuntimeException rejection, Throwable lastFailure) {
+            if (lastFailure != null) {
+                rejection.addSuppressed(lastFailure);
+            }
+            result.completeExceptionally(rejection);
+        }
+
+        private Throwable unwrap(Throwable failure) {
+            return (failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.pchudzik.blog.examples.asynccommunication.retries;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.TimerWheel;
+import com.pchudzik.blog.examples.asynccommunication.WireMockScenario;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.codec.ErrorDecoder;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.retry.RetryConfig;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import javax.ws.rs.Path;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncRetrySchedulerTest {
+    private static final ResponseDefinitionBuilder OK_RESPONSE = aResponse().withStatus(200).withBody("{\"message\":\"hello world\"}");
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().port(8080), true);
+
+    private final TimerWheel timer = new TimerWheel("retry-timer");
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AsyncRetryScheduler retryScheduler = new AsyncRetryScheduler(timer, executor);
+
+    @Before
+    public void setup() {
+        WireMockScenario
+                .of(get(urlMatching("/hello")), wireMockRule)
+                .willRespondWith(
+                        aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER),
+                        aResponse().withStatus(503).withBody("service unavailable"),
+                        OK_RESPONSE);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        timer.close();
+    }
+
+    @Test
+    public void feign_retries_are_scheduled_instead_of_sleeping() throws Exception {
+        FeignHelloWorld target = Feign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .retryer(Retryer.NEVER_RETRY)
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.BASIC)
+                .decoder(new GsonDecoder())
+                .errorDecoder(new ErrorDecoder.Default() {
+                    @Override
+                    public Exception decode(String methodKey, Response response) {
+                        if (response.status() == 503) {
+                            return new RetryableException(
+                                    response.status(), "Received " + response.status() + " from server",
+                                    response.request().httpMethod(), null, response.request());
+                        }
+
+                        return super.decode(methodKey, response);
+                    }
+                })
+                .target(FeignHelloWorld.class, "http://localhost:8080");
+
+        Hello hello = retryScheduler
+                .retry(target::sayHello, RetryPolicy.<Hello>builder()
+                        .maxAttempts(3)
+                        .backoff(RetryPolicy.fullJitter(Duration.ofMillis(50), Duration.ofMillis(200)))
+                        .retryOnException(ex -> ex instanceof RetryableException)
+                        .build())
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(hello.getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void resilience4j_retry_config_is_scheduled_instead_of_sleeping() throws Exception {
+        RetrofitHelloWorld target = retrofit("http://localhost:8080/");
+        RetryPolicy<retrofit2.Response<Hello>> policy = RetryPolicy.of(RetryConfig.<retrofit2.Response<Hello>>custom()
+                .intervalFunction(RetryPolicy.fullJitter(Duration.ofMillis(50), Duration.ofMillis(200)))
+                .maxAttempts(3)
+                .retryOnResult(response -> response.code() == 503)
+                .build());
+
+        retrofit2.Response<Hello> response = retryScheduler
+                .retry(() -> target.sayHello().execute(), policy)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.body().getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void waiting_retries_do_not_hold_threads() throws Exception {
+        BreakableService breakableService = new BreakableService(new BreakableService.FixedResponseHandler(503, "error"), ServerEngine.nio(2));
+        breakableService.startServer();
+        try {
+            int calls = 200;
+            long backoffMillis = 500;
+            AtomicInteger attempts = new AtomicInteger();
+            RetrofitHelloWorld target = retrofit("http://localhost:" + breakableService.getPort() + "/");
+            RetryPolicy<retrofit2.Response<Hello>> policy = RetryPolicy.<retrofit2.Response<Hello>>builder()
+                    .maxAttempts(3)
+                    .backoff(attempt -> backoffMillis)
+                    .retryOnResult(response -> response.code() == 503)
+                    .build();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<retrofit2.Response<Hello>>> responses = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                responses.add(retryScheduler.retry(() -> {
+                    attempts.incrementAndGet();
+                    return target.sayHello().execute();
+                }, policy));
+            }
+            for (CompletableFuture<retrofit2.Response<Hello>> response : responses) {
+                assertEquals(503, response.get(10, TimeUnit.SECONDS).code());
+            }
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // sleeping retryer would need calls * 2 * backoff on a single thread
+            assertEquals(calls * 3, attempts.get());
+            assertTrue("took " + tookMillis + "ms", tookMillis < 10 * backoffMillis);
+        } finally {
+            breakableService.stopServer();
+        }
+    }
+
+    @Test
+    public void retry_rejected_by_stopped_timer_fails_the_call() throws Exception {
+        RetryPolicy<String> policy = RetryPolicy.<String>builder()
+                .maxAttempts(3)
+                .backoff(attempt -> 1L)
+                .retryOnException(ex -> true)
+                .build();
+        timer.close();
+
+        try {
+            retryScheduler.retry(() -> {
+                throw new IOException("service unavailable");
+            }, policy).get(5, TimeUnit.SECONDS);
+            fail("Call should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            assertThat(e.getCause().getSuppressed()[0], instanceOf(IOException.class));
+        }
+    }
+
+    @Test
+    public void retry_rejected_by_executor_fails_the_call() throws Exception {
+        RetryPolicy<String> policy = RetryPolicy.<String>builder()
+                .maxAttempts(3)
+                .backoff(attempt -> 100L)
+                .retryOnException(ex -> true)
+                .build();
+
+        CompletableFuture<String> result = retryScheduler.retry(() -> {
+            throw new IOException("service unavailable");
+        }, policy);
+        executor.shutdown();
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Call should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+
+    private static RetrofitHelloWorld retrofit(String baseUrl) {
+        return new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .connectTimeout(2, TimeUnit.SECONDS)
+                        .readTimeout(2, TimeUnit.SECONDS)
+                        .build())
+                .baseUrl(baseUrl)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(RetrofitHelloWorld.class);
+    }
+
+    interface FeignHelloWorld {
+        @javax.ws.rs.GET
+        @Path("/hello")
+        Hello sayHello();
+    }
+
+    interface RetrofitHelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+}
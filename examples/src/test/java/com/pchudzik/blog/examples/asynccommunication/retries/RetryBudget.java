@@ -0,0 +1,195 @@
+package com.pchudzik.blog.examples.asynccommunication.retries;
+
+import feign.RetryableException;
+import feign.Retryer;
+import io.github.resilience4j.retry.Retry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Limits retries to a fraction of requests sent to the target, plus small fixed rate so low traffic clients can still
+ * retry. When target fails for everyone, per call retries multiply load by {@code maxAttempts} - with budget load
+ * grows by at most {@code retryRatio}.
+ * <p>
+ * Every request deposits {@code retryRatio} of a token and every retry withdraws whole token. Balance is striped by
+ * thread, so concurrent callers don't fight over single counter, and retry can take tokens from other stripes when its
+ * own is empty.
+ */
+public class RetryBudget {
+    private static final ConcurrentMap<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private static final long TOKEN = 1000;
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+    private static final int PADDING = 8;
+
+    private final long deposit;
+    private final long stripeCapacity;
+    private final AtomicLongArray balance = new AtomicLongArray(STRIPES * PADDING);
+    private final long minRetryIntervalNanos;
+    private final AtomicLong nextMinRetryNanos = new AtomicLong(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+    public RetryBudget(double retryRatio, int minRetriesPerSecond) {
+        this(retryRatio, minRetriesPerSecond, 100);
+    }
+
+    public RetryBudget(double retryRatio, int minRetriesPerSecond, int maxBalance) {
+        if (retryRatio < 0 || minRetriesPerSecond < 0 || maxBalance < 1) {
+            throw new IllegalArgumentException("Retry ratio, min retries and max balance must not be negative");
+        }
+        this.deposit = Math.round(retryRatio * TOKEN);
+        this.stripeCapacity = (maxBalance * TOKEN + STRIPES - 1) / STRIPES;
+        this.minRetryIntervalNanos = minRetriesPerSecond == 0
+                ? 0
+                : TimeUnit.SECONDS.toNanos(1) / minRetriesPerSecond;
+    }
+
+    /**
+     * Budget shared by all clients of the target in this JVM - 10% of requests plus 10 retries per second.
+     */
+    public static RetryBudget forTarget(String target) {
+        return budgets.computeIfAbsent(target, name -> new RetryBudget(0.1, 10));
+    }
+
+    public void recordRequest() {
+        credit(deposit);
+    }
+
+    public boolean tryRetry() {
+        return withdraw() || tryMinRateRetry();
+    }
+
+    /**
+     * Feign clones retryer for every call, which makes clone a natural place to record request.
+     */
+    public Retryer retryer(Retryer delegate) {
+        return new BudgetRetryer(this, delegate);
+    }
+
+    /**
+     * Resilience4j evaluates exception predicate for every failure. Retry denied by the budget fails the call with
+     * the last exception. Requests are recorded by {@link #decorateCallable(Retry, Callable)}.
+     */
+    public Predicate<Throwable> retryOnException(Predicate<Throwable> retryOnException) {
+        return failure -> retryOnException.test(failure) && tryRetry();
+    }
+
+    /**
+     * Result counterpart of {@link #retryOnException(Predicate)}, retry denied by the budget returns the last result.
+     */
+    public <T> Predicate<T> retryOnResult(Predicate<T> retryOnResult) {
+        return result -> retryOnResult.test(result) && tryRetry();
+    }
+
+    /**
+     * Records single request per call. Predicates see retried attempts too, recording there would let retries deposit
+     * into the budget they withdraw from.
+     */
+    public <T> Callable<T> decorateCallable(Retry retry, Callable<T> callable) {
+        Callable<T> retrying = Retry.decorateCallable(retry, callable);
+        return () -> {
+            recordRequest();
+            return retrying.call();
+        };
+    }
+
+    private void credit(long amount) {
+        int start = stripe();
+        for (int i = 0; i < STRIPES; i++) {
+            int index = ((start + i) & (STRIPES - 1)) * PADDING;
+            long current;
+            do {
+                current = balance.get(index);
+                if (current >= stripeCapacity) {
+                    break;
+                }
+            } while (!balance.compareAndSet(index, current, Math.min(stripeCapacity, current + amount)));
+            if (current < stripeCapacity) {
+                return;
+            }
+        }
+    }
+
+    private boolean withdraw() {
+        int start = stripe();
+        for (int i = 0; i < STRIPES; i++) {
+            int index = ((start + i) & (STRIPES - 1)) * PADDING;
+            long current;
+            while ((current = balance.get(index)) >= TOKEN) {
+                if (balance.compareAndSet(index, current, current - TOKEN)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean tryMinRateRetry() {
+        if (minRetryIntervalNanos == 0) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        long burstStart = now - TimeUnit.SECONDS.toNanos(1);
+        while (true) {
+            long next = nextMinRetryNanos.get();
+            long candidate = Math.max(next, burstStart) + minRetryIntervalNanos;
+            if (candidate - now > 0) {
+                return false;
+            }
+            if (nextMinRetryNanos.compareAndSet(next, candidate)) {
+                return true;
+            }
+        }
+    }
+
+    private void refundMinRateRetry() {
+        nextMinRetryNanos.addAndGet(-minRetryIntervalNanos);
+    }
+
+    private static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private static class BudgetRetryer implements Retryer {
+        private final RetryBudget budget;
+        private final Retryer delegate;
+
+        private BudgetRetryer(RetryBudget budget, Retryer delegate) {
+            this.budget = budget;
+            this.delegate = delegate;
+        }
+
+        /**
+         * Delegate sleeps before it returns, so budget is charged up front. When delegate gives up anyway the retry
+         * never happens and the budget is refunded.
+         */
+        @Override
+        public void continueOrPropagate(RetryableException e) {
+            boolean fromBalance = budget.withdraw();
+            if (!fromBalance && !budget.tryMinRateRetry()) {
+                throw e;
+            }
+            try {
+                delegate.continueOrPropagate(e);
+            } catch (RetryableException propagated) {
+                if (fromBalance) {
+                    budget.credit(TOKEN);
+                } else {
+                    budget.refundMinRateRetry();
+                }
+                throw propagated;
+            }
+        }
+
+        @Override
+        public Retryer clone() {
+            budget.recordRequest();
+            return new BudgetRetryer(budget, delegate.clone());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.pchudzik.blog.examples.asynccommunication.retries;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.FeignException;
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.codec.ErrorDecoder;
+import feign.gson.GsonDecoder;
+import feign.jaxrs.JAXRSContract;
+import feign.slf4j.Slf4jLogger;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import javax.ws.rs.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryBudgetTest {
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(RetryBudgetTest.class);
+    private static final int CALLS = 500;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        BreakableService.ResponseHandler unavailable = new BreakableService.FixedResponseHandler(503, "service unavailable");
+        breakableService = new BreakableService(() -> {
+            requests.incrementAndGet();
+            return unavailable.handleResponse();
+        }, ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void budget_allows_configured_ratio_of_retries() {
+        RetryBudget budget = new RetryBudget(0.1, 0, 1000);
+
+        for (int i = 0; i < 1000; i++) {
+            budget.recordRequest();
+        }
+
+        assertEquals(100, countRetries(budget));
+    }
+
+    @Test
+    public void budget_allows_min_retry_rate_without_requests() {
+        RetryBudget budget = new RetryBudget(0.1, 10);
+
+        assertEquals(10, countRetries(budget));
+    }
+
+    @Test
+    public void feign_retries_within_budget() {
+        double unlimited = amplification(feignHelloWorld(new Retryer.Default(1, 1, MAX_ATTEMPTS)));
+        requests.set(0);
+        double budgeted = amplification(feignHelloWorld(new RetryBudget(0.1, 10).retryer(new Retryer.Default(1, 1, MAX_ATTEMPTS))));
+
+        log.info("Feign sends {} requests per call without budget and {} with budget", unlimited, budgeted);
+        assertEquals(MAX_ATTEMPTS, unlimited, 0.0001);
+        assertTrue("amplification " + budgeted, budgeted < 1.3);
+    }
+
+    @Test
+    public void resilience4j_retries_within_budget() {
+        double unlimited = amplification(resilience4jHelloWorld(RetryConfig.<retrofit2.Response<Hello>>custom()
+                .intervalFunction(attempt -> 1L)
+                .maxAttempts(MAX_ATTEMPTS)
+                .retryOnResult(response -> response.code() == 503)
+                .build(), null));
+        requests.set(0);
+        RetryBudget budget = new RetryBudget(0.1, 10);
+        double budgeted = amplification(resilience4jHelloWorld(RetryConfig.<retrofit2.Response<Hello>>custom()
+                .intervalFunction(attempt -> 1L)
+                .maxAttempts(MAX_ATTEMPTS)
+                .retryOnException(budget.retryOnException(ex -> true))
+                .retryOnResult(budget.retryOnResult(response -> response.code() == 503))
+                .build(), budget));
+
+        log.info("Resilience4j sends {} requests per call without budget and {} with budget", unlimited, budgeted);
+        assertEquals(MAX_ATTEMPTS, unlimited, 0.0001);
+        assertTrue("amplification " + budgeted, budgeted < 1.3);
+    }
+
+    @Test
+    public void retry_given_up_by_feign_retryer_is_refunded() {
+        RetryBudget budget = new RetryBudget(0.1, 0, 1000);
+        for (int i = 0; i < 100; i++) {
+            budget.recordRequest();
+        }
+        Retryer retryer = budget.retryer(new Retryer.Default(1, 1, 2)).clone();
+        RetryableException unavailable = new RetryableException(
+                503, "service unavailable", Request.HttpMethod.GET, null,
+                Request.create(Request.HttpMethod.GET, "/hello", Collections.emptyMap(), null, StandardCharsets.UTF_8, null));
+
+        retryer.continueOrPropagate(unavailable);
+        try {
+            retryer.continueOrPropagate(unavailable);
+            fail("Retryer should give up after second attempt");
+        } catch (RetryableException expected) {
+        }
+
+        assertEquals(9, countRetries(budget));
+    }
+
+    private double amplification(Runnable call) {
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        return requests.get() / (double) CALLS;
+    }
+
+    private static int countRetries(RetryBudget budget) {
+        int retries = 0;
+        while (budget.tryRetry()) {
+            retries++;
+        }
+        assertFalse(budget.tryRetry());
+        return retries;
+    }
+
+    private Runnable feignHelloWorld(Retryer retryer) {
+        FeignHelloWorld target = Feign.builder()
+                .options(new Request.Options(2, TimeUnit.SECONDS, 2, TimeUnit.SECONDS, true))
+                .retryer(retryer)
+                .contract(new JAXRSContract())
+                .logger(new Slf4jLogger())
+                .logLevel(Logger.Level.NONE)
+                .decoder(new GsonDecoder())
+                .errorDecoder(new ErrorDecoder.Default() {
+                    @Override
+                    public Exception decode(String methodKey, Response response) {
+                        if (response.status() == 503) {
+                            return new RetryableException(
+                                    response.status(), "Received " + response.status() + " from server",
+                                    response.request().httpMethod(), null, response.request());
+                        }
+
+                        return super.decode(methodKey, response);
+                    }
+                })
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+        return () -> {
+            try {
+                target.sayHello();
+            } catch (FeignException expected) {
+            }
+        };
+    }
+
+    private Runnable resilience4jHelloWorld(RetryConfig config, RetryBudget budget) {
+        RetrofitHelloWorld target = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(RetrofitHelloWorld.class);
+        Retry retry = Retry.of("hello world", config);
+        Callable<retrofit2.Response<Hello>> sayHello = budget != null
+                ? budget.decorateCallable(retry, () -> target.sayHello().execute())
+                : Retry.decorateCallable(retry, () -> target.sayHello().execute());
+        return () -> {
+            try {
+                sayHello.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    interface FeignHelloWorld {
+        @javax.ws.rs.GET
+        @Path("/hello")
+        Hello sayHello();
+    }
+
+    interface RetrofitHelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+}
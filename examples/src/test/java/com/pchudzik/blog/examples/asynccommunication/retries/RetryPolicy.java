@@ -0,0 +1,111 @@
+package com.pchudzik.blog.examples.asynccommunication.retries;
+
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.RetryConfig;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * What and how often {@link AsyncRetryScheduler} retries. Immutable, so single instance can be shared by all calls.
+ */
+public final class RetryPolicy<T> {
+    private final int maxAttempts;
+    private final Function<Integer, Long> backoff;
+    private final Predicate<Throwable> retryOnException;
+    private final Predicate<T> retryOnResult;
+
+    private RetryPolicy(int maxAttempts, Function<Integer, Long> backoff, Predicate<Throwable> retryOnException, Predicate<T> retryOnResult) {
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.retryOnException = retryOnException;
+        this.retryOnResult = retryOnResult;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Reuses resilience4j configuration - max attempts, interval function and both retry predicates.
+     */
+    public static <T> RetryPolicy<T> of(RetryConfig config) {
+        Predicate<T> resultPredicate = config.getResultPredicate();
+        return new RetryPolicy<>(
+                config.getMaxAttempts(),
+                config.getIntervalFunction(),
+                config.getExceptionPredicate(),
+                resultPredicate != null ? resultPredicate : result -> false);
+    }
+
+    /**
+     * Exponential backoff with full jitter - delay is random between 0 and {@code min(cap, base * 2^(attempt - 1))}.
+     * Clients failing at the same time spread their retries over the whole window instead of coming back together.
+     */
+    public static IntervalFunction fullJitter(Duration base, Duration cap) {
+        long baseMillis = base.toMillis();
+        long capMillis = cap.toMillis();
+        if (baseMillis <= 0 || capMillis < baseMillis) {
+            throw new IllegalArgumentException("Base must be positive and not greater than cap");
+        }
+        int maxShift = Long.numberOfLeadingZeros(baseMillis) - 1;
+        return attempt -> {
+            int shift = Math.max(attempt - 1, 0);
+            long ceiling = shift >= maxShift ? capMillis : Math.min(capMillis, baseMillis << shift);
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        };
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    long delayMillis(int attempt) {
+        return backoff.apply(attempt);
+    }
+
+    boolean shouldRetry(T result, Throwable failure) {
+        return failure != null
+                ? retryOnException.test(failure)
+                : retryOnResult.test(result);
+    }
+
+    public static class Builder<T> {
+        private int maxAttempts = 3;
+        private Function<Integer, Long> backoff = fullJitter(Duration.ofMillis(50), Duration.ofMillis(200));
+        private Predicate<Throwable> retryOnException = failure -> true;
+        private Predicate<T> retryOnResult = result -> false;
+
+        private Builder() {
+        }
+
+        public Builder<T> maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("At least one attempt is required");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder<T> backoff(IntervalFunction backoff) {
+            this.backoff = backoff;
+            return this;
+        }
+
+        public Builder<T> retryOnException(Predicate<Throwable> retryOnException) {
+            this.retryOnException = retryOnException;
+            return this;
+        }
+
+        public Builder<T> retryOnResult(Predicate<T> retryOnResult) {
+            this.retryOnResult = retryOnResult;
+            return this;
+        }
+
+        public RetryPolicy<T> build() {
+            return new RetryPolicy<>(maxAttempts, backoff, retryOnException, retryOnResult);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.pchudzik.blog.examples.asynccommunication.shared;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Array of longs in a memory mapped file with volatile reads and compare and swap, visible to every process mapping
+ * the same file. New file is filled with zeros, longs are stored in native byte order.
+ * <p>
+ * {@code MappedByteBuffer} has no atomic operations of its own. On Java 9+ they go through a {@code ByteBuffer} view
+ * {@code VarHandle} - mapping is page aligned and longs are 8 bytes apart, so every CAS is on an aligned word and
+ * atomic across processes too. The project targets Java 8, so the handle is looked up reflectively and called through
+ * {@link MethodHandle#invokeExact}. Java 8 falls back to a lock per long, held in this process and on the long's region
+ * of the file, which is much slower but still atomic across processes.
+ */
+abstract class MappedLongs {
+    private static final MethodHandle GET_VOLATILE;
+    private static final MethodHandle SET_VOLATILE;
+    private static final MethodHandle COMPARE_AND_SET;
+
+    static {
+        MethodHandle getVolatile = null;
+        MethodHandle setVolatile = null;
+        MethodHandle compareAndSet = null;
+        try {
+            Class<?> varHandleClass = Class.forName("java.lang.invoke.VarHandle");
+            Class<?> accessModeClass = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+            Object varHandle = MethodHandles.class
+                    .getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class)
+                    .invoke(null, long[].class, ByteOrder.nativeOrder());
+            Method toMethodHandle = varHandleClass.getMethod("toMethodHandle", accessModeClass);
+            getVolatile = (MethodHandle) toMethodHandle.invoke(varHandle, accessMode(accessModeClass, "GET_VOLATILE"));
+            setVolatile = (MethodHandle) toMethodHandle.invoke(varHandle, accessMode(accessModeClass, "SET_VOLATILE"));
+            compareAndSet = (MethodHandle) toMethodHandle.invoke(varHandle, accessMode(accessModeClass, "COMPARE_AND_SET"));
+        } catch (ReflectiveOperationException e) {
+            getVolatile = null;
+            setVolatile = null;
+            compareAndSet = null;
+        }
+        GET_VOLATILE = getVolatile;
+        SET_VOLATILE = setVolatile;
+        COMPARE_AND_SET = compareAndSet;
+    }
+
+    private final int length;
+
+    private MappedLongs(int length) {
+        this.length = length;
+    }
+
+    static MappedLongs map(Path file, int length) throws IOException {
+        return GET_VOLATILE != null
+                ? new VarHandleLongs(file, length)
+                : new LockingLongs(file, length);
+    }
+
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    abstract boolean compareAndSet(int index, long expected, long value);
+
+    int length() {
+        return length;
+    }
+
+    int offsetOf(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+        }
+        return index * Long.BYTES;
+    }
+
+    private static Object accessMode(Class<?> accessModeClass, String name) {
+        for (Object accessMode : accessModeClass.getEnumConstants()) {
+            if (((Enum<?>) accessMode).name().equals(name)) {
+                return accessMode;
+            }
+        }
+        throw new IllegalStateException("No access mode " + name);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static class VarHandleLongs extends MappedLongs {
+        // keeps the mapping alive, it is unmapped when the buffer is collected
+        private final ByteBuffer buffer;
+
+        private VarHandleLongs(Path file, int length) throws IOException {
+            super(length);
+            try (FileChannel channel = open(file)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) length * Long.BYTES);
+            }
+        }
+
+        @Override
+        long get(int index) {
+            try {
+                return (long) GET_VOLATILE.invokeExact(buffer, offsetOf(index));
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        void set(int index, long value) {
+            try {
+                SET_VOLATILE.invokeExact(buffer, offsetOf(index), value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long value) {
+            try {
+                return (boolean) COMPARE_AND_SET.invokeExact(buffer, offsetOf(index), expected, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * File locks are held by the whole JVM and overlapping lock from another thread fails instead of waiting, so
+     * threads of this process queue on a {@link ReentrantLock} of the long first. Channel stays open as long as the
+     * mapping, closing it would release the locks. Interrupt while waiting for a file lock closes the channel, like
+     * any interruptible channel operation, and the following calls fail.
+     */
+    private static class LockingLongs extends MappedLongs {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final ReentrantLock[] locks;
+
+        private LockingLongs(Path file, int length) throws IOException {
+            super(length);
+            this.channel = open(file);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) length * Long.BYTES)
+                    .order(ByteOrder.nativeOrder());
+            this.locks = new ReentrantLock[length];
+            for (int i = 0; i < length; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+
+        @Override
+        long get(int index) {
+            return locked(index, offset -> buffer.getLong(offset));
+        }
+
+        @Override
+        void set(int index, long value) {
+            locked(index, offset -> {
+                buffer.putLong(offset, value);
+                return value;
+            });
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long value) {
+            return locked(index, offset -> {
+                if (buffer.getLong(offset) != expected) {
+                    return 0;
+                }
+                buffer.putLong(offset, value);
+                return 1;
+            }) == 1;
+        }
+
+        private long locked(int index, Operation operation) {
+            int offset = offsetOf(index);
+            ReentrantLock lock = locks[index];
+            lock.lock();
+            try {
+                FileLock fileLock = channel.lock(offset, Long.BYTES, false);
+                try {
+                    return operation.apply(offset);
+                } finally {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private interface Operation {
+            long apply(int offset);
+        }
+    }
+}
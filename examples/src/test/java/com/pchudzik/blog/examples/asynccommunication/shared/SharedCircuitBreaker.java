@@ -0,0 +1,317 @@
+package com.pchudzik.blog.examples.asynccommunication.shared;
+
+import com.pchudzik.blog.examples.asynccommunication.metrics.CircuitOpenException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Circuit breaker keeping its state and time based sliding window in a memory mapped file, so every process on the
+ * host using the same file sees the same failures and opens, half opens and closes together. Processes should use the
+ * same configuration, only window layout is checked when the file is opened.
+ * <p>
+ * Every piece of state that has to change atomically is packed into a single long updated with compare and swap:
+ * <ul>
+ * <li>state word - state in the top two bits, then open timestamp or start second, permitted, successful and failed
+ * trial calls of half open state</li>
+ * <li>bucket - bucket number and 20 bit counters of calls and failures, so a stale bucket is reset by the same CAS that
+ * records a call in it</li>
+ * </ul>
+ * Time is wall clock milliseconds, {@code System.nanoTime()} is not comparable between processes.
+ */
+public class SharedCircuitBreaker {
+    private static final int LAYOUT = 0;
+    private static final int STATE = 1;
+    private static final int FIRST_BUCKET = 8;
+
+    private static final long CLOSED = 0;
+    private static final long OPEN = 1L << 62;
+    private static final long HALF_OPEN = 2L << 62;
+    private static final long STATE_MASK = 3L << 62;
+    private static final long PAYLOAD_MASK = ~STATE_MASK;
+
+    private static final int TRIAL_BITS = 10;
+    private static final long TRIAL_MASK = (1L << TRIAL_BITS) - 1;
+    private static final long HALF_OPEN_SECONDS_MASK = (1L << 30) - 1;
+    private static final int COUNTER_BITS = 20;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << 24) - 1;
+
+    private final String name;
+    private final MappedLongs memory;
+    private final int buckets;
+    private final long bucketMillis;
+    private final float failureRateThreshold;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateMillis;
+    private final int permittedCallsInHalfOpenState;
+
+    private SharedCircuitBreaker(Builder builder) throws IOException {
+        this.name = builder.name;
+        this.buckets = builder.buckets;
+        this.bucketMillis = Math.max(1, builder.slidingWindow.toMillis() / builder.buckets);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.waitDurationInOpenStateMillis = builder.waitDurationInOpenState.toMillis();
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        if (permittedCallsInHalfOpenState < 1 || permittedCallsInHalfOpenState > TRIAL_MASK) {
+            throw new IllegalArgumentException("Permitted calls in half open state must be between 1 and " + TRIAL_MASK);
+        }
+        this.memory = MappedLongs.map(builder.file, FIRST_BUCKET + buckets);
+
+        long layout = (long) buckets << 32 | bucketMillis;
+        if (!memory.compareAndSet(LAYOUT, 0, layout) && memory.get(LAYOUT) != layout) {
+            throw new IllegalStateException("File " + builder.file + " holds breaker state with different sliding window");
+        }
+    }
+
+    public static Builder builder(String name, Path file) {
+        return new Builder(name, file);
+    }
+
+    public <T> T executeCallable(Callable<T> callable) throws Exception {
+        boolean trialCall = acquirePermission();
+        T result;
+        try {
+            result = callable.call();
+        } catch (Exception e) {
+            record(trialCall, true);
+            throw e;
+        }
+        record(trialCall, false);
+        return result;
+    }
+
+    /**
+     * @return {@code true} when the call is one of the trial calls of half open state
+     * @throws CircuitOpenException when the call is not permitted
+     */
+    private boolean acquirePermission() {
+        while (true) {
+            long current = memory.get(STATE);
+            long state = current & STATE_MASK;
+            long now = System.currentTimeMillis();
+            if (state == CLOSED) {
+                return false;
+            } else if (state == OPEN) {
+                if (now - (current & PAYLOAD_MASK) < waitDurationInOpenStateMillis) {
+                    throw new CircuitOpenException(name);
+                }
+                if (memory.compareAndSet(STATE, current, halfOpen(now, 1, 0, 0))) {
+                    return true;
+                }
+            } else if ((current >>> 2 * TRIAL_BITS & TRIAL_MASK) < permittedCallsInHalfOpenState) {
+                if (memory.compareAndSet(STATE, current, current + (1L << 2 * TRIAL_BITS))) {
+                    return true;
+                }
+            } else if (isAbandoned(current, now)) {
+                memory.compareAndSet(STATE, current, halfOpen(now, 1, 0, 0));
+            } else {
+                throw new CircuitOpenException(name);
+            }
+        }
+    }
+
+    /**
+     * Process that took trial call may have died before reporting it, then half open state would never end. Trial
+     * calls not completed within another wait duration are given to somebody else.
+     */
+    private boolean isAbandoned(long halfOpen, long now) {
+        long startedAt = halfOpen >>> 3 * TRIAL_BITS & HALF_OPEN_SECONDS_MASK;
+        long elapsedSeconds = (now / 1_000 - startedAt) & HALF_OPEN_SECONDS_MASK;
+        return elapsedSeconds * 1_000 > waitDurationInOpenStateMillis + 1_000;
+    }
+
+    private void record(boolean trialCall, boolean failed) {
+        long now = System.currentTimeMillis();
+        if (trialCall) {
+            recordTrialCall(now, failed);
+            return;
+        }
+
+        recordInWindow(now / bucketMillis, failed);
+        if (failed) {
+            long current = memory.get(STATE);
+            if ((current & STATE_MASK) == CLOSED && exceedsThreshold(snapshot(now))) {
+                memory.compareAndSet(STATE, current, OPEN | now);
+            }
+        }
+    }
+
+    private void recordInWindow(long bucket, boolean failed) {
+        int index = FIRST_BUCKET + (int) (bucket % buckets);
+        long epoch = bucket & EPOCH_MASK;
+        while (true) {
+            long current = memory.get(index);
+            long calls = 0;
+            long failures = 0;
+            if (current >>> 2 * COUNTER_BITS == epoch) {
+                calls = current >>> COUNTER_BITS & COUNTER_MASK;
+                failures = current & COUNTER_MASK;
+                if (calls == COUNTER_MASK) {
+                    return;
+                }
+            }
+            long updated = epoch << 2 * COUNTER_BITS | (calls + 1) << COUNTER_BITS | (failed ? failures + 1 : failures);
+            if (memory.compareAndSet(index, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private void recordTrialCall(long now, boolean failed) {
+        while (true) {
+            long current = memory.get(STATE);
+            if ((current & STATE_MASK) != HALF_OPEN) {
+                return;
+            }
+            long successes = (current >>> TRIAL_BITS & TRIAL_MASK) + (failed ? 0 : 1);
+            long failures = (current & TRIAL_MASK) + (failed ? 1 : 0);
+            long completed = successes + failures;
+            long updated;
+            if (completed < permittedCallsInHalfOpenState) {
+                updated = current & ~(TRIAL_MASK << TRIAL_BITS | TRIAL_MASK) | successes << TRIAL_BITS | failures;
+            } else if (failures * 100f / completed >= failureRateThreshold) {
+                updated = OPEN | now;
+            } else {
+                // failures from before the breaker opened are not counted again
+                resetWindow();
+                updated = CLOSED;
+            }
+            if (memory.compareAndSet(STATE, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < buckets; i++) {
+            memory.set(FIRST_BUCKET + i, 0);
+        }
+    }
+
+    private boolean exceedsThreshold(Snapshot snapshot) {
+        return snapshot.calls() >= minimumNumberOfCalls && snapshot.failureRate() >= failureRateThreshold;
+    }
+
+    /**
+     * Calls recorded by all processes within the sliding window.
+     */
+    public Snapshot snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    private Snapshot snapshot(long now) {
+        long currentBucket = now / bucketMillis;
+        long calls = 0;
+        long failures = 0;
+        for (int i = 0; i < buckets; i++) {
+            long value = memory.get(FIRST_BUCKET + i);
+            long age = (currentBucket - (value >>> 2 * COUNTER_BITS)) & EPOCH_MASK;
+            if (age < buckets) {
+                calls += value >>> COUNTER_BITS & COUNTER_MASK;
+                failures += value & COUNTER_MASK;
+            }
+        }
+        return new Snapshot(calls, failures);
+    }
+
+    public State getState() {
+        long current = memory.get(STATE);
+        long state = current & STATE_MASK;
+        if (state == CLOSED) {
+            return State.CLOSED;
+        } else if (state == OPEN) {
+            return System.currentTimeMillis() - (current & PAYLOAD_MASK) < waitDurationInOpenStateMillis
+                    ? State.OPEN
+                    : State.HALF_OPEN;
+        }
+        return State.HALF_OPEN;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private static long halfOpen(long now, long permitted, long successes, long failures) {
+        return HALF_OPEN
+                | (now / 1_000 & HALF_OPEN_SECONDS_MASK) << 3 * TRIAL_BITS
+                | permitted << 2 * TRIAL_BITS
+                | successes << TRIAL_BITS
+                | failures;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static class Snapshot {
+        private final long calls;
+        private final long failures;
+
+        private Snapshot(long calls, long failures) {
+            this.calls = calls;
+            this.failures = failures;
+        }
+
+        public long calls() {
+            return calls;
+        }
+
+        public long failures() {
+            return failures;
+        }
+
+        public float failureRate() {
+            return calls == 0 ? 0 : failures * 100f / calls;
+        }
+    }
+
+    public static class Builder {
+        private final String name;
+        private final Path file;
+        private Duration slidingWindow = Duration.ofSeconds(10);
+        private int buckets = 10;
+        private float failureRateThreshold = 50;
+        private int minimumNumberOfCalls = 100;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(60);
+        private int permittedCallsInHalfOpenState = 10;
+
+        private Builder(String name, Path file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        public Builder slidingWindow(Duration slidingWindow, int buckets) {
+            this.slidingWindow = slidingWindow;
+            this.buckets = buckets;
+            return this;
+        }
+
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        public Builder waitDurationInOpenState(Duration waitDurationInOpenState) {
+            this.waitDurationInOpenState = waitDurationInOpenState;
+            return this;
+        }
+
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public SharedCircuitBreaker build() throws IOException {
+            return new SharedCircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.pchudzik.blog.examples.asynccommunication.shared;
+
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.FixedResponseHandler;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.metrics.CircuitOpenException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedCircuitBreakerTest {
+    private static final int MINIMUM_NUMBER_OF_CALLS = 20;
+    private static final int PROCESSES = 4;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private BreakableService breakableService;
+    private Path stateFile;
+
+    @Before
+    public void setup() throws Exception {
+        BreakableService.ResponseHandler.FixedResponse error = new FixedResponseHandler(500, "error").handleResponse();
+        breakableService = new BreakableService(() -> {
+            requests.incrementAndGet();
+            return error;
+        }, ServerEngine.nio(2));
+        breakableService.startServer();
+        stateFile = Files.createTempFile("breaker", ".state");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        breakableService.stopServer();
+        Files.deleteIfExists(stateFile);
+    }
+
+    @Test
+    public void breaker_opened_by_one_instance_is_open_for_the_other() throws Exception {
+        SharedCircuitBreaker first = breaker(stateFile, Duration.ofMinutes(1));
+        SharedCircuitBreaker second = breaker(stateFile, Duration.ofMinutes(1));
+
+        for (int i = 0; i < MINIMUM_NUMBER_OF_CALLS; i++) {
+            callService(i % 2 == 0 ? first : second);
+        }
+
+        assertThat(first.getState(), equalTo(SharedCircuitBreaker.State.OPEN));
+        assertThat(second.getState(), equalTo(SharedCircuitBreaker.State.OPEN));
+        assertEquals(MINIMUM_NUMBER_OF_CALLS, second.snapshot().failures());
+        try {
+            callService(second);
+            fail("Call should not be permitted");
+        } catch (CircuitOpenException expected) {
+        }
+        assertEquals(MINIMUM_NUMBER_OF_CALLS, requests.get());
+    }
+
+    @Test
+    public void breaker_closes_for_everybody_after_successful_trial_calls() throws Exception {
+        SharedCircuitBreaker first = breaker(stateFile, Duration.ofMillis(50));
+        SharedCircuitBreaker second = breaker(stateFile, Duration.ofMillis(50));
+        for (int i = 0; i < MINIMUM_NUMBER_OF_CALLS; i++) {
+            callService(first);
+        }
+        breakableService.useResponseHandler(new FixedResponseHandler(200, "working again"));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(first.getState(), equalTo(SharedCircuitBreaker.State.HALF_OPEN));
+        callService(first);
+        callService(second);
+
+        assertThat(first.getState(), equalTo(SharedCircuitBreaker.State.CLOSED));
+        assertThat(second.getState(), equalTo(SharedCircuitBreaker.State.CLOSED));
+        assertEquals(0, second.snapshot().calls());
+    }
+
+    @Test
+    public void failed_trial_call_opens_breaker_again() throws Exception {
+        SharedCircuitBreaker breaker = breaker(stateFile, Duration.ofMillis(50));
+        for (int i = 0; i < MINIMUM_NUMBER_OF_CALLS; i++) {
+            callService(breaker);
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        callService(breaker);
+        callService(breaker);
+
+        assertThat(breaker.getState(), equalTo(SharedCircuitBreaker.State.OPEN));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void file_with_different_window_is_rejected() throws Exception {
+        breaker(stateFile, Duration.ofMinutes(1));
+
+        SharedCircuitBreaker.builder("other", stateFile)
+                .slidingWindow(Duration.ofSeconds(60), 60)
+                .build();
+    }
+
+    @Test
+    public void co_located_processes_trip_together() throws Exception {
+        List<Process> processes = new ArrayList<>();
+        List<BufferedReader> outputs = new ArrayList<>();
+        for (int i = 0; i < PROCESSES; i++) {
+            Process process = new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"),
+                    Worker.class.getName(),
+                    stateFile.toString(),
+                    String.valueOf(breakableService.getPort()))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            processes.add(process);
+            outputs.add(new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)));
+        }
+        for (BufferedReader output : outputs) {
+            assertThat(output.readLine(), equalTo("ready"));
+        }
+        for (Process process : processes) {
+            OutputStream input = process.getOutputStream();
+            input.write('\n');
+            input.flush();
+        }
+
+        int rejected = 0;
+        for (int i = 0; i < PROCESSES; i++) {
+            assertTrue("Worker didn't finish", processes.get(i).waitFor(30, TimeUnit.SECONDS));
+            assertEquals(0, processes.get(i).exitValue());
+            rejected += Integer.parseInt(outputs.get(i).readLine());
+        }
+
+        assertTrue("Every worker made " + MINIMUM_NUMBER_OF_CALLS + " failed calls: " + requests.get(),
+                requests.get() < MINIMUM_NUMBER_OF_CALLS * 2);
+        assertEquals(PROCESSES * Worker.CALLS - requests.get(), rejected);
+    }
+
+    private static SharedCircuitBreaker breaker(Path stateFile, Duration waitDurationInOpenState) throws IOException {
+        return SharedCircuitBreaker.builder("shared", stateFile)
+                .minimumNumberOfCalls(MINIMUM_NUMBER_OF_CALLS)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedCallsInHalfOpenState(2)
+                .build();
+    }
+
+    private static int callService(SharedCircuitBreaker breaker, int port) throws Exception {
+        try {
+            return breaker.executeCallable(() -> {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/hello").openConnection();
+                int status = connection.getResponseCode();
+                if (status >= 500) {
+                    connection.getErrorStream().close();
+                    throw new IOException("Received " + status);
+                }
+                connection.getInputStream().close();
+                return status;
+            });
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void callService(SharedCircuitBreaker breaker) throws Exception {
+        callService(breaker, breakableService.getPort());
+    }
+
+    /**
+     * Waits for a line on stdin, so all workers start together, calls the service {@link #CALLS} times and prints
+     * number of calls rejected by the breaker.
+     */
+    public static class Worker {
+        static final int CALLS = 100;
+
+        public static void main(String[] args) throws Exception {
+            SharedCircuitBreaker breaker = breaker(new File(args[0]).toPath(), Duration.ofMinutes(1));
+            int port = Integer.parseInt(args[1]);
+            System.out.println("ready");
+            System.in.read();
+
+            int rejected = 0;
+            for (int i = 0; i < CALLS; i++) {
+                try {
+                    callService(breaker, port);
+                } catch (CircuitOpenException e) {
+                    rejected++;
+                }
+            }
+            System.out.println(rejected);
+        }
+    }
+}
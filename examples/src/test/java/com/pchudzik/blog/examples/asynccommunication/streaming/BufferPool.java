@@ -0,0 +1,56 @@
+package com.pchudzik.blog.examples.asynccommunication.streaming;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small lock-free pool of equally sized byte buffers. Slots are picked starting from the calling thread's slot, so
+ * concurrent callers rarely fight over the same one. Pool is shared instead of thread local, virtual threads would
+ * make a thread local pool allocate a buffer per request anyway. When the pool is empty a new buffer is allocated,
+ * when it's full released buffer is left for the GC.
+ */
+public class BufferPool {
+    /**
+     * The longest UTF-8 sequence, {@link Utf8Reader} needs it in the buffer whole.
+     */
+    static final int MIN_BUFFER_SIZE = 4;
+
+    private final AtomicReferenceArray<byte[]> slots;
+    private final int bufferSize;
+
+    public BufferPool(int buffers, int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE + " bytes");
+        }
+        this.slots = new AtomicReferenceArray<>(buffers);
+        this.bufferSize = bufferSize;
+    }
+
+    public byte[] acquire() {
+        int start = startSlot();
+        for (int i = 0; i < slots.length(); i++) {
+            int slot = (start + i) % slots.length();
+            byte[] buffer = slots.get(slot);
+            if (buffer != null && slots.compareAndSet(slot, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            throw new IllegalArgumentException("Buffer doesn't come from this pool");
+        }
+        int start = startSlot();
+        for (int i = 0; i < slots.length(); i++) {
+            int slot = (start + i) % slots.length();
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    private int startSlot() {
+        return (int) (Thread.currentThread().getId() % slots.length());
+    }
+}
@@ -0,0 +1,65 @@
+package com.pchudzik.blog.examples.asynccommunication.streaming;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response converter mapping body with Gson {@link JsonReader} over {@link Utf8Reader} reading straight from OkHttp
+ * {@code BufferedSource} with pooled buffer. Only response bodies are handled - add {@code GsonConverterFactory}
+ * after this one for request bodies. Responses in charset other than UTF-8 are left to the next converter as well.
+ */
+public class StreamingGsonConverterFactory extends Converter.Factory {
+    private final Gson gson;
+    private final BufferPool bufferPool;
+
+    private StreamingGsonConverterFactory(Gson gson, BufferPool bufferPool) {
+        this.gson = gson;
+        this.bufferPool = bufferPool;
+    }
+
+    public static StreamingGsonConverterFactory create() {
+        return create(new Gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    public static StreamingGsonConverterFactory create(Gson gson, BufferPool bufferPool) {
+        return new StreamingGsonConverterFactory(gson, bufferPool);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+        return body -> {
+            if (!isUtf8(body.contentType())) {
+                return retrofit.nextResponseBodyConverter(this, type, annotations).convert(body);
+            }
+            try (JsonReader reader = gson.newJsonReader(new Utf8Reader(Utf8Reader.ByteSource.of(body.source()), bufferPool))) {
+                Object result = adapter.read(reader);
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new JsonIOException("JSON document was not fully consumed.");
+                }
+                return result;
+            } finally {
+                body.close();
+            }
+        };
+    }
+
+    private static boolean isUtf8(MediaType contentType) {
+        return contentType == null
+                || contentType.charset() == null
+                || StandardCharsets.UTF_8.equals(contentType.charset());
+    }
+}
@@ -0,0 +1,54 @@
+package com.pchudzik.blog.examples.asynccommunication.streaming;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import feign.Response;
+import feign.Util;
+import feign.codec.Decoder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feign counterpart of {@link StreamingGsonConverterFactory}, drop in replacement for {@code GsonDecoder}. Type adapter
+ * is looked up once per type and body stream is decoded with pooled buffer. Body is expected to be UTF-8, as JSON
+ * should be.
+ */
+public class StreamingGsonDecoder implements Decoder {
+    private final Gson gson;
+    private final BufferPool bufferPool;
+    private final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public StreamingGsonDecoder() {
+        this(new Gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    public StreamingGsonDecoder(Gson gson, BufferPool bufferPool) {
+        this.gson = gson;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (response.status() == 404 || response.status() == 204) {
+            return Util.emptyValueOf(type);
+        }
+        if (response.body() == null) {
+            return null;
+        }
+        TypeAdapter<?> adapter = adapters.computeIfAbsent(type, key -> gson.getAdapter(TypeToken.get(key)));
+        try (JsonReader reader = gson.newJsonReader(new Utf8Reader(Utf8Reader.ByteSource.of(response.body().asInputStream()), bufferPool))) {
+            return adapter.read(reader);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
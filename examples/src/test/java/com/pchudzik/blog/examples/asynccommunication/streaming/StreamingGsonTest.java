@@ -0,0 +1,135 @@
+package com.pchudzik.blog.examples.asynccommunication.streaming;
+
+import com.google.gson.Gson;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.RequestLine;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StreamingGsonTest {
+    private static final int MESSAGES = 50_000;
+
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        List<Hello> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(new Hello("hello w\u00F6rld " + i + " \uD83D\uDE00"));
+        }
+        BreakableService.ResponseHandler.FixedResponse response = BreakableService.ResponseHandler.FixedResponse.jsonResponse()
+                .withBody(new Gson().toJson(messages));
+        breakableService = new BreakableService(() -> response, ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void retrofit_decodes_large_array() throws Exception {
+        HelloWorld helloWorld = new Retrofit.Builder()
+                .client(new OkHttpClient())
+                .addConverterFactory(StreamingGsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+
+        List<Hello> messages = helloWorld.sayHellos().execute().body();
+
+        assertEquals(MESSAGES, messages.size());
+        assertThat(messages.get(MESSAGES - 1).getMessage(), equalTo("hello w\u00F6rld " + (MESSAGES - 1) + " \uD83D\uDE00"));
+    }
+
+    @Test
+    public void feign_decodes_large_array() {
+        FeignHelloWorld helloWorld = Feign.builder()
+                .decoder(new StreamingGsonDecoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        List<Hello> messages = helloWorld.sayHellos();
+
+        assertEquals(MESSAGES, messages.size());
+        assertThat(messages.get(0).getMessage(), equalTo("hello w\u00F6rld 0 \uD83D\uDE00"));
+    }
+
+    @Test
+    public void utf8_reader_matches_jdk_decoding() throws Exception {
+        String text = "ascii, za\u017C\u00F3\u0142\u0107 g\u0119\u015Bl\u0105 ja\u017A\u0144, \u65E5\u672C\u8A9E, \uD83D\uDE00\uD83D\uDE01 end";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        // tiny buffer and read sizes split multi byte sequences and surrogate pairs
+        for (int bufferSize = BufferPool.MIN_BUFFER_SIZE; bufferSize < 12; bufferSize++) {
+            for (int readSize = 1; readSize < 5; readSize++) {
+                assertEquals(text, readAll(bytes, new BufferPool(1, bufferSize), readSize));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buffer_shorter_than_utf8_sequence_is_rejected() {
+        new BufferPool(1, BufferPool.MIN_BUFFER_SIZE - 1);
+    }
+
+    @Test
+    public void malformed_input_is_replaced() throws Exception {
+        byte[] bytes = {'a', (byte) 0xC3, 'b', (byte) 0xFF, (byte) 0xE2, (byte) 0x82};
+        String expected = new String(bytes, StandardCharsets.UTF_8);
+
+        assertEquals(expected, readAll(bytes, new BufferPool(1, 16), 16));
+    }
+
+    @Test
+    public void buffers_are_reused() throws Exception {
+        BufferPool pool = new BufferPool(1, 16);
+        byte[] buffer = pool.acquire();
+        pool.release(buffer);
+
+        readAll("hello".getBytes(StandardCharsets.UTF_8), pool, 16);
+
+        assertSame(buffer, pool.acquire());
+    }
+
+    private static String readAll(byte[] bytes, BufferPool pool, int readSize) throws Exception {
+        StringBuilder result = new StringBuilder();
+        try (Reader reader = new Utf8Reader(Utf8Reader.ByteSource.of(new ByteArrayInputStream(bytes)), pool)) {
+            char[] chars = new char[readSize];
+            int read;
+            while ((read = reader.read(chars, 0, chars.length)) != -1) {
+                result.append(chars, 0, read);
+            }
+        }
+        return result.toString();
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<List<Hello>> sayHellos();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        List<Hello> sayHellos();
+    }
+}
@@ -0,0 +1,193 @@
+package com.pchudzik.blog.examples.asynccommunication.streaming;
+
+import okio.BufferedSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * UTF-8 {@link Reader} decoding straight from the source into the caller's char array, for {@code JsonReader}.
+ * {@code InputStreamReader} allocates its own byte and char buffers plus a charset decoder for every response, this
+ * one borrows a single buffer from {@link BufferPool} and returns it on close. Malformed input is replaced with
+ * {@code U+FFFD}, like {@code InputStreamReader} does.
+ */
+public class Utf8Reader extends Reader {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteSource source;
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private char pendingLowSurrogate;
+
+    public Utf8Reader(ByteSource source, BufferPool pool) {
+        this.source = source;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Reader is closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int written = 0;
+        if (pendingLowSurrogate != 0) {
+            chars[offset + written++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (written < length) {
+            if (position == limit && (written > 0 || !fill(1))) {
+                break;
+            }
+            int b = buffer[position];
+            if (b >= 0) {
+                // ASCII fast path, most of the JSON
+                int end = Math.min(limit, position + length - written);
+                while (position < end && buffer[position] >= 0) {
+                    chars[offset + written++] = (char) buffer[position++];
+                }
+                continue;
+            }
+
+            int sequenceLength = sequenceLength(b);
+            if (sequenceLength < 0) {
+                position++;
+                chars[offset + written++] = REPLACEMENT;
+                continue;
+            }
+            if (limit - position < sequenceLength && !fill(sequenceLength)) {
+                position = limit;
+                chars[offset + written++] = REPLACEMENT;
+                continue;
+            }
+
+            int codePoint = decode(sequenceLength);
+            if (codePoint < 0) {
+                chars[offset + written++] = REPLACEMENT;
+            } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + written++] = (char) codePoint;
+            } else {
+                chars[offset + written++] = Character.highSurrogate(codePoint);
+                char low = Character.lowSurrogate(codePoint);
+                if (written < length) {
+                    chars[offset + written++] = low;
+                } else {
+                    pendingLowSurrogate = low;
+                }
+            }
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            source.close();
+        }
+    }
+
+    /**
+     * Makes sure at least {@code required} bytes are buffered, moving leftover of split sequence to the beginning.
+     *
+     * @return {@code false} when source ended before
+     */
+    private boolean fill(int required) throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < required && !endOfInput) {
+            int read = source.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit >= required;
+    }
+
+    private static int sequenceLength(int leadByte) {
+        int lead = leadByte & 0xFF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            return 2;
+        }
+        if (lead >= 0xE0 && lead <= 0xEF) {
+            return 3;
+        }
+        if (lead >= 0xF0 && lead <= 0xF4) {
+            return 4;
+        }
+        return -1;
+    }
+
+    /**
+     * Consumes valid sequence, on malformed one consumes only the lead byte and returns {@code -1}.
+     */
+    private int decode(int sequenceLength) {
+        int codePoint = buffer[position] & (0xFF >> (sequenceLength + 1));
+        for (int i = 1; i < sequenceLength; i++) {
+            int continuation = buffer[position + i];
+            if ((continuation & 0xC0) != 0x80) {
+                position++;
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (continuation & 0x3F);
+        }
+        boolean overlong = (sequenceLength == 3 && codePoint < 0x800) || (sequenceLength == 4 && codePoint < 0x10000);
+        if (overlong || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            position++;
+            return -1;
+        }
+        position += sequenceLength;
+        return codePoint;
+    }
+
+    /**
+     * Where the bytes come from - Feign body stream or OkHttp body source, read without extra wrappers.
+     */
+    public interface ByteSource extends Closeable {
+        int read(byte[] buffer, int offset, int length) throws IOException;
+
+        static ByteSource of(InputStream input) {
+            return new ByteSource() {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    return input.read(buffer, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    input.close();
+                }
+            };
+        }
+
+        static ByteSource of(BufferedSource source) {
+            return new ByteSource() {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    return source.read(buffer, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    source.close();
+                }
+            };
+        }
+    }
+}
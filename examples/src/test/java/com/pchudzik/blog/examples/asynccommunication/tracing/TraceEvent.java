@@ -0,0 +1,22 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+/**
+ * Mutable slot of {@link TraceRingBuffer}. Fields are written by producer before {@link #published} and read by
+ * consumer after it.
+ */
+class TraceEvent {
+    enum Type {
+        REQUEST, RESPONSE, FAILURE
+    }
+
+    volatile long published = -1;
+    long timestampMillis;
+    Type type;
+    long traceId;
+    String client;
+    String method;
+    String url;
+    int status;
+    long durationNanos;
+    String error;
+}
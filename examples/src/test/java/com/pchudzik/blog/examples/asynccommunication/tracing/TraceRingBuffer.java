@@ -0,0 +1,81 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi producer, single consumer ring of preallocated events. Producer claims a slot with CAS, fills it in
+ * place and publishes it with a volatile write, nothing is allocated. When consumer falls behind and the ring is full
+ * the event is dropped and counted - tracing must never block the request thread.
+ */
+class TraceRingBuffer {
+    private final TraceEvent[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long consumed;
+
+    TraceRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be power of 2");
+        }
+        this.slots = new TraceEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new TraceEvent();
+        }
+        this.mask = capacity - 1;
+    }
+
+    boolean publish(TraceEvent.Type type, long traceId, String client, String method, String url, int status, long durationNanos, String error) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        TraceEvent event = slots[(int) (sequence & mask)];
+        event.timestampMillis = System.currentTimeMillis();
+        event.type = type;
+        event.traceId = traceId;
+        event.client = client;
+        event.method = method;
+        event.url = url;
+        event.status = status;
+        event.durationNanos = durationNanos;
+        event.error = error;
+        event.published = sequence;
+        return true;
+    }
+
+    /**
+     * Passes up to {@code maxEvents} published events to {@code consumer}, in claim order. Stops at the first claimed
+     * but not yet published slot. Event must not be used after {@code consumer} returns, the slot is reused.
+     */
+    int drain(Consumer<TraceEvent> consumer, int maxEvents) {
+        long next = consumed;
+        int drained = 0;
+        while (drained < maxEvents) {
+            TraceEvent event = slots[(int) (next & mask)];
+            if (event.published != next) {
+                break;
+            }
+            consumer.accept(event);
+            event.client = null;
+            event.method = null;
+            event.url = null;
+            event.error = null;
+            next++;
+            drained++;
+        }
+        consumed = next;
+        return drained;
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+}
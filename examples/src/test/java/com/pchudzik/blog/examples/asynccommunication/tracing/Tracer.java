@@ -0,0 +1,182 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request/response tracing written as JSON lines by a background thread, a replacement for per request debug logging
+ * in load tests. Request threads only put events to {@link TraceRingBuffer}, formatting and I/O happen on the writer
+ * thread in batches.
+ * <p>
+ * Sampling is decided once per request when it starts: {@link #startRequest} returns {@code 0} for not sampled
+ * request and the following calls with that id do nothing. With {@code sampleRate = 1} every request is traced.
+ */
+public class Tracer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(Tracer.class);
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TraceRingBuffer ringBuffer;
+    private final long sampleThreshold;
+    private final Writer writer;
+    private final Thread worker;
+    private final LongAdder written = new LongAdder();
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile boolean running = true;
+
+    public Tracer(Path file, int capacity, double sampleRate) throws IOException {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1");
+        }
+        this.ringBuffer = new TraceRingBuffer(capacity);
+        this.sampleThreshold = sampleRate == 1 ? Long.MAX_VALUE : (long) (sampleRate * Long.MAX_VALUE);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+        this.worker = new Thread(this::writeLoop, "tracer-" + file.getFileName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return trace id, {@code 0} when request is not sampled
+     */
+    public long startRequest(String client, String method, String url) {
+        long traceId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        if (traceId == 0 || traceId > sampleThreshold) {
+            return 0;
+        }
+        ringBuffer.publish(TraceEvent.Type.REQUEST, traceId, client, method, url, 0, 0, null);
+        return traceId;
+    }
+
+    public void response(long traceId, String client, int status, long durationNanos) {
+        if (traceId != 0) {
+            ringBuffer.publish(TraceEvent.Type.RESPONSE, traceId, client, null, null, status, durationNanos, null);
+        }
+    }
+
+    public void failure(long traceId, String client, Throwable error, long durationNanos) {
+        if (traceId != 0) {
+            ringBuffer.publish(TraceEvent.Type.FAILURE, traceId, client, null, null, 0, durationNanos, error.toString());
+        }
+    }
+
+    /**
+     * Events dropped because writer didn't keep up.
+     */
+    public long dropped() {
+        return ringBuffer.dropped();
+    }
+
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * Writes pending events and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+
+    private void writeLoop() {
+        boolean dirty = false;
+        while (true) {
+            boolean stopping = !running;
+            int drained = ringBuffer.drain(this::write, BATCH_SIZE);
+            if (drained > 0) {
+                dirty = true;
+                continue;
+            }
+            if (dirty) {
+                flush();
+                dirty = false;
+            }
+            if (stopping) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void write(TraceEvent event) {
+        line.setLength(0);
+        line.append("{\"ts\":").append(event.timestampMillis)
+                .append(",\"trace\":\"").append(Long.toHexString(event.traceId))
+                .append("\",\"type\":\"").append(event.type.name().toLowerCase())
+                .append("\",\"client\":");
+        appendString(event.client);
+        switch (event.type) {
+            case REQUEST:
+                line.append(",\"method\":");
+                appendString(event.method);
+                line.append(",\"url\":");
+                appendString(event.url);
+                break;
+            case RESPONSE:
+                line.append(",\"status\":").append(event.status)
+                        .append(",\"durationUs\":").append(TimeUnit.NANOSECONDS.toMicros(event.durationNanos));
+                break;
+            case FAILURE:
+                line.append(",\"error\":");
+                appendString(event.error);
+                line.append(",\"durationUs\":").append(TimeUnit.NANOSECONDS.toMicros(event.durationNanos));
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type " + event.type);
+        }
+        line.append("}\n");
+        try {
+            writer.append(line);
+            written.increment();
+        } catch (IOException e) {
+            log.warn("Writing trace failed", e);
+        }
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Flushing traces failed", e);
+        }
+    }
+}
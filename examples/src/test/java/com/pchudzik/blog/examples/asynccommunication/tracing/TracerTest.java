@@ -0,0 +1,139 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.Feign;
+import feign.RequestLine;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TracerTest {
+    private BreakableService breakableService;
+    private Path traceFile;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+        traceFile = Files.createTempFile("traces", ".jsonl");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        breakableService.stopServer();
+        Files.deleteIfExists(traceFile);
+    }
+
+    @Test
+    public void every_request_is_traced_without_sampling() throws Exception {
+        try (Tracer tracer = new Tracer(traceFile, 16 * 1024, 1)) {
+            HelloWorld helloWorld = retrofit(tracer);
+            for (int i = 0; i < 5_000; i++) {
+                helloWorld.sayHello().execute();
+            }
+        }
+
+        List<String> lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+        assertEquals(10_000, lines.size());
+        JsonObject request = new Gson().fromJson(lines.get(0), JsonObject.class);
+        JsonObject response = new Gson().fromJson(lines.get(1), JsonObject.class);
+        assertEquals("request", request.get("type").getAsString());
+        assertEquals("GET", request.get("method").getAsString());
+        assertThat(request.get("url").getAsString(), containsString("/hello"));
+        assertEquals("response", response.get("type").getAsString());
+        assertEquals(request.get("trace"), response.get("trace"));
+        assertEquals(200, response.get("status").getAsInt());
+    }
+
+    @Test
+    public void only_sampled_requests_are_traced() throws Exception {
+        Tracer tracer = new Tracer(traceFile, 1024, 0.1);
+        try {
+            HelloWorld helloWorld = retrofit(tracer);
+            for (int i = 0; i < 2_000; i++) {
+                helloWorld.sayHello().execute();
+            }
+        } finally {
+            tracer.close();
+        }
+
+        long traced = tracer.written() / 2;
+        assertTrue("traced " + traced, traced > 100 && traced < 300);
+        assertEquals(tracer.written(), Files.readAllLines(traceFile, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void feign_failures_are_traced() throws Exception {
+        breakableService.useResponseHandler(BreakableService.ResponseHandler.FixedResponse::connectionReset);
+        try (Tracer tracer = new Tracer(traceFile, 1024, 1)) {
+            FeignHelloWorld helloWorld = Feign.builder()
+                    .client(new TracingClient(new feign.Client.Default(null, null), tracer, "feign-hello"))
+                    .retryer(feign.Retryer.NEVER_RETRY)
+                    .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+            try {
+                helloWorld.sayHello();
+            } catch (feign.RetryableException expected) {
+            }
+        }
+
+        List<String> lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        JsonObject failure = new Gson().fromJson(lines.get(1), JsonObject.class);
+        assertEquals("failure", failure.get("type").getAsString());
+        assertEquals("feign-hello", failure.get("client").getAsString());
+        assertThat(failure.get("error").getAsString(), containsString("Connection reset"));
+    }
+
+    @Test
+    public void events_are_dropped_instead_of_blocking_when_buffer_is_full() {
+        TraceRingBuffer ringBuffer = new TraceRingBuffer(16);
+        for (int i = 0; i < 20; i++) {
+            ringBuffer.publish(TraceEvent.Type.REQUEST, i + 1, "hello", "GET", "/hello", 0, 0, null);
+        }
+
+        assertEquals(4, ringBuffer.dropped());
+        assertEquals(16, ringBuffer.drain(event -> {
+        }, 100));
+        assertTrue(ringBuffer.publish(TraceEvent.Type.REQUEST, 21, "hello", "GET", "/hello", 0, 0, null));
+    }
+
+    private HelloWorld retrofit(Tracer tracer) {
+        return new Retrofit.Builder()
+                .client(new OkHttpClient.Builder()
+                        .addInterceptor(new TracingInterceptor(tracer, "hello"))
+                        .build())
+                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        String sayHello();
+    }
+}
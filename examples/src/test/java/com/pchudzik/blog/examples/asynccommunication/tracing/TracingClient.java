@@ -0,0 +1,36 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+
+/**
+ * Traces Feign requests with {@link Tracer}, use instead of {@code Slf4jLogger} with {@code Logger.Level.BASIC}.
+ */
+public class TracingClient implements Client {
+    private final Client delegate;
+    private final Tracer tracer;
+    private final String client;
+
+    public TracingClient(Client delegate, Tracer tracer, String client) {
+        this.delegate = delegate;
+        this.tracer = tracer;
+        this.client = client;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        long start = System.nanoTime();
+        long traceId = tracer.startRequest(client, request.httpMethod().name(), request.url());
+        try {
+            Response response = delegate.execute(request, options);
+            tracer.response(traceId, client, response.status(), System.nanoTime() - start);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            tracer.failure(traceId, client, e, System.nanoTime() - start);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.pchudzik.blog.examples.asynccommunication.tracing;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Traces OkHttp requests with {@link Tracer}, use instead of {@code HttpLoggingInterceptor}.
+ */
+public class TracingInterceptor implements Interceptor {
+    private final Tracer tracer;
+    private final String client;
+
+    public TracingInterceptor(Tracer tracer, String client) {
+        this.tracer = tracer;
+        this.client = client;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        long start = System.nanoTime();
+        long traceId = tracer.startRequest(client, request.method(), request.url().toString());
+        try {
+            Response response = chain.proceed(request);
+            tracer.response(traceId, client, response.code(), System.nanoTime() - start);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            tracer.failure(traceId, client, e, System.nanoTime() - start);
+            throw e;
+        }
+    }
+}
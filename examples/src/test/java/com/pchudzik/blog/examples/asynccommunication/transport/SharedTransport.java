@@ -0,0 +1,156 @@
+package com.pchudzik.blog.examples.asynccommunication.transport;
+
+import feign.Client;
+import feign.Feign;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import retrofit2.Retrofit;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single OkHttp connection pool and dispatcher for every Feign and Retrofit client in the process, so connections are
+ * reused across targets instead of each client warming up its own. With {@link Builder#http2PriorKnowledge()} all
+ * calls to a host are multiplexed over one HTTP/2 cleartext connection - every target must speak h2c then, there is
+ * no fallback without TLS.
+ * <p>
+ * Clients needing different timeouts should derive from {@link #okHttpClient()} with {@code newBuilder()}, derived
+ * client keeps sharing pool and dispatcher.
+ */
+public class SharedTransport implements AutoCloseable {
+    private final OkHttpClient client;
+    private final LongAdder connects = new LongAdder();
+
+    private SharedTransport(Builder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(builder.maxIdleConnections, builder.keepAlive.toNanos(), TimeUnit.NANOSECONDS))
+                .protocols(builder.http2PriorKnowledge
+                        ? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)
+                        : Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(builder.connectTimeout)
+                .readTimeout(builder.readTimeout)
+                .eventListener(new EventListener() {
+                    @Override
+                    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                        connects.increment();
+                    }
+                })
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public OkHttpClient okHttpClient() {
+        return client;
+    }
+
+    public Retrofit.Builder retrofit(String baseUrl) {
+        return new Retrofit.Builder()
+                .client(client)
+                .baseUrl(baseUrl);
+    }
+
+    public Client feignClient() {
+        return new feign.okhttp.OkHttpClient(client);
+    }
+
+    /**
+     * Only the client is configured, encoder and decoder are up to the caller. Feign reads its timeouts from
+     * {@code Request.Options}, set them on the builder, not on the transport.
+     */
+    public Feign.Builder feign() {
+        return Feign.builder().client(feignClient());
+    }
+
+    /**
+     * @return number of connections opened so far, including failed attempts
+     */
+    public long connectsTotal() {
+        return connects.sum();
+    }
+
+    public int connectionCount() {
+        return client.connectionPool().connectionCount();
+    }
+
+    public int idleConnectionCount() {
+        return client.connectionPool().idleConnectionCount();
+    }
+
+    @Override
+    public void close() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    public static class Builder {
+        private int maxIdleConnections = 32;
+        private Duration keepAlive = Duration.ofMinutes(5);
+        private int maxRequests = 256;
+        private int maxRequestsPerHost = 64;
+        private boolean http2PriorKnowledge;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(10);
+
+        private Builder() {
+        }
+
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Limits asynchronous calls only, synchronous ones are not queued by the dispatcher.
+         */
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder http2PriorKnowledge() {
+            this.http2PriorKnowledge = true;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public SharedTransport build() {
+            return new SharedTransport(this);
+        }
+    }
+}
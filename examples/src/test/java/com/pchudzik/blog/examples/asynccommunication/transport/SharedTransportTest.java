@@ -0,0 +1,147 @@
+package com.pchudzik.blog.examples.asynccommunication.transport;
+
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService.ResponseHandler.FixedResponse;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.LatencyProfile;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import feign.RequestLine;
+import feign.gson.GsonDecoder;
+import okhttp3.Protocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedTransportTest {
+    private final BreakableService.ResponseHandler hello = new BreakableService.FixedResponseHandler(200, "hello world");
+    private BreakableService firstService;
+    private BreakableService secondService;
+    private SharedTransport transport;
+
+    @Before
+    public void setup() throws Exception {
+        firstService = new BreakableService(hello, ServerEngine.virtualThreads());
+        firstService.startServer();
+        secondService = new BreakableService(hello, ServerEngine.virtualThreads());
+        secondService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        firstService.stopServer();
+        secondService.stopServer();
+        transport.close();
+    }
+
+    @Test
+    public void h2c_calls_are_multiplexed_over_single_connection() throws Exception {
+        transport = SharedTransport.builder().http2PriorKnowledge().build();
+        firstService.useResponseHandler(hello.withLatency(LatencyProfile.fixed(Duration.ofMillis(100))));
+        HelloWorld helloWorld = retrofit(firstService);
+        // calls racing for the very first connection would open one each
+        helloWorld.sayHello().execute();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+
+        long start = System.nanoTime();
+        try {
+            List<Future<Response<Hello>>> responses = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                responses.add(executor.submit(() -> helloWorld.sayHello().execute()));
+            }
+            for (Future<Response<Hello>> response : responses) {
+                assertThat(response.get(5, TimeUnit.SECONDS).raw().protocol(), equalTo(Protocol.H2_PRIOR_KNOWLEDGE));
+                assertThat(response.get().body().getMessage(), equalTo("hello world"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, transport.connectsTotal());
+        assertEquals(1, transport.connectionCount());
+    }
+
+    @Test
+    public void connections_are_shared_by_feign_and_retrofit_clients() throws Exception {
+        transport = SharedTransport.builder().build();
+        HelloWorld first = retrofit(firstService);
+        HelloWorld second = retrofit(secondService);
+        FeignHelloWorld feign = transport.feign()
+                .decoder(new GsonDecoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + firstService.getPort());
+
+        for (int i = 0; i < 10; i++) {
+            first.sayHello().execute().body();
+            second.sayHello().execute().body();
+            assertThat(feign.sayHello().getMessage(), equalTo("hello world"));
+        }
+
+        assertEquals(2, transport.connectsTotal());
+        assertEquals(2, transport.idleConnectionCount());
+    }
+
+    @Test
+    public void h2c_response_larger_than_flow_control_window_is_delivered() throws Exception {
+        transport = SharedTransport.builder().http2PriorKnowledge().build();
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 256 * 1024) {
+            message.append("hello world ");
+        }
+        firstService.useResponseHandler(new BreakableService.FixedResponseHandler(200, message.toString()));
+
+        assertThat(retrofit(firstService).sayHello().execute().body().getMessage(), equalTo(message.toString()));
+    }
+
+    @Test
+    public void h2c_connection_reset_fails_the_call() throws Exception {
+        transport = SharedTransport.builder().http2PriorKnowledge().build();
+        HelloWorld helloWorld = retrofit(firstService);
+        helloWorld.sayHello().execute();
+        firstService.useResponseHandler(FixedResponse::connectionReset);
+
+        try {
+            helloWorld.sayHello().execute();
+            fail("Stream should be reset");
+        } catch (IOException expected) {
+        }
+        firstService.useResponseHandler(hello);
+
+        assertThat(helloWorld.sayHello().execute().body().getMessage(), equalTo("hello world"));
+    }
+
+    private HelloWorld retrofit(BreakableService service) {
+        return transport.retrofit("http://localhost:" + service.getPort() + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+    }
+}
@@ -0,0 +1,198 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import feign.RequestInterceptor;
+import okhttp3.Interceptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary representation negotiated with {@code Accept: application/cbor}. JSON stays the default, wildcards don't
+ * select CBOR, as HttpURLConnection sends {@code *}{@code /*} with every request.
+ */
+public class Cbor {
+    public static final String MEDIA_TYPE = "application/cbor";
+    static final String ACCEPT = MEDIA_TYPE + ", application/json;q=0.9";
+
+    static final int MAJOR_UNSIGNED = 0;
+    static final int MAJOR_NEGATIVE = 1;
+    static final int MAJOR_BYTES = 2;
+    static final int MAJOR_TEXT = 3;
+    static final int MAJOR_ARRAY = 4;
+    static final int MAJOR_MAP = 5;
+    static final int MAJOR_TAG = 6;
+    static final int MAJOR_SIMPLE = 7;
+
+    static final int INDEFINITE_ARRAY = 0x9f;
+    static final int INDEFINITE_MAP = 0xbf;
+    static final int FALSE = 0xf4;
+    static final int TRUE = 0xf5;
+    static final int NULL = 0xf6;
+    static final int FLOAT = 0xfa;
+    static final int DOUBLE = 0xfb;
+    static final int BREAK = 0xff;
+
+    private Cbor() {
+    }
+
+    /**
+     * Adds {@code Accept} preferring CBOR to requests without one.
+     */
+    public static Interceptor acceptInterceptor() {
+        return chain -> chain.request().header("Accept") != null
+                ? chain.proceed(chain.request())
+                : chain.proceed(chain.request().newBuilder().header("Accept", ACCEPT).build());
+    }
+
+    /**
+     * Feign counterpart of {@link #acceptInterceptor()}.
+     */
+    public static RequestInterceptor acceptRequestInterceptor() {
+        return template -> template.header("Accept", ACCEPT);
+    }
+
+    /**
+     * @return true when {@code application/cbor} is listed explicitly and its quality isn't 0. Doesn't allocate.
+     */
+    public static boolean accepts(CharSequence accept) {
+        int start = 0;
+        while (start < accept.length()) {
+            int end = indexOf(accept, ',', start, accept.length());
+            if (isCbor(accept, start, end)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return CBOR encoding of JSON document or null when document is not valid JSON
+     */
+    public static byte[] fromJson(byte[] json) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(json.length);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            CborWriter writer = new CborWriter(result);
+            writer.setSerializeNulls(true);
+            copy(reader, writer);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return null;
+            }
+            writer.close();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            return null;
+        }
+        return result.toByteArray();
+    }
+
+    static void copy(JsonReader in, CborWriter out) throws IOException {
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    out.numberValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    private static boolean isCbor(CharSequence accept, int start, int end) {
+        int typeEnd = indexOf(accept, ';', start, end);
+        int typeStart = skipSpaces(accept, start, typeEnd);
+        int trimmedEnd = typeEnd;
+        while (trimmedEnd > typeStart && accept.charAt(trimmedEnd - 1) == ' ') {
+            trimmedEnd--;
+        }
+        if (!regionEqualsIgnoreCase(accept, typeStart, trimmedEnd, MEDIA_TYPE)) {
+            return false;
+        }
+        int parameter = typeEnd + 1;
+        while (parameter < end) {
+            int parameterEnd = indexOf(accept, ';', parameter, end);
+            int nameStart = skipSpaces(accept, parameter, parameterEnd);
+            if (parameterEnd - nameStart >= 2 && Character.toLowerCase(accept.charAt(nameStart)) == 'q' && accept.charAt(nameStart + 1) == '=') {
+                return !isZero(accept, nameStart + 2, parameterEnd);
+            }
+            parameter = parameterEnd + 1;
+        }
+        return true;
+    }
+
+    private static boolean isZero(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c != '0' && c != '.' && c != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence sequence, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(sequence.charAt(start + i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(CharSequence sequence, int from, int to) {
+        while (from < to && sequence.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int indexOf(CharSequence sequence, char value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (sequence.charAt(i) == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,86 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonToken;
+import com.pchudzik.blog.examples.asynccommunication.streaming.BufferPool;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Retrofit converter for {@code application/cbor} bodies. Responses of any other content type are handed over to the
+ * next converter, so JSON converter must be registered after this one. Pair it with {@link Cbor#acceptInterceptor()}
+ * so the server knows CBOR is understood.
+ */
+public class CborConverterFactory extends Converter.Factory {
+    private static final MediaType CBOR = MediaType.get(Cbor.MEDIA_TYPE);
+
+    private final Gson gson;
+    private final BufferPool bufferPool;
+
+    private CborConverterFactory(Gson gson, BufferPool bufferPool) {
+        this.gson = gson;
+        this.bufferPool = bufferPool;
+    }
+
+    public static CborConverterFactory create() {
+        return create(new Gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    public static CborConverterFactory create(Gson gson, BufferPool bufferPool) {
+        return new CborConverterFactory(gson, bufferPool);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+        return body -> {
+            if (!isCbor(body.contentType())) {
+                return retrofit.nextResponseBodyConverter(this, type, annotations).convert(body);
+            }
+            byte[] buffer = bufferPool.acquire();
+            try (CborReader reader = new CborReader(body.byteStream(), buffer)) {
+                reader.setLenient(true);
+                Object result = adapter.read(reader);
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new JsonIOException("CBOR document was not fully consumed.");
+                }
+                return result;
+            } finally {
+                bufferPool.release(buffer);
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(type));
+        return value -> {
+            Buffer body = new Buffer();
+            byte[] buffer = bufferPool.acquire();
+            try (CborWriter writer = new CborWriter(body.outputStream(), buffer)) {
+                adapter.write(writer, value);
+            } finally {
+                bufferPool.release(buffer);
+            }
+            return RequestBody.create(CBOR, body.readByteString());
+        };
+    }
+
+    static boolean isCbor(MediaType contentType) {
+        return contentType != null
+                && CBOR.type().equals(contentType.type())
+                && CBOR.subtype().equals(contentType.subtype());
+    }
+}
@@ -0,0 +1,78 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.pchudzik.blog.examples.asynccommunication.streaming.BufferPool;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonDecoder;
+import feign.Response;
+import feign.Util;
+import feign.codec.Decoder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feign counterpart of {@link CborConverterFactory}. Responses other than {@code application/cbor} are decoded by
+ * {@code fallback}, JSON decoder by default. Register {@link Cbor#acceptRequestInterceptor()} so the server knows CBOR
+ * is understood.
+ */
+public class CborDecoder implements Decoder {
+    private final Gson gson;
+    private final BufferPool bufferPool;
+    private final Decoder fallback;
+    private final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public CborDecoder() {
+        this(new Gson(), new BufferPool(64, 16 * 1024));
+    }
+
+    public CborDecoder(Gson gson, BufferPool bufferPool) {
+        this(gson, bufferPool, new StreamingGsonDecoder(gson, bufferPool));
+    }
+
+    public CborDecoder(Gson gson, BufferPool bufferPool, Decoder fallback) {
+        this.gson = gson;
+        this.bufferPool = bufferPool;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (!isCbor(response.headers().get("Content-Type"))) {
+            return fallback.decode(response, type);
+        }
+        if (response.status() == 404 || response.status() == 204) {
+            return Util.emptyValueOf(type);
+        }
+        if (response.body() == null) {
+            return null;
+        }
+        TypeAdapter<?> adapter = adapters.computeIfAbsent(type, key -> gson.getAdapter(TypeToken.get(key)));
+        byte[] buffer = bufferPool.acquire();
+        try (CborReader reader = new CborReader(response.body().asInputStream(), buffer)) {
+            reader.setLenient(true);
+            return adapter.read(reader);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private static boolean isCbor(Collection<String> contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return false;
+        }
+        String value = contentType.iterator().next();
+        int parameters = value.indexOf(';');
+        return (parameters < 0 ? value : value.substring(0, parameters)).trim().equalsIgnoreCase(Cbor.MEDIA_TYPE);
+    }
+}
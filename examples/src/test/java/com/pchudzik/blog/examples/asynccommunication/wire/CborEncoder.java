@@ -0,0 +1,41 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import feign.RequestTemplate;
+import feign.codec.EncodeException;
+import feign.codec.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Feign encoder writing request body as {@code application/cbor}.
+ */
+public class CborEncoder implements Encoder {
+    private final Gson gson;
+
+    public CborEncoder() {
+        this(new Gson());
+    }
+
+    public CborEncoder(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encode(Object object, Type bodyType, RequestTemplate template) {
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(bodyType));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (CborWriter writer = new CborWriter(body)) {
+            adapter.write(writer, object);
+        } catch (IOException e) {
+            throw new EncodeException("Encoding " + bodyType + " failed", e);
+        }
+        template.header("Content-Type", Cbor.MEDIA_TYPE);
+        template.body(body.toByteArray(), null);
+    }
+}
@@ -0,0 +1,512 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * {@link JsonReader} reading CBOR (RFC 8949), counterpart of {@link CborWriter}. Definite and indefinite length arrays
+ * and maps are supported, tags are ignored, byte strings are exposed as base64 strings. Indefinite length strings are
+ * not supported.
+ */
+public class CborReader extends JsonReader {
+    private static final Reader UNREADABLE = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private static final int ARRAY = 1;
+    private static final int MAP = 2;
+    private static final long INDEFINITE = -1;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private int[] containers = new int[32];
+    private long[] remaining = new long[32];
+    private boolean[] nameExpected = new boolean[32];
+    private int depth;
+    private boolean documentRead;
+
+    private JsonToken peeked;
+    private int peekedMajor;
+    private int peekedInfo;
+    private long peekedArgument;
+
+    public CborReader(InputStream in) {
+        this(in, new byte[4 * 1024]);
+    }
+
+    /**
+     * @param buffer read buffer, must have at least 9 bytes. It's used until reader is closed.
+     */
+    public CborReader(InputStream in, byte[] buffer) {
+        super(UNREADABLE);
+        if (buffer.length < 9) {
+            throw new IllegalArgumentException("Buffer must have at least 9 bytes");
+        }
+        this.in = in;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        if (depth == 0) {
+            if (documentRead) {
+                return peeked = JsonToken.END_DOCUMENT;
+            }
+        } else if (remaining[depth - 1] == 0) {
+            return peeked = containers[depth - 1] == ARRAY ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+        }
+
+        int initial = readByte();
+        while (initial >>> 5 == Cbor.MAJOR_TAG) {
+            readArgument(initial & 0x1f);
+            initial = readByte();
+        }
+        if (initial == Cbor.BREAK) {
+            if (depth == 0 || remaining[depth - 1] != INDEFINITE) {
+                throw syntaxError("Unexpected break");
+            }
+            return peeked = containers[depth - 1] == ARRAY ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+        }
+        peekedMajor = initial >>> 5;
+        peekedInfo = initial & 0x1f;
+        peekedArgument = peekedMajor == Cbor.MAJOR_SIMPLE ? 0 : readArgument(peekedInfo);
+
+        boolean name = depth > 0 && containers[depth - 1] == MAP && nameExpected[depth - 1];
+        switch (peekedMajor) {
+            case Cbor.MAJOR_UNSIGNED:
+            case Cbor.MAJOR_NEGATIVE:
+                return peeked = name ? JsonToken.NAME : JsonToken.NUMBER;
+            case Cbor.MAJOR_BYTES:
+            case Cbor.MAJOR_TEXT:
+                return peeked = name ? JsonToken.NAME : JsonToken.STRING;
+            case Cbor.MAJOR_ARRAY:
+                return peeked = name ? unsupportedName() : JsonToken.BEGIN_ARRAY;
+            case Cbor.MAJOR_MAP:
+                return peeked = name ? unsupportedName() : JsonToken.BEGIN_OBJECT;
+            default:
+                if (name) {
+                    return peeked = unsupportedName();
+                }
+                switch (peekedInfo) {
+                    case 20:
+                    case 21:
+                        return peeked = JsonToken.BOOLEAN;
+                    case 22:
+                    case 23:
+                        return peeked = JsonToken.NULL;
+                    case 25:
+                    case 26:
+                    case 27:
+                        return peeked = JsonToken.NUMBER;
+                    default:
+                        throw syntaxError("Unsupported simple value " + peekedInfo);
+                }
+        }
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(ARRAY, peekedInfo == 31 ? INDEFINITE : peekedArgument);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(MAP, peekedInfo == 31 ? INDEFINITE : peekedArgument);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = peekedMajor == Cbor.MAJOR_TEXT || peekedMajor == Cbor.MAJOR_BYTES ? readString() : integerValue().toString();
+        nameExpected[depth - 1] = false;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        String value;
+        if (token == JsonToken.STRING) {
+            value = readString();
+        } else if (token == JsonToken.NUMBER) {
+            value = isInteger() ? integerValue().toString() : Double.toString(readFloat());
+        } else {
+            throw unexpected("a string", token);
+        }
+        consume();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean value = peekedInfo == 21;
+        consume();
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        consume();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        JsonToken token = peek();
+        double value;
+        if (token == JsonToken.NUMBER) {
+            value = isInteger() ? integerValue().doubleValue() : readFloat();
+        } else if (token == JsonToken.STRING) {
+            value = Double.parseDouble(readString());
+        } else {
+            throw unexpected("a double", token);
+        }
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + value + locationString());
+        }
+        consume();
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        JsonToken token = peek();
+        long value;
+        if (token == JsonToken.NUMBER) {
+            if (isInteger()) {
+                if (peekedArgument < 0) {
+                    throw new NumberFormatException("Expected a long but was " + integerValue() + locationString());
+                }
+                value = peekedMajor == Cbor.MAJOR_UNSIGNED ? peekedArgument : -1 - peekedArgument;
+            } else {
+                double fraction = readFloat();
+                value = (long) fraction;
+                if (value != fraction) {
+                    throw new NumberFormatException("Expected a long but was " + fraction + locationString());
+                }
+            }
+        } else if (token == JsonToken.STRING) {
+            value = Long.parseLong(readString());
+        } else {
+            throw unexpected("a long", token);
+        }
+        consume();
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw unexpected("an int", token);
+        }
+        long value = nextLong();
+        if ((int) value != value) {
+            throw new NumberFormatException("Expected an int but was " + value + locationString());
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int skipDepth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    skipDepth++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    skipDepth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    skipDepth--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    skipDepth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    if (peekedInfo == 31) {
+                        throw syntaxError("Indefinite length strings are not supported");
+                    }
+                    skipBytes(peekedArgument);
+                    consume();
+                    break;
+                case END_DOCUMENT:
+                    return;
+                default:
+                    if (peekedMajor == Cbor.MAJOR_SIMPLE) {
+                        skipBytes(peekedInfo == 25 ? 2 : peekedInfo == 26 ? 4 : peekedInfo == 27 ? 8 : 0);
+                    }
+                    consume();
+            }
+        } while (skipDepth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        depth = 0;
+        in.close();
+    }
+
+    @Override
+    public String getPath() {
+        return "$ at byte " + (consumed + position);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + locationString();
+    }
+
+    private String locationString() {
+        return " at byte " + (consumed + position);
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected) {
+            throw unexpected(expected.name(), token);
+        }
+        peeked = null;
+    }
+
+    private void consume() {
+        peeked = null;
+        valueConsumed();
+    }
+
+    private void valueConsumed() {
+        if (depth == 0) {
+            documentRead = true;
+            return;
+        }
+        int top = depth - 1;
+        if (containers[top] == MAP) {
+            nameExpected[top] = true;
+        }
+        if (remaining[top] != INDEFINITE) {
+            remaining[top]--;
+        }
+    }
+
+    private void push(int container, long entries) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            nameExpected = Arrays.copyOf(nameExpected, depth * 2);
+        }
+        containers[depth] = container;
+        remaining[depth] = entries;
+        nameExpected[depth] = container == MAP;
+        depth++;
+    }
+
+    private boolean isInteger() {
+        return peekedMajor == Cbor.MAJOR_UNSIGNED || peekedMajor == Cbor.MAJOR_NEGATIVE;
+    }
+
+    /**
+     * Arguments above {@code Long.MAX_VALUE} are negative as long.
+     */
+    private Number integerValue() {
+        if (peekedArgument >= 0) {
+            return peekedMajor == Cbor.MAJOR_UNSIGNED ? peekedArgument : -1 - peekedArgument;
+        }
+        BigInteger unsigned = new BigInteger(Long.toUnsignedString(peekedArgument));
+        return peekedMajor == Cbor.MAJOR_UNSIGNED ? unsigned : unsigned.negate().subtract(BigInteger.ONE);
+    }
+
+    private double readFloat() throws IOException {
+        switch (peekedInfo) {
+            case 25:
+                return halfToDouble((int) readRaw(2));
+            case 26:
+                return Float.intBitsToFloat((int) readRaw(4));
+            default:
+                return Double.longBitsToDouble(readRaw(8));
+        }
+    }
+
+    private static double halfToDouble(int half) {
+        int exponent = half >> 10 & 0x1f;
+        int mantissa = half & 0x3ff;
+        double value;
+        if (exponent == 0) {
+            value = Math.scalb((double) mantissa, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else {
+            value = Math.scalb((double) (mantissa + 1024), exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    private String readString() throws IOException {
+        if (peekedInfo == 31) {
+            throw syntaxError("Indefinite length strings are not supported");
+        }
+        if (peekedArgument < 0 || peekedArgument > Integer.MAX_VALUE) {
+            throw syntaxError("String too long");
+        }
+        int length = (int) peekedArgument;
+        byte[] bytes;
+        int offset;
+        if (length <= buffer.length) {
+            require(length);
+            bytes = buffer;
+            offset = position;
+            position += length;
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            readFully(bytes);
+        }
+        return peekedMajor == Cbor.MAJOR_TEXT
+                ? new String(bytes, offset, length, StandardCharsets.UTF_8)
+                : Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
+    private long readArgument(int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return readRaw(1);
+            case 25:
+                return readRaw(2);
+            case 26:
+                return readRaw(4);
+            case 27:
+                return readRaw(8);
+            case 31:
+                return INDEFINITE;
+            default:
+                throw syntaxError("Malformed argument " + info);
+        }
+    }
+
+    private long readRaw(int bytes) throws IOException {
+        require(bytes);
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = value << 8 | buffer[position++] & 0xff;
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        require(1);
+        return buffer[position++] & 0xff;
+    }
+
+    private void skipBytes(long bytes) throws IOException {
+        while (bytes > 0) {
+            if (position == limit) {
+                require(1);
+            }
+            int skipped = (int) Math.min(bytes, limit - position);
+            position += skipped;
+            bytes -= skipped;
+        }
+    }
+
+    private void readFully(byte[] target) throws IOException {
+        int copied = Math.min(limit - position, target.length);
+        System.arraycopy(buffer, position, target, 0, copied);
+        position += copied;
+        while (copied < target.length) {
+            int read = in.read(target, copied, target.length - copied);
+            if (read < 0) {
+                throw new EOFException("End of input" + locationString());
+            }
+            copied += read;
+            consumed += read;
+        }
+    }
+
+    private void require(int bytes) throws IOException {
+        if (limit - position >= bytes) {
+            return;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        consumed += position;
+        limit -= position;
+        position = 0;
+        while (limit < bytes) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                throw new EOFException("End of input" + locationString());
+            }
+            limit += read;
+        }
+    }
+
+    private JsonToken unsupportedName() throws IOException {
+        throw syntaxError("Only string and integer map keys are supported");
+    }
+
+    private IllegalStateException unexpected(String expected, JsonToken token) {
+        return new IllegalStateException("Expected " + expected + " but was " + token + locationString());
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + locationString());
+    }
+}
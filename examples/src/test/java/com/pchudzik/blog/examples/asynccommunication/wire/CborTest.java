@@ -0,0 +1,247 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.pchudzik.blog.examples.asynccommunication.Hello;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.BreakableService;
+import com.pchudzik.blog.examples.asynccommunication.circuitbreaker.ServerEngine;
+import com.pchudzik.blog.examples.asynccommunication.streaming.BufferPool;
+import com.pchudzik.blog.examples.asynccommunication.streaming.StreamingGsonConverterFactory;
+import feign.Feign;
+import feign.RequestLine;
+import feign.RequestTemplate;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CborTest {
+    private static final Gson gson = new GsonBuilder().serializeNulls().create();
+    private BreakableService breakableService;
+
+    @Before
+    public void setup() throws Exception {
+        breakableService = new BreakableService(new BreakableService.FixedResponseHandler(200, "hello world"), ServerEngine.nio(2));
+        breakableService.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        breakableService.stopServer();
+    }
+
+    @Test
+    public void values_are_encoded_as_in_rfc() throws Exception {
+        assertEquals("00", encode(0));
+        assertEquals("17", encode(23));
+        assertEquals("1818", encode(24));
+        assertEquals("1903e8", encode(1000));
+        assertEquals("1b000000e8d4a51000", encode(1000000000000L));
+        assertEquals("20", encode(-1));
+        assertEquals("3903e7", encode(-1000));
+        assertEquals("fa3fc00000", encode(1.5));
+        assertEquals("fb3ff199999999999a", encode(1.1));
+        assertEquals("f5", encode(true));
+        assertEquals("f6", encode(null));
+        assertEquals("6161", encode("a"));
+        assertEquals("62c3bc", encode("\u00fc"));
+        assertEquals("64f0908591", encode("\ud800\udd51"));
+        assertEquals("9f0102ff", encode(Arrays.asList(1, 2)));
+        assertEquals("bf6161016162f6ff", encode(gson.fromJson("{\"a\":1,\"b\":null}", JsonElement.class)));
+    }
+
+    @Test
+    public void definite_length_and_tagged_values_are_decoded() throws Exception {
+        assertThat(decode("a26161016162820203"), equalTo(new JsonParser().parse("{\"a\":1,\"b\":[2,3]}")));
+        assertThat(decode("f93e00").getAsDouble(), equalTo(1.5));
+        assertThat(decode("c11a514b67b0").getAsLong(), equalTo(1363896240L));
+        assertThat(decode("3bffffffffffffffff").getAsBigInteger().toString(), equalTo("-18446744073709551616"));
+        assertThat(decode("a1016161"), equalTo(new JsonParser().parse("{\"1\":\"a\"}")));
+    }
+
+    @Test
+    public void objects_survive_round_trip() throws Exception {
+        StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            longMessage.append("hello \u00fc\u20ac\ud83d\ude00 ").append(i);
+        }
+        List<Hello> hellos = new ArrayList<>();
+        hellos.add(new Hello("hello world"));
+        hellos.add(new Hello(null));
+        hellos.add(new Hello(longMessage.toString()));
+        Type type = new TypeToken<List<Hello>>() {}.getType();
+
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+        try (CborWriter writer = new CborWriter(cbor, new byte[16])) {
+            gson.toJson(hellos, type, writer);
+        }
+        List<Hello> decoded = gson.fromJson(new CborReader(new ByteArrayInputStream(cbor.toByteArray()), new byte[16]), type);
+
+        assertThat(gson.toJson(decoded), equalTo(gson.toJson(hellos)));
+    }
+
+    @Test
+    public void unknown_properties_are_skipped() throws Exception {
+        byte[] cbor = Cbor.fromJson("{\"skipped\":{\"a\":[1,2.5,\"x\",null,true,{}]},\"message\":\"hello\"}".getBytes("UTF-8"));
+
+        Hello hello = gson.fromJson(new CborReader(new ByteArrayInputStream(cbor)), Hello.class);
+
+        assertThat(hello.getMessage(), equalTo("hello"));
+    }
+
+    @Test
+    public void only_explicit_cbor_is_accepted() {
+        assertTrue(Cbor.accepts("application/cbor"));
+        assertTrue(Cbor.accepts("text/html, Application/CBOR; q=0.5"));
+        assertTrue(Cbor.accepts(Cbor.ACCEPT));
+        assertFalse(Cbor.accepts("application/json"));
+        assertFalse(Cbor.accepts("*/*"));
+        assertFalse(Cbor.accepts("application/cbor;q=0"));
+        assertFalse(Cbor.accepts("application/cbor-seq"));
+    }
+
+    @Test
+    public void retrofit_negotiates_cbor_and_falls_back_to_json() throws Exception {
+        Response<Hello> binary = retrofit(true).sayHello().execute();
+        Response<Hello> json = retrofit(false).sayHello().execute();
+
+        assertThat(binary.raw().header("Content-Type"), equalTo(Cbor.MEDIA_TYPE));
+        assertThat(binary.body().getMessage(), equalTo("hello world"));
+        assertTrue(json.raw().header("Content-Type").startsWith("application/json"));
+        assertThat(json.body().getMessage(), equalTo("hello world"));
+        assertTrue(Long.parseLong(binary.raw().header("Content-Length")) < Long.parseLong(json.raw().header("Content-Length")));
+    }
+
+    @Test
+    public void feign_negotiates_cbor() {
+        FeignHelloWorld helloWorld = Feign.builder()
+                .requestInterceptor(Cbor.acceptRequestInterceptor())
+                .encoder(new CborEncoder())
+                .decoder(new CborDecoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        assertThat(helloWorld.sayHello().getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void feign_decoder_falls_back_to_json() {
+        FeignHelloWorld helloWorld = Feign.builder()
+                .decoder(new CborDecoder())
+                .target(FeignHelloWorld.class, "http://localhost:" + breakableService.getPort());
+
+        assertThat(helloWorld.sayHello().getMessage(), equalTo("hello world"));
+    }
+
+    @Test
+    public void non_json_response_is_not_transcoded() throws Exception {
+        breakableService.useResponseHandler(() -> BreakableService.ResponseHandler.FixedResponse.jsonResponse().withBody("not json"));
+
+        Response<ResponseBody> response = retrofit(true).sayHelloRaw().execute();
+
+        assertTrue(response.raw().header("Content-Type").startsWith("application/json"));
+        assertThat(response.body().string(), equalTo("not json"));
+    }
+
+    @Test
+    public void cbor_variant_has_own_etag() throws Exception {
+        breakableService.useResponseHandler(() -> BreakableService.ResponseHandler.FixedResponse.jsonResponse()
+                .withBody(BreakableService.message("hello world"))
+                .withCaching("no-cache"));
+
+        String binaryETag = retrofit(true).sayHello().execute().raw().header("ETag");
+        String jsonETag = retrofit(false).sayHello().execute().raw().header("ETag");
+
+        assertFalse(binaryETag.equals(jsonETag));
+        assertEquals(304, retrofit(true).sayHello(binaryETag).execute().code());
+    }
+
+    @Test
+    public void feign_encoder_writes_cbor_body() throws Exception {
+        RequestTemplate template = new RequestTemplate();
+
+        new CborEncoder().encode(new Hello("hello"), Hello.class, template);
+
+        assertThat(template.headers().get("Content-Type").iterator().next(), equalTo(Cbor.MEDIA_TYPE));
+        assertEquals(Arrays.toString(Cbor.fromJson("{\"message\":\"hello\"}".getBytes("UTF-8"))), Arrays.toString(template.body()));
+    }
+
+    private HelloWorld retrofit(boolean cbor) {
+        OkHttpClient.Builder client = new OkHttpClient.Builder();
+        if (cbor) {
+            client.addInterceptor(Cbor.acceptInterceptor());
+        }
+        return new Retrofit.Builder()
+                .client(client.build())
+                .addConverterFactory(CborConverterFactory.create())
+                .addConverterFactory(StreamingGsonConverterFactory.create(new Gson(), new BufferPool(4, 1024)))
+                .baseUrl("http://localhost:" + breakableService.getPort() + "/")
+                .build()
+                .create(HelloWorld.class);
+    }
+
+    private static String encode(Object value) throws IOException {
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+        try (CborWriter writer = new CborWriter(cbor)) {
+            writer.setSerializeNulls(true);
+            if (value instanceof JsonElement) {
+                gson.toJson((JsonElement) value, writer);
+            } else if (value == null) {
+                writer.nullValue();
+            } else {
+                gson.toJson(value, value.getClass(), writer);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : cbor.toByteArray()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static JsonElement decode(String hex) {
+        byte[] cbor = new byte[hex.length() / 2];
+        for (int i = 0; i < cbor.length; i++) {
+            cbor[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return gson.fromJson(new CborReader(new ByteArrayInputStream(cbor)), JsonElement.class);
+    }
+
+    interface HelloWorld {
+        @GET("hello")
+        Call<Hello> sayHello();
+
+        @GET("hello")
+        Call<ResponseBody> sayHelloRaw();
+
+        @GET("hello")
+        Call<Hello> sayHello(@Header("If-None-Match") String etag);
+    }
+
+    interface FeignHelloWorld {
+        @RequestLine("GET /hello")
+        Hello sayHello();
+    }
+}
@@ -0,0 +1,319 @@
+package com.pchudzik.blog.examples.asynccommunication.wire;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JsonWriter} emitting CBOR (RFC 8949) instead of text, so any Gson {@code TypeAdapter} - reflective or
+ * generated - writes binary without changes. Objects and arrays are written with indefinite length, so nothing has
+ * to be buffered to learn the size up front. Integers take 1 to 9 bytes, strings are length prefixed UTF-8 and
+ * fractions are written as float when it's lossless, double otherwise.
+ */
+public class CborWriter extends JsonWriter {
+    private static final Writer UNWRITABLE = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private String deferredName;
+
+    public CborWriter(OutputStream out) {
+        this(out, new byte[4 * 1024]);
+    }
+
+    /**
+     * @param buffer write buffer, must have at least 9 bytes. It's used until writer is closed.
+     */
+    public CborWriter(OutputStream out, byte[] buffer) {
+        super(UNWRITABLE);
+        if (buffer.length < 9) {
+            throw new IllegalArgumentException("Buffer must have at least 9 bytes");
+        }
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writeDeferredName();
+        writeByte(Cbor.INDEFINITE_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        writeByte(Cbor.BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writeDeferredName();
+        writeByte(Cbor.INDEFINITE_MAP);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (deferredName != null) {
+            throw new IllegalStateException("Name " + deferredName + " without value");
+        }
+        writeByte(Cbor.BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (deferredName != null) {
+            throw new IllegalStateException("Name " + deferredName + " without value");
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * Raw JSON is transcoded.
+     */
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        Cbor.copy(new JsonReader(new StringReader(value)), this);
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (deferredName != null) {
+            if (!getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+            writeDeferredName();
+        }
+        writeByte(Cbor.NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writeDeferredName();
+        writeByte(value ? Cbor.TRUE : Cbor.FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        writeDeferredName();
+        if ((float) value == value || Double.isNaN(value)) {
+            writeByte(Cbor.FLOAT);
+            writeRaw(Float.floatToIntBits((float) value), 4);
+        } else {
+            writeByte(Cbor.DOUBLE);
+            writeRaw(Double.doubleToLongBits(value), 8);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        writeDeferredName();
+        if (value < 0) {
+            writeHead(Cbor.MAJOR_NEGATIVE, -1 - value);
+        } else {
+            writeHead(Cbor.MAJOR_UNSIGNED, value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicInteger || value instanceof AtomicLong) {
+            return value(value.longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return value(value.longValue());
+        }
+        return numberValue(value.toString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Number given as JSON literal, integral ones which fit in long are written as integers, others as floats.
+     */
+    JsonWriter numberValue(String literal) throws IOException {
+        if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+            try {
+                return value(Long.parseLong(literal));
+            } catch (NumberFormatException tooBig) {
+                // falls through to double
+            }
+        }
+        double value = new BigDecimal(literal).doubleValue();
+        if (Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric value out of range " + literal);
+        }
+        return value(value);
+    }
+
+    private void writeDeferredName() throws IOException {
+        if (deferredName != null) {
+            writeString(deferredName);
+            deferredName = null;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeHead(Cbor.MAJOR_TEXT, utf8Length(value));
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer.length - position < 4) {
+                drain();
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    /**
+     * Must match bytes produced by {@link #writeString(String)}, unpaired surrogate is replaced with single byte.
+     */
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeHead(int major, long argument) throws IOException {
+        int type = major << 5;
+        if (argument < 24) {
+            writeByte(type | (int) argument);
+        } else if (argument < 0x100) {
+            writeByte(type | 24);
+            writeRaw(argument, 1);
+        } else if (argument < 0x10000) {
+            writeByte(type | 25);
+            writeRaw(argument, 2);
+        } else if (argument < 0x100000000L) {
+            writeByte(type | 26);
+            writeRaw(argument, 4);
+        } else {
+            writeByte(type | 27);
+            writeRaw(argument, 8);
+        }
+    }
+
+    private void writeRaw(long value, int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            drain();
+        }
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}